@@ -0,0 +1,16 @@
+package de.budde.sudoku;
+
+import java.util.Arrays;
+
+/**
+ * run the JMH benchmarks with the GC profiler, which reports the allocation rate (gc.alloc.rate.norm: bytes per operation). All JMH command line options
+ * are accepted, e.g. a regexp selecting benchmarks: {@code java -jar target/benchmarks.jar SolveBenchmark}
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        String[] argsWithProfiler = Arrays.copyOf(args, args.length + 2);
+        argsWithProfiler[args.length] = "-prof";
+        argsWithProfiler[args.length + 1] = "gc";
+        org.openjdk.jmh.Main.main(argsWithProfiler);
+    }
+}
@@ -0,0 +1,106 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * microbenchmarks of the hot paths of the solver. The rules work on a copy of the initial state, thus the time of {@link #stateClone()} is part of their
+ * time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+    @Param({
+        "_examples/sudoku-10",
+        "_challenges/h"
+    })
+    public String file;
+
+    private String sudoku;
+    private de.budde.sudoku.State initial;
+    private de.budde.sudoku.State propagated;
+    private int openIdx;
+    private int openValMask;
+
+    @Setup
+    public void setup() throws IOException {
+        Do.setRuleLogging(false);
+        this.sudoku = Files.readAllLines(Paths.get(this.file)).stream().collect(Collectors.joining());
+        this.initial = new de.budde.sudoku.State(Do.string2cells(this.sudoku));
+        this.propagated = RuleMachine.rulePropagate(0, this.initial.clone());
+        this.openIdx = RuleMachine.pickCell(this.propagated);
+        int mask = this.propagated.getMask(this.openIdx);
+        this.openValMask = mask & -mask;
+    }
+
+    @Benchmark
+    public Cell[] string2cells() {
+        return Do.string2cells(this.sudoku);
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State stateClone() {
+        return this.initial.clone();
+    }
+
+    /**
+     * finalize a cell and roll the change back, to keep the state unchanged for the next invocation
+     */
+    @Benchmark
+    public de.budde.sudoku.State setFinalCellVal() {
+        de.budde.sudoku.State state = this.propagated;
+        int mark = state.mark();
+        state.setFinalCellVal(this.openIdx, this.openValMask, 'B');
+        state.rollback(mark);
+        return state;
+    }
+
+    @Benchmark
+    public boolean valid() {
+        return this.propagated.isValid();
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State ruleOneValLeft() {
+        return RuleMachine.ruleOneValLeft(0, this.initial.clone());
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State ruleExcludedVal() {
+        return RuleMachine.ruleExcludedVal(0, this.initial.clone());
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State rulePropagate() {
+        return RuleMachine.rulePropagate(0, this.initial.clone());
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State ruleBacktracker() {
+        return RuleMachine.ruleBacktracker(0, this.propagated.clone(), new boolean[81]);
+    }
+
+    @Benchmark
+    public de.budde.sudoku.State ruleBacktrackerInPlace() {
+        return RuleMachine.ruleBacktrackerInPlace(0, this.propagated.clone());
+    }
+}
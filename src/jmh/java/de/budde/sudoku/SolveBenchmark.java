@@ -0,0 +1,104 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * end-to-end solving of every sudoku of the folders '_examples' and '_challenges'. The benchmarks have to be run from the project base directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SolveBenchmark {
+    @Param({
+        "_examples/sudoku-01",
+        "_examples/sudoku-02",
+        "_examples/sudoku-03",
+        "_examples/sudoku-04",
+        "_examples/sudoku-05",
+        "_examples/sudoku-06",
+        "_examples/sudoku-07",
+        "_examples/sudoku-08",
+        "_examples/sudoku-09",
+        "_examples/sudoku-10",
+        "_examples/sudoku-11",
+        "_examples/sudoku-12",
+        "_challenges/c8",
+        "_challenges/cross",
+        "_challenges/h",
+        "_challenges/pia"
+    })
+    public String file;
+
+    private String sudoku;
+    private byte[] record;
+    private BatchSolver batchSolver;
+    private DlxSolver dlxSolver;
+    private BitboardSolver bitboardSolver;
+
+    @Setup
+    public void setup() throws IOException {
+        Do.setRuleLogging(false);
+        this.sudoku = Files.readAllLines(Paths.get(this.file)).stream().collect(Collectors.joining());
+        this.record = this.sudoku.getBytes(StandardCharsets.US_ASCII);
+        this.batchSolver = new BatchSolver();
+        this.dlxSolver = new DlxSolver();
+        this.bitboardSolver = new BitboardSolver();
+    }
+
+    /**
+     * the path of {@link RunSudoku#run(String)} without logging: parse, create a state, propagate, backtrack in place
+     */
+    @Benchmark
+    public de.budde.sudoku.State solve() {
+        de.budde.sudoku.State state = new de.budde.sudoku.State(Do.string2cells(this.sudoku));
+        state = RuleMachine.rulePropagate(0, state);
+        if ( state.getNumberFinalized() < 81 ) {
+            state = RuleMachine.ruleBacktrackerInPlace(0, state);
+        }
+        return state;
+    }
+
+    /**
+     * the path of the batch mode: a reused state loaded from bytes
+     */
+    @Benchmark
+    public Status solveBatch() {
+        return this.batchSolver.solve(this.record, 0);
+    }
+
+    /**
+     * the batch mode with the exact cover engine instead of the rules
+     */
+    @Benchmark
+    public Status solveDlx() {
+        return this.dlxSolver.solve(this.record, 0);
+    }
+
+    /**
+     * the batch mode with the bitboard engine instead of the rules
+     */
+    @Benchmark
+    public Status solveBitboard() {
+        return this.bitboardSolver.solve(this.record, 0);
+    }
+}
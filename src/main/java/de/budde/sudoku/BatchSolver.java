@@ -0,0 +1,65 @@
+package de.budde.sudoku;
+
+/**
+ * a solver for sudokus given as records of 81 bytes, that uses the rules of {@link RuleMachine}. It owns one {@link State}, which is reused for every
+ * sudoku. Thus solving allocates no memory. A batch solver is NOT thread-safe, every thread needs its own one.
+ */
+public class BatchSolver implements Solver {
+    private final State state = new State();
+
+    /**
+     * solve a sudoku given as 81 bytes. Bytes '1' ... '9' are initial values, bytes '.', '0' and ' ' are unknown cells. Rules are applied in the same order
+     * as {@link RunSudoku#run(String)} does, but nothing is logged.
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @return {@link Status#SOLVED}, if the sudoku was solved; {@link Status#CONTRADICTION}, if the sudoku has no solution
+     */
+    @Override
+    public Status solve(byte[] record, int offset) {
+        Status status = this.state.load(record, offset);
+        if ( status != Status.CONTRADICTION ) {
+            status = RuleMachine.getScheduler().run(0, this.state);
+        }
+        if ( status == Status.CONSISTENT ) {
+            status = RuleMachine.searchInPlace(0, this.state) ? Status.SOLVED : Status.CONTRADICTION;
+        }
+        return status;
+    }
+
+    /**
+     * count the solutions of a sudoku given as 81 bytes, but stop as soon as 'limit' solutions are found. See {@link #solve(byte[], int)} for the format and
+     * {@link RuleMachine#countSolutions(int, State, int)} for the search. A sudoku is proper, if countSolutions(record, offset, 2) returns 1.
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @param limit the number of solutions, after which the search stops, at least 1
+     * @return the number of solutions, but not more than limit
+     */
+    @Override
+    public int countSolutions(byte[] record, int offset, int limit) {
+        if ( this.state.load(record, offset) == Status.CONTRADICTION ) {
+            return 0;
+        }
+        return RuleMachine.countSolutions(0, this.state, limit);
+    }
+
+    /**
+     * write the solution of the last sudoku solved as 81 bytes '1' ... '9'
+     *
+     * @param record the array receiving the solution
+     * @param offset the index of the first byte to write
+     */
+    @Override
+    public void writeSolution(byte[] record, int offset) {
+        this.state.store(record, offset);
+    }
+
+    /**
+     * @return the state of the last sudoku solved. It is overwritten by the next call of {@link #solve(byte[], int)}
+     */
+    @Override
+    public State getState() {
+        return this.state;
+    }
+}
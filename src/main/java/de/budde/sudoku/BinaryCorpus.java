@@ -0,0 +1,396 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * a corpus of sudokus in a compact binary format, accessed by a memory mapped file. The file has a header of 16 bytes: the magic number 'SDKB', the
+ * version, the flags (bit 0: the records contain solutions), 2 reserved bytes and the number of records as long. Then the records follow, all of the same
+ * size, thus the record i is found without reading the records before it:
+ * <ul>
+ * <li>the sudoku: 41 bytes, 4 bits per cell (0 for an unknown cell, 1 ... 9 for a known value), cell 0 in the high nibble of the first byte.
+ * <li>if the file contains solutions, the solution: 19 bytes. A row of a solution is a permutation of the 9 values, that is stored as its rank (0 ... 9! - 1)
+ * in 19 bits. The ranks of the first 8 rows are packed into 152 bits, the last row is the value missing in each column. The rank 2^19 - 1 in the first row
+ * marks a sudoku without solution.
+ * </ul>
+ * Compared to the text format (one line of 82 bytes per sudoku) a sudoku needs half, a solution less than a quarter of the space. The records are read and
+ * written by absolute access to the mapped buffer, no other copy of the file is made. Thus the records of one corpus can be read and written by many threads,
+ * as long as every record is written by one thread only. The size of a file is limited to 2 GB (about 35 million sudokus with solutions).
+ */
+public class BinaryCorpus {
+    private static final int MAGIC = 'S' << 24 | 'D' << 16 | 'K' << 8 | 'B';
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAG_SOLUTIONS = 1;
+    static final int PUZZLE_SIZE = 41;
+    static final int SOLUTION_SIZE = 19;
+    private static final int RANK_BITS = 19;
+    private static final int NO_SOLUTION = (1 << RANK_BITS) - 1;
+    private static final int[] FACTORIALS = {
+        1,
+        1,
+        2,
+        6,
+        24,
+        120,
+        720,
+        5040,
+        40320
+    };
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final boolean solutions;
+    private final int recordSize;
+
+    private BinaryCorpus(MappedByteBuffer buffer, int size, boolean solutions) {
+        this.buffer = buffer;
+        this.size = size;
+        this.solutions = solutions;
+        this.recordSize = solutions ? PUZZLE_SIZE + SOLUTION_SIZE : PUZZLE_SIZE;
+    }
+
+    /**
+     * map an existing binary corpus for reading
+     *
+     * @param file the file of the corpus
+     * @return the corpus
+     */
+    public static BinaryCorpus open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            DBC.isTrue(channel.size() >= HEADER_SIZE && channel.size() <= Integer.MAX_VALUE, "the file " + file + " is not a binary corpus");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION ) {
+                throw new DBCException("the file " + file + " is not a binary corpus of version " + VERSION);
+            }
+            boolean solutions = (buffer.get(5) & FLAG_SOLUTIONS) != 0;
+            long size = buffer.getLong(8);
+            int recordSize = solutions ? PUZZLE_SIZE + SOLUTION_SIZE : PUZZLE_SIZE;
+            DBC.isTrue(size >= 0 && HEADER_SIZE + size * recordSize == channel.size(), "the size of the binary corpus " + file + " is invalid");
+            return new BinaryCorpus(buffer, (int) size, solutions);
+        }
+    }
+
+    /**
+     * create a binary corpus, all records unknown cells, and map it for writing
+     *
+     * @param file the file of the corpus. An existing file is overwritten
+     * @param size the number of records
+     * @param solutions true, if the records contain solutions
+     * @return the corpus
+     */
+    public static BinaryCorpus create(Path file, int size, boolean solutions) throws IOException {
+        long length = HEADER_SIZE + (long) size * (solutions ? PUZZLE_SIZE + SOLUTION_SIZE : PUZZLE_SIZE);
+        DBC.isTrue(size >= 0 && length <= Integer.MAX_VALUE, "a binary corpus is limited to 2 GB");
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(0, MAGIC);
+            buffer.put(4, VERSION);
+            buffer.put(5, (byte) (solutions ? FLAG_SOLUTIONS : 0));
+            buffer.putLong(8, size);
+            return new BinaryCorpus(buffer, size, solutions);
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return true, if the file starts with the magic number of a binary corpus
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while ( header.hasRemaining() && channel.read(header) >= 0 ) {
+                // read the magic number
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * convert a text file with one sudoku per line (see {@link Corpus#read(Path)}) into a binary corpus
+     *
+     * @param text the text file with the sudokus
+     * @param solutionText the text file with the solutions, one per line in the order of the sudokus (a line of '.' for a sudoku without solution); null,
+     *        if the corpus has no solutions
+     * @param file the file of the binary corpus
+     * @return the binary corpus
+     */
+    public static BinaryCorpus fromText(Path text, Path solutionText, Path file) throws IOException {
+        Corpus puzzles = Corpus.read(text);
+        Corpus solutions = solutionText == null ? null : Corpus.read(solutionText);
+        DBC.isTrue(solutions == null || solutions.size() == puzzles.size(), "the number of solutions must be the number of sudokus");
+        BinaryCorpus corpus = create(file, puzzles.size(), solutions != null);
+        for ( int i = 0; i < puzzles.size(); i++ ) {
+            corpus.writePuzzle(i, puzzles.getRecords(), i * 81);
+            if ( solutions != null ) {
+                corpus.writeSolution(i, solutions.getRecords(), i * 81);
+            }
+        }
+        corpus.force();
+        return corpus;
+    }
+
+    /**
+     * convert this corpus into a text file with one sudoku (or solution) per line, as accepted by {@link Do#string2cells(String)}
+     *
+     * @param text the text file to write
+     * @param solutions true: write the solutions; false: write the sudokus
+     */
+    public void toText(Path text, boolean solutions) throws IOException {
+        DBC.isTrue(!solutions || this.solutions, "the corpus has no solutions");
+        byte[] bytes = new byte[this.size * 82];
+        for ( int i = 0; i < this.size; i++ ) {
+            if ( solutions ) {
+                readSolution(i, bytes, i * 82);
+            } else {
+                readPuzzle(i, bytes, i * 82);
+            }
+            bytes[i * 82 + 81] = '\n';
+        }
+        Files.write(text, bytes);
+    }
+
+    /**
+     * @return the sudokus of this corpus as a corpus of text records
+     */
+    public Corpus toCorpus() {
+        byte[] records = new byte[this.size * 81];
+        for ( int i = 0; i < this.size; i++ ) {
+            readPuzzle(i, records, i * 81);
+        }
+        return new Corpus(records, this.size);
+    }
+
+    /**
+     * @return the number of records
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true, if the records contain solutions
+     */
+    public boolean hasSolutions() {
+        return this.solutions;
+    }
+
+    /**
+     * @param i the index of a record, 0 ... size()-1
+     * @return the sudoku as a String of 81 chars ('1' ... '9' for known values, '.' for unknown values)
+     */
+    public String get(int i) {
+        byte[] record = new byte[81];
+        readPuzzle(i, record, 0);
+        return new String(record, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * decode a sudoku into a text record of 81 bytes ('1' ... '9' for known values, '.' for unknown values), as accepted by
+     * {@link BatchSolver#solve(byte[], int)}
+     *
+     * @param i the index of the record
+     * @param record the array receiving the sudoku
+     * @param offset the index of the first byte to write
+     */
+    public void readPuzzle(int i, byte[] record, int offset) {
+        decodePuzzle(this.buffer, position(i), record, offset);
+    }
+
+    /**
+     * encode a sudoku given as a text record of 81 bytes ('1' ... '9' for known values, '.', '0' or ' ' for unknown values)
+     *
+     * @param i the index of the record
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku
+     */
+    public void writePuzzle(int i, byte[] record, int offset) {
+        encodePuzzle(record, offset, this.buffer, position(i));
+    }
+
+    /**
+     * decode a solution into a text record of 81 bytes '1' ... '9'. For a sudoku without solution 81 bytes '.' are written
+     *
+     * @param i the index of the record
+     * @param record the array receiving the solution
+     * @param offset the index of the first byte to write
+     */
+    public void readSolution(int i, byte[] record, int offset) {
+        DBC.isTrue(this.solutions, "the corpus has no solutions");
+        decodeSolution(this.buffer, position(i) + PUZZLE_SIZE, record, offset);
+    }
+
+    /**
+     * encode a solution given as a text record of 81 bytes '1' ... '9'. If the record starts with '.', the sudoku has no solution
+     *
+     * @param i the index of the record
+     * @param record the array containing the solution
+     * @param offset the index of the first byte of the solution
+     */
+    public void writeSolution(int i, byte[] record, int offset) {
+        DBC.isTrue(this.solutions, "the corpus has no solutions");
+        encodeSolution(record, offset, this.buffer, position(i) + PUZZLE_SIZE);
+    }
+
+    /**
+     * @return the byte k (0 ... {@link #PUZZLE_SIZE}-1) of the encoding of a sudoku given as a text record
+     */
+    static byte packedPuzzleByte(byte[] record, int offset, int k) {
+        int idx = offset + 2 * k;
+        return (byte) (cellValue(record[idx]) << 4 | (k < PUZZLE_SIZE - 1 ? cellValue(record[idx + 1]) : 0));
+    }
+
+    /**
+     * encode a sudoku given as a text record into {@link #PUZZLE_SIZE} bytes of a buffer
+     */
+    static void encodePuzzle(byte[] record, int offset, ByteBuffer buffer, int pos) {
+        for ( int k = 0; k < PUZZLE_SIZE; k++ ) {
+            buffer.put(pos + k, packedPuzzleByte(record, offset, k));
+        }
+    }
+
+    /**
+     * decode {@link #PUZZLE_SIZE} bytes of a buffer into a sudoku as text record
+     */
+    static void decodePuzzle(ByteBuffer buffer, int pos, byte[] record, int offset) {
+        for ( int idx = 0; idx < 81; idx += 2 ) {
+            int b = buffer.get(pos++);
+            record[offset + idx] = cellChar(b >> 4 & 0xF);
+            if ( idx + 1 < 81 ) {
+                record[offset + idx + 1] = cellChar(b & 0xF);
+            }
+        }
+    }
+
+    /**
+     * encode a solution given as a text record into {@link #SOLUTION_SIZE} bytes of a buffer
+     */
+    static void encodeSolution(byte[] record, int offset, ByteBuffer buffer, int pos) {
+        long bits = 0;
+        int available = 0;
+        for ( int row = 0; row < 8; row++ ) {
+            int rank = record[offset] == '.' ? NO_SOLUTION : rank(record, offset + row * 9);
+            bits = bits << RANK_BITS | rank;
+            available += RANK_BITS;
+            while ( available >= 8 ) {
+                available -= 8;
+                buffer.put(pos++, (byte) (bits >>> available));
+            }
+        }
+        // 8 * 19 = 152 bits = 19 bytes: no bits are left
+    }
+
+    /**
+     * check a solution given as text record without encoding it: every row must be a permutation of '1' ... '9' or the record starts with '.'
+     */
+    static void checkSolution(byte[] record, int offset) {
+        if ( record[offset] != '.' ) {
+            for ( int row = 0; row < 9; row++ ) {
+                rank(record, offset + row * 9);
+            }
+        }
+    }
+
+    /**
+     * decode {@link #SOLUTION_SIZE} bytes of a buffer into a solution as text record
+     */
+    static void decodeSolution(ByteBuffer buffer, int pos, byte[] record, int offset) {
+        long bits = 0;
+        int available = 0;
+        int[] seen = new int[9];
+        for ( int row = 0; row < 8; row++ ) {
+            while ( available < RANK_BITS ) {
+                bits = bits << 8 | buffer.get(pos++) & 0xFF;
+                available += 8;
+            }
+            available -= RANK_BITS;
+            int rank = (int) (bits >>> available) & NO_SOLUTION;
+            if ( rank == NO_SOLUTION ) {
+                for ( int idx = 0; idx < 81; idx++ ) {
+                    record[offset + idx] = '.';
+                }
+                return;
+            }
+            unrank(rank, record, offset + row * 9);
+            for ( int col = 0; col < 9; col++ ) {
+                seen[col] |= 1 << record[offset + row * 9 + col] - '1';
+            }
+        }
+        for ( int col = 0; col < 9; col++ ) {
+            record[offset + 72 + col] = (byte) ('1' + Integer.numberOfTrailingZeros(~seen[col]));
+        }
+    }
+
+    /**
+     * write the changes to the file
+     */
+    public void force() {
+        this.buffer.force();
+    }
+
+    private int position(int i) {
+        DBC.isTrue(i >= 0 && i < this.size, "invalid index of a record");
+        return HEADER_SIZE + i * this.recordSize;
+    }
+
+    private static byte cellChar(int value) {
+        return value == 0 ? (byte) '.' : (byte) ('0' + value);
+    }
+
+    private static int cellValue(byte b) {
+        if ( b >= '1' && b <= '9' ) {
+            return b - '0';
+        } else if ( b == '.' || b == '0' || b == ' ' ) {
+            return 0;
+        } else {
+            throw new DBCException("invalid char " + (char) b + ". Must be 1 ... 9, 0, ' ' or '.'");
+        }
+    }
+
+    /**
+     * @return the rank of a row, that is a permutation of the values '1' ... '9', in the lexicographic order of all permutations
+     */
+    private static int rank(byte[] record, int offset) {
+        int used = 0;
+        int rank = 0;
+        for ( int col = 0; col < 9; col++ ) {
+            int val = record[offset + col] - '1';
+            if ( val < 0 || val > 8 || (used & 1 << val) != 0 ) {
+                throw new DBCException("a row of a solution must be a permutation of 1 ... 9");
+            }
+            int smallerUnused = Integer.bitCount(~used & (1 << val) - 1);
+            rank += smallerUnused * FACTORIALS[8 - col];
+            used |= 1 << val;
+        }
+        return rank;
+    }
+
+    private static void unrank(int rank, byte[] record, int offset) {
+        int unused = 0x1FF;
+        for ( int col = 0; col < 9; col++ ) {
+            int k = rank / FACTORIALS[8 - col];
+            rank %= FACTORIALS[8 - col];
+            int m = unused;
+            for ( ; k > 0; k-- ) {
+                m &= m - 1;
+            }
+            int val = Integer.numberOfTrailingZeros(m);
+            unused &= ~(1 << val);
+            record[offset + col] = (byte) ('1' + val);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package de.budde.sudoku;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a solver, that stores the candidates digit-major: for each of the 9 values one board of 81 bits (2 longs, cells 0 ... 63 and cells 64 ... 80) contains
+ * the cells, where the value is still possible. A tenth board contains the finalized cells. The rules work on whole boards:
+ * <ul>
+ * <li>naked singles (rule 'O'): the cells with exactly one candidate are computed for the whole grid by counting the 9 boards bit-parallel (a cell is in
+ * 'ones', if it is in one board, and in 'twos', if it is in two or more boards). A cell, that is in no board, is a contradiction.
+ * <li>hidden singles (rule 'E'): the board of a value is masked by a neighborhood, a single bit left is a hidden single, no bit left is a contradiction.
+ * <li>finalizing a value removes the cell from the other 8 boards and the 20 peers of the cell from the board of the value: 2 masks per board.
+ * </ul>
+ * The search (rule 'B') guesses the values of a cell with 2 candidates (or the fewest candidates). It copies the 20 longs of the boards for every level and
+ * never undoes a change. The masks of the neighborhoods and peers are built once from {@link Structure}.<br>
+ * <br>
+ * After a solution is found, the finalizations are assigned to the {@link State} of the solver in their order, with the ids of the rules, that found them.
+ * Thus the state has the same API as the state of {@link BatchSolver}. A bitboard solver is NOT thread-safe, every thread needs its own one.
+ */
+public class BitboardSolver implements Solver {
+    private static final int WORDS = 20; // 9 boards of candidates and 1 board of finalized cells, 2 longs each
+    private static final int FINALIZED = 18;
+    private static final long HIGH = (1L << 17) - 1; // the cells 64 ... 80 in the second long
+    private static final long[] UNITS = new long[27 * 2];
+    private static final long[] PEERS = new long[81 * 2];
+
+    static {
+        for ( int unit = 0; unit < 27; unit++ ) {
+            for ( int idx : Structure.UNIT_MEMBERS[unit] ) {
+                UNITS[2 * unit + (idx >>> 6)] |= 1L << idx;
+            }
+        }
+        for ( int idx = 0; idx < 81; idx++ ) {
+            for ( int peer : Structure.PEERS[idx] ) {
+                PEERS[2 * idx + (peer >>> 6)] |= 1L << peer;
+            }
+        }
+    }
+
+    private final State state = new State();
+    // the boards of the search levels: level k uses the longs k * WORDS ... (k+1) * WORDS - 1
+    private final long[] boards = new long[82 * WORDS];
+    // the finalizations of the actual path: idx | value << 8 | ruleId << 16
+    private final int[] path = new int[81];
+    private int pathTop;
+    private final int[] solution = new int[81];
+    private int solutionTop;
+
+    @Override
+    public Status solve(byte[] record, int offset) {
+        if ( load(record, offset) == Status.CONTRADICTION || search(0, 1, 0) == 0 ) {
+            return Status.CONTRADICTION;
+        }
+        for ( int i = 0; i < this.solutionTop; i++ ) {
+            int step = this.solution[i];
+            if ( this.state.assign(step & 0xFF, 1 << (step >>> 8 & 0xFF), (char) (step >>> 16)) == Status.CONTRADICTION ) {
+                return Status.CONTRADICTION;
+            }
+        }
+        return this.state.getNumberFinalized() == 81 ? Status.SOLVED : Status.CONTRADICTION;
+    }
+
+    @Override
+    public int countSolutions(byte[] record, int offset, int limit) {
+        DBC.isTrue(limit >= 1, "the limit must be at least 1");
+        return load(record, offset) == Status.CONTRADICTION ? 0 : search(0, limit, 0);
+    }
+
+    @Override
+    public void writeSolution(byte[] record, int offset) {
+        this.state.store(record, offset);
+    }
+
+    @Override
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * load a sudoku into the state and into the boards of level 0. The initial values are finalized, further rules are NOT applied
+     *
+     * @return {@link Status#CONTRADICTION}, if the initial values are contradictory; {@link Status#CONSISTENT} otherwise
+     */
+    Status load(byte[] record, int offset) {
+        this.pathTop = 0;
+        this.solutionTop = 0;
+        if ( this.state.load(record, offset) == Status.CONTRADICTION ) {
+            return Status.CONTRADICTION;
+        }
+        for ( int val = 0; val < 9; val++ ) {
+            this.boards[2 * val] = -1L;
+            this.boards[2 * val + 1] = HIGH;
+        }
+        this.boards[FINALIZED] = 0;
+        this.boards[FINALIZED + 1] = 0;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            int b = record[offset + idx];
+            if ( b >= '1' && b <= '9' && !finalize(0, idx, b - '1') ) {
+                return Status.CONTRADICTION;
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * apply naked and hidden singles to the boards of a level, until they are stuck. Naked singles are cheaper, thus they are applied first
+     *
+     * @param level the search level, whose boards are used
+     * @return the status of the boards, after the rules have finished
+     */
+    Status propagate(int level) {
+        final int base = level * WORDS;
+        final long[] boards = this.boards;
+        boolean progress = true;
+        while ( progress ) {
+            progress = false;
+            for ( int w = 0; w < 2; w++ ) {
+                long ones = 0;
+                long twos = 0;
+                for ( int val = 0; val < 9; val++ ) {
+                    long candidates = boards[base + 2 * val + w];
+                    twos |= ones & candidates;
+                    ones |= candidates;
+                }
+                long open = ~boards[base + FINALIZED + w] & (w == 0 ? -1L : HIGH);
+                if ( (open & ~ones) != 0 ) {
+                    return Status.CONTRADICTION;
+                }
+                long singles = ones & ~twos & open;
+                for ( int val = 0; val < 9 && singles != 0; val++ ) {
+                    for ( long m = singles & boards[base + 2 * val + w]; m != 0; m &= m - 1 ) {
+                        int idx = (w << 6) + Long.numberOfTrailingZeros(m);
+                        if ( !finalize(level, idx, val) ) {
+                            return Status.CONTRADICTION;
+                        }
+                        this.path[this.pathTop++] = idx | val << 8 | 'O' << 16;
+                        progress = true;
+                    }
+                }
+            }
+            if ( progress ) {
+                continue;
+            }
+            for ( int val = 0; val < 9; val++ ) {
+                for ( int unit = 0; unit < 27; unit++ ) {
+                    long low = boards[base + 2 * val] & UNITS[2 * unit];
+                    long high = boards[base + 2 * val + 1] & UNITS[2 * unit + 1];
+                    if ( (low | high) == 0 ) {
+                        return Status.CONTRADICTION;
+                    } else if ( Long.bitCount(low) + Long.bitCount(high) == 1 ) {
+                        int idx = low != 0 ? Long.numberOfTrailingZeros(low) : 64 + Long.numberOfTrailingZeros(high);
+                        if ( (boards[base + FINALIZED + (idx >>> 6)] & 1L << idx) == 0 ) {
+                            if ( !finalize(level, idx, val) ) {
+                                return Status.CONTRADICTION;
+                            }
+                            this.path[this.pathTop++] = idx | val << 8 | 'E' << 16;
+                            progress = true;
+                        }
+                    }
+                }
+            }
+        }
+        return boards[base + FINALIZED] == -1L && boards[base + FINALIZED + 1] == HIGH ? Status.SOLVED : Status.CONSISTENT;
+    }
+
+    /**
+     * @return the values possible for a cell in the boards of level 0 as a bit mask (bit v-1 for value v)
+     */
+    int getMask(int idx) {
+        return getMask(0, idx);
+    }
+
+    /**
+     * finalize a value in the boards of a level: remove the cell from the other boards and the peers from the board of the value
+     *
+     * @return false, if the value is not possible in the cell
+     */
+    private boolean finalize(int level, int idx, int val) {
+        final int base = level * WORDS;
+        final int w = idx >>> 6;
+        final long bit = 1L << idx;
+        if ( (this.boards[base + 2 * val + w] & bit) == 0 ) {
+            return false;
+        }
+        for ( int i = base + w; i < base + FINALIZED; i += 2 ) {
+            this.boards[i] &= ~bit;
+        }
+        this.boards[base + 2 * val] &= ~PEERS[2 * idx];
+        this.boards[base + 2 * val + 1] &= ~PEERS[2 * idx + 1];
+        this.boards[base + 2 * val + w] |= bit;
+        this.boards[base + FINALIZED + w] |= bit;
+        return true;
+    }
+
+    /**
+     * search the solutions below the boards of a level. The finalizations of the first solution found are copied to 'solution'
+     *
+     * @param level the search level, that is the number of guesses on the path
+     * @param limit the number of solutions, after which the search stops
+     * @param found the number of solutions found so far
+     * @return the number of solutions found so far plus the solutions below the boards of the level, but not more than limit
+     */
+    private int search(int level, int limit, int found) {
+        Status status = propagate(level);
+        if ( status == Status.CONTRADICTION ) {
+            return found;
+        } else if ( status == Status.SOLVED ) {
+            if ( found == 0 ) {
+                System.arraycopy(this.path, 0, this.solution, 0, this.pathTop);
+                this.solutionTop = this.pathTop;
+            }
+            return found + 1;
+        }
+        int idx = pickCell(level);
+        int base = level * WORDS;
+        int pathTop = this.pathTop;
+        for ( int mask = getMask(base, idx); mask != 0 && found < limit; mask &= mask - 1 ) {
+            int val = Integer.numberOfTrailingZeros(mask);
+            System.arraycopy(this.boards, base, this.boards, base + WORDS, WORDS);
+            this.state.incrNodes(level + 1);
+            finalize(level + 1, idx, val);
+            this.path[this.pathTop++] = idx | val << 8 | 'B' << 16;
+            found = search(level + 1, limit, found);
+            this.pathTop = pathTop;
+        }
+        return found;
+    }
+
+    /**
+     * @return a cell, that is not finalized and has 2 candidates. If no such cell exists, the first cell with the fewest candidates
+     */
+    private int pickCell(int level) {
+        final int base = level * WORDS;
+        for ( int w = 0; w < 2; w++ ) {
+            long ones = 0;
+            long twos = 0;
+            long threes = 0;
+            for ( int val = 0; val < 9; val++ ) {
+                long candidates = this.boards[base + 2 * val + w];
+                threes |= twos & candidates;
+                twos |= ones & candidates;
+                ones |= candidates;
+            }
+            long pairs = twos & ~threes & ~this.boards[base + FINALIZED + w];
+            if ( pairs != 0 ) {
+                return (w << 6) + Long.numberOfTrailingZeros(pairs);
+            }
+        }
+        int best = -1;
+        int bestCount = 10;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            int count = Integer.bitCount(getMask(base, idx));
+            if ( count > 1 && count < bestCount ) {
+                best = idx;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private int getMask(int base, int idx) {
+        int mask = 0;
+        for ( int val = 0; val < 9; val++ ) {
+            if ( (this.boards[base + 2 * val + (idx >>> 6)] & 1L << idx) != 0 ) {
+                mask |= 1 << val;
+            }
+        }
+        return mask;
+    }
+}
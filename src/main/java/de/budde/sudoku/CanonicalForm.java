@@ -0,0 +1,405 @@
+package de.budde.sudoku;
+
+import java.util.Arrays;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * the canonical form of a sudoku: the minimal representative of the sudokus, that are transformations of each other by the symmetries, that keep a sudoku
+ * valid and keep its number of solutions (see {@link Corpus#transform(byte[], int, byte[], int, java.util.Random)}): transposing, permuting the bands, the
+ * stacks, the rows inside a band and the columns inside a stack and relabeling the values. Two sudokus have the same canonical form, iff one is a
+ * transformation of the other.<br>
+ * <br>
+ * The canonical form is the lexicographically smallest of all transformations, read row by row, with the values relabeled in the order of their first
+ * appearance and unknown cells sorted after all values. It is found by a branch and bound search: for every orientation and every row as the first row the
+ * columns are placed one by one, as long as the first row is not greater than the best one found so far. This fixes the permutation of the columns, then
+ * at every following row only the smallest of the rows allowed there is tried. The transformation
+ * found is kept, thus a solution of the canonical form is mapped back to a solution of the sudoku by {@link #fromCanonical(String)}. A canonical form is
+ * immutable.
+ */
+public class CanonicalForm {
+    private static final int UNKNOWN = 10;
+    private static final int INFINITE = 11;
+    // the 1296 permutations of 9 lines, that permute the 3 bands (stacks) and the 3 lines inside each band (stack)
+    private static final int[][] LINE_PERMUTATIONS = new int[6 * 6 * 6 * 6][9];
+
+    static {
+        int[][] permutationsOf3 = {
+            {
+                0,
+                1,
+                2
+            },
+            {
+                0,
+                2,
+                1
+            },
+            {
+                1,
+                0,
+                2
+            },
+            {
+                1,
+                2,
+                0
+            },
+            {
+                2,
+                0,
+                1
+            },
+            {
+                2,
+                1,
+                0
+            }
+        };
+        for ( int p = 0; p < LINE_PERMUTATIONS.length; p++ ) {
+            int[] bands = permutationsOf3[p % 6];
+            for ( int band = 0; band < 3; band++ ) {
+                int[] lines = permutationsOf3[p / 6 / (int) Math.pow(6, band) % 6];
+                for ( int line = 0; line < 3; line++ ) {
+                    LINE_PERMUTATIONS[p][band * 3 + line] = bands[band] * 3 + lines[line];
+                }
+            }
+        }
+    }
+
+    private final String puzzle;
+    private final boolean transposed;
+    // the canonical row r is the row rows[r] of the (transposed) sudoku, the canonical column c its column cols[c]
+    private final int[] rows;
+    private final int[] cols;
+    // labels[v]: the canonical value of the value v (1 ... 9); values[l]: the value of the canonical value l
+    private final int[] labels;
+    private final int[] values;
+
+    private CanonicalForm(Search search) {
+        this.transposed = search.bestTransposed;
+        this.rows = search.bestRows;
+        this.cols = search.bestCols;
+        this.labels = search.bestLabels;
+        // values not in the sudoku get the labels left in increasing order, thus the relabeling is a permutation
+        int next = 1;
+        for ( int v = 1; v <= 9; v++ ) {
+            next = Math.max(next, this.labels[v] + 1);
+        }
+        this.values = new int[10];
+        for ( int v = 1; v <= 9; v++ ) {
+            if ( this.labels[v] == 0 ) {
+                this.labels[v] = next++;
+            }
+            this.values[this.labels[v]] = v;
+        }
+        this.puzzle = toCanonical(search.sudoku);
+    }
+
+    /**
+     * compute the canonical form of a sudoku
+     *
+     * @param aS the sudoku as a String of 81 chars ('1' ... '9' for known values, '.', '0' or ' ' for unknown values)
+     * @return the canonical form
+     */
+    public static CanonicalForm of(String aS) {
+        return of(aS, Long.MAX_VALUE);
+    }
+
+    /**
+     * compute the canonical form of a sudoku with a bounded effort. The search is fast for the sudokus of a corpus, but for sparse or symmetric sudokus
+     * (e.g. the empty grid) many transformations tie and the search visits millions of nodes
+     *
+     * @param aS the sudoku as a String of 81 chars ('1' ... '9' for known values, '.', '0' or ' ' for unknown values)
+     * @param maxNodes the maximal number of nodes the search may visit
+     * @return the canonical form; null, if the search needs more nodes
+     */
+    public static CanonicalForm of(String aS, long maxNodes) {
+        Do.check(aS);
+        DBC.isTrue(maxNodes > 0, "the number of nodes must be positive");
+        Search search = new Search(aS, maxNodes);
+        search.run();
+        return search.isExhausted() ? null : new CanonicalForm(search);
+    }
+
+    /**
+     * @return the canonical form of the sudoku as a String of 81 chars, unknown values as '.'
+     */
+    public String getPuzzle() {
+        return this.puzzle;
+    }
+
+    /**
+     * apply the transformation of the sudoku to its canonical form to another grid, e.g. a solution of the sudoku
+     *
+     * @param grid a grid of 81 chars
+     * @return the transformed grid, unknown values as '.'
+     */
+    public String toCanonical(String grid) {
+        char[] canonical = new char[81];
+        for ( int r = 0; r < 9; r++ ) {
+            for ( int c = 0; c < 9; c++ ) {
+                char ch = grid.charAt(originalIdx(r, c));
+                canonical[r * 9 + c] = ch >= '1' && ch <= '9' ? (char) ('0' + this.labels[ch - '0']) : '.';
+            }
+        }
+        return new String(canonical);
+    }
+
+    /**
+     * apply the inverse transformation to a grid in canonical form, e.g. map a solution of the canonical form back to a solution of the sudoku
+     *
+     * @param canonicalGrid a grid of 81 chars in canonical form
+     * @return the grid for the sudoku, unknown values as '.'
+     */
+    public String fromCanonical(String canonicalGrid) {
+        char[] grid = new char[81];
+        for ( int r = 0; r < 9; r++ ) {
+            for ( int c = 0; c < 9; c++ ) {
+                char ch = canonicalGrid.charAt(r * 9 + c);
+                grid[originalIdx(r, c)] = ch >= '1' && ch <= '9' ? (char) ('0' + this.values[ch - '0']) : '.';
+            }
+        }
+        return new String(grid);
+    }
+
+    @Override
+    public String toString() {
+        return this.puzzle;
+    }
+
+    private int originalIdx(int r, int c) {
+        return this.transposed ? this.cols[c] * 9 + this.rows[r] : this.rows[r] * 9 + this.cols[c];
+    }
+
+    /**
+     * the branch and bound search for the smallest transformation. It is used once
+     */
+    private static class Search {
+        private final String sudoku;
+        private final long maxNodes;
+        private long nodes;
+        // grids[0]: the sudoku, grids[1]: the transposed sudoku. Values 1 ... 9, UNKNOWN for unknown cells
+        private final int[][] grids = new int[2][81];
+        private final int[] best = new int[81];
+        private final int[] curRows = new int[9];
+        private final int[] curCols = new int[9];
+        private final boolean[] usedRows = new boolean[9];
+        private final boolean[] usedCols = new boolean[9];
+        private final int[] labels = new int[10];
+        private final int[] newLabels = new int[10];
+        // per canonical row: the candidate rows, the smallest of them and the values of the smallest row
+        private final int[][] candidates = new int[9][6];
+        private final int[][] smallest = new int[9][6];
+        private final int[][] smallestRow = new int[9][9];
+        private final int[] row = new int[9];
+        private int nextLabel = 1;
+        private int[] grid;
+        private boolean curTransposed;
+        // incremented, whenever a smaller prefix is found; the transformation is recorded at the first complete grid after that
+        private int version;
+        private int recordedVersion;
+        private boolean bestTransposed;
+        private int[] bestRows;
+        private int[] bestCols;
+        private int[] bestLabels;
+
+        Search(String sudoku, long maxNodes) {
+            this.sudoku = sudoku;
+            this.maxNodes = maxNodes;
+            for ( int idx = 0; idx < 81; idx++ ) {
+                char ch = sudoku.charAt(idx);
+                int val = ch >= '1' && ch <= '9' ? ch - '0' : UNKNOWN;
+                this.grids[0][idx] = val;
+                this.grids[1][idx % 9 * 9 + idx / 9] = val;
+            }
+            Arrays.fill(this.best, INFINITE);
+        }
+
+        void run() {
+            for ( int t = 0; t < 2 && !isExhausted(); t++ ) {
+                this.grid = this.grids[t];
+                this.curTransposed = t == 1;
+                for ( int r = 0; r < 9; r++ ) {
+                    this.curRows[0] = r;
+                    this.usedRows[r] = true;
+                    placeColumn(0);
+                    this.usedRows[r] = false;
+                }
+            }
+        }
+
+        /**
+         * the first row fixes the permutation of the columns: put a column at the canonical position k, if the first row so far is not greater than the best
+         * one. The invariant of the search is, that the values before the position tried are equal to the best values
+         */
+        private void placeColumn(int k) {
+            if ( isExhausted() || ++this.nodes > this.maxNodes ) {
+                return;
+            } else if ( k == 9 ) {
+                placeRow(1);
+                return;
+            }
+            int from = 0;
+            int to = 9;
+            if ( k % 3 != 0 ) {
+                // the next column is in the same stack
+                from = this.curCols[k - 1] / 3 * 3;
+                to = from + 3;
+            }
+            for ( int col = from; col < to; col++ ) {
+                if ( this.usedCols[col] || k % 3 == 0 && (this.usedCols[col / 3 * 3] || this.usedCols[col / 3 * 3 + 1] || this.usedCols[col / 3 * 3 + 2]) ) {
+                    continue;
+                }
+                int savedNextLabel = this.nextLabel;
+                int val = label(this.grid[this.curRows[0] * 9 + col]);
+                if ( val <= this.best[k] ) {
+                    if ( val < this.best[k] ) {
+                        this.best[k] = val;
+                        Arrays.fill(this.best, k + 1, 81, INFINITE);
+                        this.version++;
+                    }
+                    this.curCols[k] = col;
+                    this.usedCols[col] = true;
+                    placeColumn(k + 1);
+                    this.usedCols[col] = false;
+                }
+                unlabel(savedNextLabel);
+            }
+        }
+
+        /**
+         * put a row at the canonical row p: only the smallest of the candidate rows can be part of the smallest transformation. The candidates are the rows
+         * of the band of the rows before or, if p starts a band, the rows of the bands not used yet
+         */
+        private void placeRow(int p) {
+            if ( isExhausted() || ++this.nodes > this.maxNodes ) {
+                return;
+            } else if ( p == 9 ) {
+                record();
+                return;
+            }
+            int count = 0;
+            if ( p % 3 != 0 ) {
+                int band = this.curRows[p - 1] / 3 * 3;
+                for ( int r = band; r < band + 3; r++ ) {
+                    if ( !this.usedRows[r] ) {
+                        this.candidates[p][count++] = r;
+                    }
+                }
+            } else {
+                for ( int r = 0; r < 9; r++ ) {
+                    if ( !this.usedRows[r / 3 * 3] && !this.usedRows[r / 3 * 3 + 1] && !this.usedRows[r / 3 * 3 + 2] ) {
+                        this.candidates[p][count++] = r;
+                    }
+                }
+            }
+            int[] minRow = this.smallestRow[p];
+            int smallestCount = 0;
+            for ( int i = 0; i < count; i++ ) {
+                int r = this.candidates[p][i];
+                values(r, this.row);
+                int cmp = smallestCount == 0 ? -1 : compare(this.row, minRow, 0);
+                if ( cmp < 0 ) {
+                    System.arraycopy(this.row, 0, minRow, 0, 9);
+                    smallestCount = 0;
+                }
+                if ( cmp <= 0 ) {
+                    this.smallest[p][smallestCount++] = r;
+                }
+            }
+            int cmp = compare(minRow, this.best, p * 9);
+            if ( cmp > 0 ) {
+                return;
+            } else if ( cmp < 0 ) {
+                System.arraycopy(minRow, 0, this.best, p * 9, 9);
+                Arrays.fill(this.best, p * 9 + 9, 81, INFINITE);
+                this.version++;
+            }
+            for ( int i = 0; i < smallestCount; i++ ) {
+                int r = this.smallest[p][i];
+                int savedNextLabel = this.nextLabel;
+                for ( int c = 0; c < 9; c++ ) {
+                    label(this.grid[r * 9 + this.curCols[c]]);
+                }
+                this.curRows[p] = r;
+                this.usedRows[r] = true;
+                placeRow(p + 1);
+                this.usedRows[r] = false;
+                unlabel(savedNextLabel);
+            }
+        }
+
+        /**
+         * @return true, if the search was stopped, because it needs more nodes than allowed. Then the transformation recorded is not the smallest one
+         */
+        boolean isExhausted() {
+            return this.nodes > this.maxNodes;
+        }
+
+        /**
+         * compute the canonical values of a row without changing the labels
+         */
+        private void values(int r, int[] values) {
+            int next = this.nextLabel;
+            for ( int c = 0; c < 9; c++ ) {
+                int val = this.grid[r * 9 + this.curCols[c]];
+                if ( val != UNKNOWN ) {
+                    if ( this.labels[val] != 0 ) {
+                        val = this.labels[val];
+                    } else {
+                        if ( this.newLabels[val] == 0 ) {
+                            this.newLabels[val] = next++;
+                        }
+                        val = this.newLabels[val];
+                    }
+                }
+                values[c] = val;
+            }
+            Arrays.fill(this.newLabels, 0);
+        }
+
+        private static int compare(int[] values, int[] other, int offset) {
+            for ( int c = 0; c < 9; c++ ) {
+                if ( values[c] != other[offset + c] ) {
+                    return values[c] < other[offset + c] ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the canonical value of a value. A value seen for the first time gets the next label
+         */
+        private int label(int val) {
+            if ( val == UNKNOWN ) {
+                return UNKNOWN;
+            } else if ( this.labels[val] == 0 ) {
+                this.labels[val] = this.nextLabel++;
+            }
+            return this.labels[val];
+        }
+
+        /**
+         * remove the labels given after a label was the next one
+         */
+        private void unlabel(int savedNextLabel) {
+            for ( int v = 1; v <= 9; v++ ) {
+                if ( this.labels[v] >= savedNextLabel ) {
+                    this.labels[v] = 0;
+                }
+            }
+            this.nextLabel = savedNextLabel;
+        }
+
+        private void record() {
+            if ( this.version != this.recordedVersion ) {
+                this.recordedVersion = this.version;
+                this.bestTransposed = this.curTransposed;
+                this.bestRows = this.curRows.clone();
+                this.bestCols = this.curCols.clone();
+                this.bestLabels = this.labels.clone();
+            }
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * a catalog of sudokus and their solutions, stored off-heap in direct or memory mapped buffers and indexed by an open-addressing hash table. The table has a
+ * power of two slots of 64 bytes, a sudoku is found by linear probing from the slot selected by its hash:
+ * <ul>
+ * <li>4 bytes: the check, the high 32 bits of the hash (never 0). 0 marks an empty slot
+ * <li>41 bytes: the sudoku, 4 bits per cell, as in a {@link BinaryCorpus}
+ * <li>19 bytes: the solution, the ranks of the rows, as in a {@link BinaryCorpus}. A sudoku without solution is cataloged, too
+ * </ul>
+ * The hash is computed from the packed cells of the text record, neither a String nor a packed copy is created for a lookup. The table is filled up to 75%
+ * of its slots, then {@link #insert(byte[], int, byte[], int)} refuses new sudokus. The slots are split into segments of 1 GB, thus a catalog can hold
+ * hundreds of millions of sudokus outside of the java heap.<br>
+ * <br>
+ * A catalog in a file has a header of 64 bytes: the magic number 'SDKC', the version, 3 reserved bytes, the number of slots and the number of sudokus as
+ * longs. The slots follow. Opening a catalog maps the file, nothing is read or rebuilt, thus a catalog is reopened in constant time.<br>
+ * <br>
+ * The catalog is thread-safe: lookups share a read lock, inserts take the write lock.
+ */
+public class Catalog {
+    private static final int MAGIC = 'S' << 24 | 'D' << 16 | 'K' << 8 | 'C';
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 64;
+    private static final int SLOT_BITS = 6;
+    private static final int SEGMENT_BITS = 24; // slots per segment: 2^24 * 64 bytes = 1 GB
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_SLOTS = 1 << 30;
+    private static final int PUZZLE_POS = 4;
+    private static final int SOLUTION_POS = PUZZLE_POS + BinaryCorpus.PUZZLE_SIZE;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final ByteBuffer header;
+    private final ByteBuffer[] segments;
+    private final int slots;
+    private final long maxSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long size;
+
+    private Catalog(ByteBuffer header, ByteBuffer[] segments, int slots, long size) {
+        this.header = header;
+        this.segments = segments;
+        this.slots = slots;
+        this.maxSize = slots / 4L * 3;
+        this.size = size;
+    }
+
+    /**
+     * create an empty catalog in direct buffers. It is lost, when it is garbage collected
+     *
+     * @param expectedSize the number of sudokus, the catalog must be able to hold
+     * @return the catalog
+     */
+    public static Catalog allocate(long expectedSize) {
+        int slots = slotsFor(expectedSize);
+        ByteBuffer[] segments = new ByteBuffer[segmentsFor(slots)];
+        for ( int s = 0; s < segments.length; s++ ) {
+            segments[s] = ByteBuffer.allocateDirect(segmentLength(slots));
+        }
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+        writeHeader(header, slots);
+        return new Catalog(header, segments, slots, 0);
+    }
+
+    /**
+     * create an empty catalog in a file and map it for reading and writing
+     *
+     * @param file the file of the catalog. An existing file is overwritten
+     * @param expectedSize the number of sudokus, the catalog must be able to hold
+     * @return the catalog
+     */
+    public static Catalog create(Path file, long expectedSize) throws IOException {
+        int slots = slotsFor(expectedSize);
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            writeHeader(header, slots);
+            return map(channel, header, slots, 0);
+        }
+    }
+
+    /**
+     * map an existing catalog for reading and writing
+     *
+     * @param file the file of the catalog
+     * @return the catalog
+     */
+    public static Catalog open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DBC.isTrue(channel.size() >= HEADER_SIZE, "the file " + file + " is not a catalog");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if ( header.getInt(0) != MAGIC || header.get(4) != VERSION ) {
+                throw new DBCException("the file " + file + " is not a catalog of version " + VERSION);
+            }
+            long slots = header.getLong(8);
+            long size = header.getLong(16);
+            boolean valid = slots >= MIN_SLOTS && slots <= MAX_SLOTS && Long.bitCount(slots) == 1 && size >= 0 && size <= slots / 4 * 3;
+            DBC.isTrue(valid && HEADER_SIZE + slots * SLOT_SIZE == channel.size(), "the size of the catalog " + file + " is invalid");
+            return map(channel, header, (int) slots, size);
+        }
+    }
+
+    /**
+     * insert a sudoku and its solution. If the sudoku is cataloged already, its solution is replaced
+     *
+     * @param puzzle the array containing the sudoku as 81 bytes ('1' ... '9' for known values, '.', '0' or ' ' for unknown values)
+     * @param puzzleOffset the index of the first byte of the sudoku
+     * @param solution the array containing the solution as 81 bytes '1' ... '9'. If it starts with '.', the sudoku has no solution
+     * @param solutionOffset the index of the first byte of the solution
+     * @return true, if the sudoku and its solution are stored; false, if the sudoku is new and the catalog is full
+     */
+    public boolean insert(byte[] puzzle, int puzzleOffset, byte[] solution, int solutionOffset) {
+        long hash = hash(puzzle, puzzleOffset);
+        BinaryCorpus.checkSolution(solution, solutionOffset);
+        this.lock.writeLock().lock();
+        try {
+            int slot = probe(hash, puzzle, puzzleOffset);
+            ByteBuffer segment = this.segments[slot >>> SEGMENT_BITS];
+            int pos = (slot & SEGMENT_MASK) << SLOT_BITS;
+            if ( segment.getInt(pos) == 0 ) {
+                if ( this.size >= this.maxSize ) {
+                    return false;
+                }
+                BinaryCorpus.encodePuzzle(puzzle, puzzleOffset, segment, pos + PUZZLE_POS);
+                segment.putInt(pos, check(hash));
+                this.header.putLong(16, ++this.size);
+            }
+            BinaryCorpus.encodeSolution(solution, solutionOffset, segment, pos + SOLUTION_POS);
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param puzzle the array containing the sudoku as 81 bytes
+     * @param offset the index of the first byte of the sudoku
+     * @return true, if the sudoku is cataloged
+     */
+    public boolean contains(byte[] puzzle, int offset) {
+        long hash = hash(puzzle, offset);
+        this.lock.readLock().lock();
+        try {
+            int slot = probe(hash, puzzle, offset);
+            return this.segments[slot >>> SEGMENT_BITS].getInt((slot & SEGMENT_MASK) << SLOT_BITS) != 0;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * look up the solution of a sudoku
+     *
+     * @param puzzle the array containing the sudoku as 81 bytes
+     * @param puzzleOffset the index of the first byte of the sudoku
+     * @param solution the array receiving the solution as 81 bytes '1' ... '9' (81 bytes '.' for a sudoku without solution). Unchanged, if the sudoku is not
+     *        cataloged
+     * @param solutionOffset the index of the first byte to write
+     * @return true, if the sudoku is cataloged
+     */
+    public boolean lookup(byte[] puzzle, int puzzleOffset, byte[] solution, int solutionOffset) {
+        long hash = hash(puzzle, puzzleOffset);
+        this.lock.readLock().lock();
+        try {
+            int slot = probe(hash, puzzle, puzzleOffset);
+            ByteBuffer segment = this.segments[slot >>> SEGMENT_BITS];
+            int pos = (slot & SEGMENT_MASK) << SLOT_BITS;
+            if ( segment.getInt(pos) == 0 ) {
+                return false;
+            }
+            BinaryCorpus.decodeSolution(segment, pos + SOLUTION_POS, solution, solutionOffset);
+            return true;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * insert a sudoku and its solution given as Strings of 81 chars. See {@link #insert(byte[], int, byte[], int)}
+     */
+    public boolean insert(String puzzle, String solution) {
+        return insert(bytesOf(puzzle), 0, bytesOf(solution), 0);
+    }
+
+    /**
+     * @param puzzle a sudoku as String of 81 chars
+     * @return true, if the sudoku is cataloged
+     */
+    public boolean contains(String puzzle) {
+        return contains(bytesOf(puzzle), 0);
+    }
+
+    /**
+     * @param puzzle a sudoku as String of 81 chars
+     * @return the solution as String of 81 chars (81 '.' for a sudoku without solution); null, if the sudoku is not cataloged
+     */
+    public String lookup(String puzzle) {
+        byte[] solution = new byte[81];
+        return lookup(bytesOf(puzzle), 0, solution, 0) ? new String(solution, StandardCharsets.US_ASCII) : null;
+    }
+
+    /**
+     * @return the number of sudokus cataloged
+     */
+    public long size() {
+        this.lock.readLock().lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of sudokus, the catalog can hold
+     */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * write the changes of a catalog in a file to the file. For a catalog in direct buffers nothing is done
+     */
+    public void force() {
+        this.lock.readLock().lock();
+        try {
+            force(this.header);
+            for ( ByteBuffer segment : this.segments ) {
+                force(segment);
+            }
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "catalog: " + size() + " of " + this.maxSize + " sudokus in " + this.slots + " slots";
+    }
+
+    /**
+     * find the slot of a sudoku by linear probing. The table is never full, thus the probing ends
+     *
+     * @return the slot containing the sudoku or the empty slot, where it must be inserted
+     */
+    private int probe(long hash, byte[] puzzle, int offset) {
+        int check = check(hash);
+        int mask = this.slots - 1;
+        for ( int slot = (int) hash & mask;; slot = slot + 1 & mask ) {
+            ByteBuffer segment = this.segments[slot >>> SEGMENT_BITS];
+            int pos = (slot & SEGMENT_MASK) << SLOT_BITS;
+            int slotCheck = segment.getInt(pos);
+            if ( slotCheck == 0 || slotCheck == check && samePuzzle(segment, pos + PUZZLE_POS, puzzle, offset) ) {
+                return slot;
+            }
+        }
+    }
+
+    private static boolean samePuzzle(ByteBuffer segment, int pos, byte[] puzzle, int offset) {
+        for ( int k = 0; k < BinaryCorpus.PUZZLE_SIZE; k++ ) {
+            if ( segment.get(pos + k) != BinaryCorpus.packedPuzzleByte(puzzle, offset, k) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the packed cells, followed by the finalizer of murmur3, as the low bits select the slot
+     */
+    private static long hash(byte[] puzzle, int offset) {
+        DBC.isTrue(puzzle.length >= offset + 81, "81 bytes are required for a 9x9 sudoku");
+        long hash = FNV_OFFSET;
+        for ( int k = 0; k < BinaryCorpus.PUZZLE_SIZE; k++ ) {
+            hash = (hash ^ BinaryCorpus.packedPuzzleByte(puzzle, offset, k) & 0xFF) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static int check(long hash) {
+        int check = (int) (hash >>> 32);
+        return check == 0 ? 1 : check;
+    }
+
+    private static int slotsFor(long expectedSize) {
+        DBC.isTrue(expectedSize >= 0 && expectedSize <= MAX_SLOTS / 4L * 3, "the expected size of a catalog must be 0 ... " + MAX_SLOTS / 4L * 3);
+        long slots = MIN_SLOTS;
+        while ( slots / 4 * 3 < expectedSize ) {
+            slots <<= 1;
+        }
+        return (int) slots;
+    }
+
+    private static int segmentsFor(int slots) {
+        return Math.max(1, slots >>> SEGMENT_BITS);
+    }
+
+    private static int segmentLength(int slots) {
+        return Math.min(slots, 1 << SEGMENT_BITS) << SLOT_BITS;
+    }
+
+    private static Catalog map(FileChannel channel, ByteBuffer header, int slots, long size) throws IOException {
+        ByteBuffer[] segments = new ByteBuffer[segmentsFor(slots)];
+        long position = HEADER_SIZE;
+        for ( int s = 0; s < segments.length; s++ ) {
+            int length = segmentLength(slots);
+            segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+            position += length;
+        }
+        return new Catalog(header, segments, slots, size);
+    }
+
+    private static void writeHeader(ByteBuffer header, int slots) {
+        header.putInt(0, MAGIC);
+        header.put(4, VERSION);
+        header.putLong(8, slots);
+        header.putLong(16, 0);
+    }
+
+    private static void force(ByteBuffer buffer) {
+        if ( buffer instanceof MappedByteBuffer ) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    private static byte[] bytesOf(String sudoku) {
+        DBC.isTrue(sudoku.length() == 81, "a sudoku must have 81 chars");
+        return sudoku.getBytes(StandardCharsets.US_ASCII);
+    }
+}
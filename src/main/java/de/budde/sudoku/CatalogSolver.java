@@ -0,0 +1,88 @@
+package de.budde.sudoku;
+
+import java.util.Arrays;
+
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * a solver, that looks up a sudoku in a {@link Catalog} first. If the sudoku is cataloged, the state is loaded from the sudoku and the missing cells are
+ * assigned from the solution with the rule id 'C'; no rule and no search is run. Otherwise the sudoku is solved by the solver wrapped and the result is
+ * inserted into the catalog, a sudoku without solution, too. If the catalog is full, nothing is inserted. Like every solver a catalog solver is NOT
+ * thread-safe, but many catalog solvers may share one catalog.
+ */
+public class CatalogSolver implements Solver {
+    private static final char RULE_CATALOG_ID = 'C';
+
+    private final Catalog catalog;
+    private final Solver solver;
+    private final State state = new State();
+    private final byte[] solution = new byte[81];
+    private boolean hit;
+
+    /**
+     * @param catalog the catalog of sudokus and their solutions
+     * @param solver the solver used for sudokus, that are not cataloged
+     */
+    public CatalogSolver(Catalog catalog, Solver solver) {
+        this.catalog = catalog;
+        this.solver = solver;
+    }
+
+    @Override
+    public Status solve(byte[] record, int offset) {
+        this.hit = this.catalog.lookup(record, offset, this.solution, 0);
+        if ( this.hit ) {
+            return this.solution[0] == '.' ? Status.CONTRADICTION : fromSolution(record, offset);
+        }
+        Status status = this.solver.solve(record, offset);
+        if ( status == Status.SOLVED ) {
+            this.solver.writeSolution(this.solution, 0);
+        } else {
+            Arrays.fill(this.solution, (byte) '.');
+        }
+        this.catalog.insert(record, offset, this.solution, 0);
+        return status;
+    }
+
+    /**
+     * count the solutions by the solver wrapped. The catalog stores one solution per sudoku, thus it cannot count
+     */
+    @Override
+    public int countSolutions(byte[] record, int offset, int limit) {
+        this.hit = false;
+        return this.solver.countSolutions(record, offset, limit);
+    }
+
+    @Override
+    public void writeSolution(byte[] record, int offset) {
+        if ( this.hit ) {
+            System.arraycopy(this.solution, 0, record, offset, 81);
+        } else {
+            this.solver.writeSolution(record, offset);
+        }
+    }
+
+    @Override
+    public State getState() {
+        return this.hit ? this.state : this.solver.getState();
+    }
+
+    /**
+     * @return true, if the last sudoku solved was found in the catalog
+     */
+    public boolean isHit() {
+        return this.hit;
+    }
+
+    private Status fromSolution(byte[] record, int offset) {
+        if ( this.state.load(record, offset) == Status.CONTRADICTION ) {
+            throw new DBCException("the catalog contains a solution of a contradictory sudoku");
+        }
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( !this.state.isFinalValueSet(idx) && this.state.assign(idx, 1 << this.solution[idx] - '1', RULE_CATALOG_ID) == Status.CONTRADICTION ) {
+                throw new DBCException("the cataloged solution is invalid");
+            }
+        }
+        return Status.SOLVED;
+    }
+}
@@ -6,47 +6,70 @@ import java.util.EnumSet;
 import de.fraunhofer.iais.dbc.DBC;
 import de.fraunhofer.iais.dbc.DBCException;
 
+/**
+ * a cell of a sudoku. A cell is a view on the primitive arrays, that store the possible values (as a 9-bit mask), the step and the rule id of all cells of a
+ * {@link State}. A cell created by the public constructor is detached: it owns arrays of length 1. The cells of a state (see {@link State#getCells()})
+ * route their changes through the state, thus the places, the counters, the trail and the work queues of the state stay consistent.
+ */
 public class Cell {
     static final BigInteger MINUS1 = BigInteger.valueOf(-1);
     static final BigInteger ZERO = BigInteger.valueOf(0);
     static final BigInteger ONE = BigInteger.valueOf(1);
 
     private final int idx;
-    private EnumSet<Val> possibleVals;
-    private BigInteger step;
-    private char ruleId;
+    private final short[] possibleVals;
+    private final long[] steps;
+    private final char[] ruleIds;
+    private final int slot;
+    private final State state;
 
     /**
-     * create a new cell with a set of possible values
+     * create a new (detached) cell with a set of possible values
      *
      * @param idx the index of the cell from 1...81
      * @param possibleVals set of possible values. Values are from 1...9
      */
     public Cell(int idx, EnumSet<Val> possibleVals) {
-        this.idx = idx;
-        this.possibleVals = possibleVals;
-        this.step = MINUS1;
-        this.ruleId = '?';
+        this(idx, new short[] {
+            Val.toMask(possibleVals)
+        }, new long[] {
+            -1
+        }, new char[] {
+            '?'
+        }, 0, null);
     }
 
     /**
-     * create a new cell as a deep clone of another cell
+     * create a cell as a view on the arrays of a state
      *
-     * @param toClone the cell to clone
+     * @param idx the index of the cell from 0...80
+     * @param possibleVals the masks of possible values
+     * @param steps the steps in which cells were finalized
+     * @param ruleIds the ids of the rules that finalized cells
+     * @param slot the index into the arrays, that belongs to this cell
+     * @param state the state owning the arrays; null for a detached cell
      */
-    private Cell(Cell toClone) {
-        this.idx = toClone.idx;
-        this.possibleVals = toClone.possibleVals.clone();
-        this.step = toClone.step;
-        this.ruleId = toClone.ruleId;
+    Cell(int idx, short[] possibleVals, long[] steps, char[] ruleIds, int slot, State state) {
+        this.idx = idx;
+        this.possibleVals = possibleVals;
+        this.steps = steps;
+        this.ruleIds = ruleIds;
+        this.slot = slot;
+        this.state = state;
     }
 
     /**
-     * deep clone of a this cell
+     * create a new (detached) cell as a deep clone of this cell
      */
     @Override
     public Cell clone() {
-        return new Cell(this);
+        return new Cell(this.idx, new short[] {
+            getMask()
+        }, new long[] {
+            getStepAsLong()
+        }, new char[] {
+            getRuleId()
+        }, 0, null);
     }
 
     /**
@@ -71,20 +94,22 @@ public class Cell {
     }
 
     /**
-     * set the initial value. This is a value known from the beginning of the sudoku.
+     * set the initial value. This is a value known from the beginning of the sudoku. The initial values of a state are set, when it is created or loaded,
+     * thus an exception is thrown for a cell of a state.
      *
      * @param val the initial value
      */
     public void setInitVal(Val val) {
         DBC.notNull(val);
-        this.possibleVals = EnumSet.of(val);
-        this.step = ZERO;
-        this.ruleId = 'I';
+        DBC.isTrue(this.state == null, "the initial value of a cell of a state cannot be changed");
+        this.possibleVals[this.slot] = val.mask();
+        this.steps[this.slot] = 0;
+        this.ruleIds[this.slot] = 'I';
     }
 
     /**
-     * set the final value for this cell. If the value is NOT possible, an exception is thrown. This method should only be called by -
-     * {@link State#setFinalCellVal(Cell, Val, char)}, which is responsible for propagating the finalization to the neighborhoods<br>
+     * set the final value for this cell. If the value is NOT possible, an exception is thrown. For a cell of a state the value is set by
+     * {@link State#setFinalCellVal(int, int, char)}, which propagates the finalization to the neighborhoods. The step is counted by the state then<br>
      * <br>
      * <b>Note:</b> see {@link #isFinalValueSet()} and {@link #isOnlyOneValLeft()}.
      *
@@ -94,31 +119,59 @@ public class Cell {
      */
     public void setFinalVal(Val val, BigInteger step, char ruleId) {
         DBC.notNull(val);
-        if ( this.step.compareTo(ZERO) == 1 ) {
+        setFinalVal(val.mask(), step.longValue(), ruleId);
+    }
+
+    /**
+     * set the final value for this cell, given as a single bit mask. See {@link #setFinalVal(Val, BigInteger, char)}.
+     */
+    void setFinalVal(int valMask, long step, char ruleId) {
+        if ( this.state != null ) {
+            this.state.setFinalCellVal(this.idx, valMask, ruleId);
+        } else if ( this.steps[this.slot] >= 0 ) {
             throw new DBCException("cell " + this + " got a final value for the second time - logical error of a rule");
-        } else if ( isValPossible(val) ) {
-            this.possibleVals = EnumSet.of(val);
-            this.step = step;
-            this.ruleId = ruleId;
+        } else if ( (this.possibleVals[this.slot] & valMask) != 0 ) {
+            this.possibleVals[this.slot] = (short) valMask;
+            this.steps[this.slot] = step;
+            this.ruleIds[this.slot] = ruleId;
         } else {
-            throw new DBCException(this + " should be set to " + val + ", but that is impossible");
+            throw new DBCException(this + " should be set to " + Val.ofMask(valMask) + ", but that is impossible");
         }
     }
 
     /**
-     * remove a value from the set of possible values. If the value was already removed, this is NO error.
+     * remove a value from the set of possible values. If the value was already removed, this is NO error. For a cell of a state the value is removed by
+     * {@link State#eliminate(int, int)}. If the state gets invalid, an exception is thrown
      *
      * @param val the value to be removed from the set of possible values
      */
     public void removeFromSetOfPossibleValues(Val val) {
-        this.possibleVals.remove(val);
+        if ( this.state == null ) {
+            this.possibleVals[this.slot] &= ~val.mask();
+        } else if ( isValPossible(val) && this.state.eliminate(this.idx, val.mask()) == Status.CONTRADICTION ) {
+            throw new DBCException(this + " without " + val + " makes the state invalid");
+        }
     }
 
     /**
-     * @return the set of possible values
+     * @return a snapshot of the set of possible values. Changes of the set are NOT written back to the cell.
      */
     public EnumSet<Val> getPossibleVals() {
-        return this.possibleVals;
+        return Val.toSet(this.possibleVals[this.slot]);
+    }
+
+    /**
+     * @return the mask of possible values (bit 0 for value 1, ..., bit 8 for value 9)
+     */
+    public short getMask() {
+        return this.possibleVals[this.slot];
+    }
+
+    /**
+     * @return the number of possible values
+     */
+    public int getNumberOfPossibleVals() {
+        return Integer.bitCount(this.possibleVals[this.slot]);
     }
 
     /**
@@ -128,7 +181,7 @@ public class Cell {
      * @return true, if possible; false otherwise
      */
     public boolean isValPossible(Val val) {
-        return this.possibleVals.contains(val);
+        return (this.possibleVals[this.slot] & val.mask()) != 0;
     }
 
     /**
@@ -138,8 +191,7 @@ public class Cell {
      * @return true, if the set of possible values has one element; false otherwise
      */
     public boolean isOnlyOneValLeft() {
-        int size = this.possibleVals.size();
-        return size == 1;
+        return getNumberOfPossibleVals() == 1;
     }
 
     /**
@@ -149,7 +201,7 @@ public class Cell {
      * @return true, if final value has been set explicitly; false otherwise
      */
     public boolean isFinalValueSet() {
-        return this.step.compareTo(ZERO) >= 0;
+        return this.steps[this.slot] >= 0;
     }
 
     /**
@@ -158,35 +210,49 @@ public class Cell {
      * @return the final value
      */
     public Val getTheFinalVal() {
-        int size = this.possibleVals.size();
-        DBC.isTrue(size == 1);
-        return this.possibleVals.iterator().next();
+        DBC.isTrue(isOnlyOneValLeft());
+        return Val.ofMask(this.possibleVals[this.slot]);
     }
 
     /**
      * @return the step, in which the final value was discovered. If the final value is unknown, return -1
      */
     public BigInteger getStep() {
-        return this.step;
+        return BigInteger.valueOf(this.steps[this.slot]);
+    }
+
+    /**
+     * @return the step, in which the final value was discovered. If the final value is unknown, return -1
+     */
+    public long getStepAsLong() {
+        return this.steps[this.slot];
     }
 
     /**
      * @return the ruleId, that discovered the final value. If the final value is unknown, return '?'
      */
     public char getRuleId() {
-        return this.ruleId;
+        return this.ruleIds[this.slot];
     }
 
     /**
      * @return the x-y-coordinates of this cell. X from left to right, starting with 1. Y from top to bottom, starting at 1.
      */
     public String toXY() {
-        return "{" + getX() + "," + getY() + "}";
+        return toXY(this.idx);
     }
 
     @Override
     public String toString() {
-        return "{" + getX() + "," + getY() + ";" + this.possibleVals.toString() + "}";
+        return "{" + getX() + "," + getY() + ";" + getPossibleVals().toString() + "}";
+    }
+
+    /**
+     * @param idx the index of a cell
+     * @return the x-y-coordinates of the cell. X from left to right, starting with 1. Y from top to bottom, starting at 1.
+     */
+    public static String toXY(int idx) {
+        return "{" + (idx % 9 + 1) + "," + (idx / 9 + 1) + "}";
     }
 
     /**
@@ -212,4 +278,4 @@ public class Cell {
             idx / 9 + 1
         };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,193 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a corpus of sudokus, stored as consecutive records of 81 bytes ('1' ... '9' for known values, '.' for unknown values).<br>
+ * <br>
+ * Synthetic corpora are generated locally from a few seed sudokus by transformations, that keep a sudoku valid and keep its number of solutions: the
+ * values are relabeled, the rows inside a band, the bands, the columns inside a stack and the stacks are permuted and the grid may be transposed. Thus the
+ * generated sudokus have the difficulty of their seeds, but look different to the solver. The generation is deterministic for a given random seed.
+ */
+public class Corpus {
+    private final byte[] records;
+    private final int size;
+
+    Corpus(byte[] records, int size) {
+        this.records = records;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of sudokus of the corpus
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the array of all records. The sudoku i starts at offset i * 81
+     */
+    public byte[] getRecords() {
+        return this.records;
+    }
+
+    /**
+     * @param i the number of the sudoku, from 0 ... size()-1
+     * @return the sudoku as a String of 81 chars
+     */
+    public String get(int i) {
+        DBC.isTrue(i >= 0 && i < this.size, "invalid index of a sudoku");
+        return new String(this.records, i * 81, 81, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * read a corpus from a file with one sudoku per line (81 chars, '1' ... '9' for known values, '.', '0' or ' ' for unknown values). Lines, that have not
+     * exactly 81 chars, are ignored. A binary corpus (see {@link BinaryCorpus}) is read, too.
+     *
+     * @param file the file to read
+     * @return the corpus
+     */
+    public static Corpus read(Path file) throws IOException {
+        if ( BinaryCorpus.isBinary(file) ) {
+            return BinaryCorpus.open(file).toCorpus();
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] records = new byte[81 * 1024];
+        int size = 0;
+        int lineStart = 0;
+        for ( int i = 0; i <= bytes.length; i++ ) {
+            if ( i == bytes.length || bytes[i] == '\n' ) {
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                if ( lineEnd - lineStart == 81 ) {
+                    if ( (size + 1) * 81 > records.length ) {
+                        records = Arrays.copyOf(records, records.length * 2);
+                    }
+                    System.arraycopy(bytes, lineStart, records, size * 81, 81);
+                    size++;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return new Corpus(records, size);
+    }
+
+    /**
+     * read the seed sudokus from all files of some directories (e.g. '_examples' and '_challenges'). Each file contains one sudoku, maybe split into many
+     * lines.
+     *
+     * @param dirs the directories to read
+     * @return the corpus of the seeds, sorted by file name
+     */
+    public static Corpus seeds(Path... dirs) throws IOException {
+        List<String> seeds = new ArrayList<>();
+        for ( Path dir : dirs ) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                stream.forEach(files::add);
+            }
+            files.sort(null);
+            for ( Path file : files ) {
+                String seed = Files.readAllLines(file).stream().collect(Collectors.joining());
+                Do.check(seed);
+                seeds.add(seed);
+            }
+        }
+        byte[] records = new byte[seeds.size() * 81];
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            for ( int j = 0; j < 81; j++ ) {
+                char c = seeds.get(i).charAt(j);
+                records[i * 81 + j] = c >= '1' && c <= '9' ? (byte) c : (byte) '.';
+            }
+        }
+        return new Corpus(records, seeds.size());
+    }
+
+    /**
+     * generate a synthetic corpus. The sudoku i is a random transformation of the seed i % seeds.size()
+     *
+     * @param seeds the sudokus to be transformed
+     * @param size the number of sudokus to generate
+     * @param randomSeed the seed of the random generator. The same seed generates the same corpus
+     * @return the generated corpus
+     */
+    public static Corpus generate(Corpus seeds, int size, long randomSeed) {
+        DBC.isTrue(seeds.size > 0 && size >= 0, "seeds are required and the size must not be negative");
+        Random random = new Random(randomSeed);
+        byte[] records = new byte[size * 81];
+        for ( int i = 0; i < size; i++ ) {
+            transform(seeds.records, (i % seeds.size) * 81, records, i * 81, random);
+        }
+        return new Corpus(records, size);
+    }
+
+    /**
+     * write this corpus to a file, one sudoku per line
+     *
+     * @param file the file to write
+     */
+    public void write(Path file) throws IOException {
+        byte[] bytes = new byte[this.size * 82];
+        for ( int i = 0; i < this.size; i++ ) {
+            System.arraycopy(this.records, i * 81, bytes, i * 82, 81);
+            bytes[i * 82 + 81] = '\n';
+        }
+        Files.write(file, bytes);
+    }
+
+    /**
+     * write a random transformation of a sudoku, that keeps the sudoku valid and keeps its number of solutions
+     */
+    static void transform(byte[] from, int fromOffset, byte[] to, int toOffset, Random random) {
+        int[] rows = permutationOfLines(random);
+        int[] cols = permutationOfLines(random);
+        int[] vals = permutation(9, random);
+        boolean transpose = random.nextBoolean();
+        for ( int r = 0; r < 9; r++ ) {
+            for ( int c = 0; c < 9; c++ ) {
+                int b = transpose ? from[fromOffset + cols[c] * 9 + rows[r]] : from[fromOffset + rows[r] * 9 + cols[c]];
+                to[toOffset + r * 9 + c] = b >= '1' && b <= '9' ? (byte) ('1' + vals[b - '1']) : (byte) '.';
+            }
+        }
+    }
+
+    /**
+     * @return a permutation of the 9 rows (or columns), that permutes the bands (or stacks) and the lines inside each band (or stack)
+     */
+    private static int[] permutationOfLines(Random random) {
+        int[] bands = permutation(3, random);
+        int[] lines = new int[9];
+        for ( int band = 0; band < 3; band++ ) {
+            int[] inBand = permutation(3, random);
+            for ( int line = 0; line < 3; line++ ) {
+                lines[band * 3 + line] = bands[band] * 3 + inBand[line];
+            }
+        }
+        return lines;
+    }
+
+    private static int[] permutation(int n, Random random) {
+        int[] permutation = new int[n];
+        for ( int i = 0; i < n; i++ ) {
+            permutation[i] = i;
+        }
+        for ( int i = n - 1; i > 0; i-- ) {
+            int j = random.nextInt(i + 1);
+            int tmp = permutation[i];
+            permutation[i] = permutation[j];
+            permutation[j] = tmp;
+        }
+        return permutation;
+    }
+}
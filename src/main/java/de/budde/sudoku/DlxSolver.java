@@ -0,0 +1,204 @@
+package de.budde.sudoku;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a solver, that models a sudoku as an exact cover problem and solves it by Knuth's Algorithm X with dancing links (DLX). The 324 columns are the
+ * constraints: every cell has one value (81), every neighborhood has every value once (27 * 9). The 729 rows are the candidates: value v in cell
+ * idx covers the 4 columns of its cell, its row, its column and its block. A solution is a set of 81 candidates covering every column exactly once.<br>
+ * <br>
+ * The links are kept in int arrays (one entry per node, the nodes 0 ... 324 are the root and the column headers), no object is created per node. The
+ * initial links are built once and copied for every sudoku. The initial values are covered before the search starts. The search always branches on the
+ * column with the fewest candidates left. Unlike the rules of {@link RuleMachine} it doesn't depend on the sudoku being "logical", thus its worst case is
+ * much better on sudokus constructed against rule based solvers.<br>
+ * <br>
+ * After a solution is found, the values found are assigned to the {@link State} of the solver with rule id 'D'. Thus the state has the same API as the
+ * state of {@link BatchSolver}. The nodes of the state count the candidates tried in columns with more than one candidate (the guesses). A DLX solver is NOT
+ * thread-safe, every thread needs its own one.
+ */
+public class DlxSolver implements Solver {
+    private static final char RULE_DLX_ID = 'D';
+    private static final int COLUMNS = 4 * 81;
+    private static final int CANDIDATES = 9 * 81;
+    private static final int NODES = 1 + COLUMNS + 4 * CANDIDATES;
+    private static final int ROOT = 0;
+
+    // the initial links, shared by all solvers
+    private static final int[] LEFT = new int[NODES];
+    private static final int[] RIGHT = new int[NODES];
+    private static final int[] UP = new int[NODES];
+    private static final int[] DOWN = new int[NODES];
+    private static final int[] COLUMN = new int[NODES];
+    private static final int[] CANDIDATE = new int[NODES];
+    private static final int[] SIZE = new int[1 + COLUMNS];
+
+    static {
+        for ( int col = 0; col <= COLUMNS; col++ ) {
+            LEFT[col] = col == 0 ? COLUMNS : col - 1;
+            RIGHT[col] = col == COLUMNS ? 0 : col + 1;
+            UP[col] = col;
+            DOWN[col] = col;
+            COLUMN[col] = col;
+            CANDIDATE[col] = -1;
+        }
+        int node = 1 + COLUMNS;
+        for ( int candidate = 0; candidate < CANDIDATES; candidate++ ) {
+            int idx = candidate / 9;
+            int val = candidate % 9;
+            for ( int i = 0; i < 4; i++ ) {
+                int col = i == 0 ? 1 + idx : 1 + 81 + Structure.UNITS_OF[idx][i - 1] * 9 + val;
+                LEFT[node] = i == 0 ? node + 3 : node - 1;
+                RIGHT[node] = i == 3 ? node - 3 : node + 1;
+                UP[node] = UP[col];
+                DOWN[node] = col;
+                DOWN[UP[col]] = node;
+                UP[col] = node;
+                COLUMN[node] = col;
+                CANDIDATE[node] = candidate;
+                SIZE[col]++;
+                node++;
+            }
+        }
+    }
+
+    private final State state = new State();
+    private final int[] left = new int[NODES];
+    private final int[] right = new int[NODES];
+    private final int[] up = new int[NODES];
+    private final int[] down = new int[NODES];
+    private final int[] size = new int[1 + COLUMNS];
+    private final int[] chosen = new int[81];
+    private final int[] solution = new int[81];
+    private int givens;
+
+    @Override
+    public Status solve(byte[] record, int offset) {
+        if ( this.state.load(record, offset) == Status.CONTRADICTION || !init() || search(0, 0, 1, 0) == 0 ) {
+            return Status.CONTRADICTION;
+        }
+        for ( int i = 0; i < 81; i++ ) {
+            int candidate = this.solution[i];
+            int idx = candidate / 9;
+            if ( !this.state.isFinalValueSet(idx) && this.state.assign(idx, 1 << candidate % 9, RULE_DLX_ID) == Status.CONTRADICTION ) {
+                return Status.CONTRADICTION;
+            }
+        }
+        return this.state.getNumberFinalized() == 81 ? Status.SOLVED : Status.CONTRADICTION;
+    }
+
+    @Override
+    public int countSolutions(byte[] record, int offset, int limit) {
+        DBC.isTrue(limit >= 1, "the limit must be at least 1");
+        if ( this.state.load(record, offset) == Status.CONTRADICTION || !init() ) {
+            return 0;
+        }
+        return search(0, 0, limit, 0);
+    }
+
+    @Override
+    public void writeSolution(byte[] record, int offset) {
+        this.state.store(record, offset);
+    }
+
+    @Override
+    public State getState() {
+        return this.state;
+    }
+
+    /**
+     * copy the initial links and cover the candidates of the initial values of the state
+     *
+     * @return false, if two initial values need the same column (this is detected by the state already, thus it is a safety net only)
+     */
+    private boolean init() {
+        System.arraycopy(LEFT, 0, this.left, 0, NODES);
+        System.arraycopy(RIGHT, 0, this.right, 0, NODES);
+        System.arraycopy(UP, 0, this.up, 0, NODES);
+        System.arraycopy(DOWN, 0, this.down, 0, NODES);
+        System.arraycopy(SIZE, 0, this.size, 0, SIZE.length);
+        this.givens = 0;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( this.state.isFinalValueSet(idx) ) {
+                int candidate = idx * 9 + Integer.numberOfTrailingZeros(this.state.getMask(idx));
+                int first = 1 + COLUMNS + 4 * candidate;
+                for ( int i = 0; i < 4; i++ ) {
+                    int col = COLUMN[first + i];
+                    if ( this.right[this.left[col]] != col ) {
+                        return false; // the column is covered already
+                    }
+                    cover(col);
+                }
+                this.chosen[this.givens++] = candidate;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * search the solutions below the actual cover. The first solution found is copied to 'solution'
+     *
+     * @param depth the number of candidates chosen by the search
+     * @param guesses the number of guesses on the path, i.e. candidates chosen from columns with more than one candidate
+     * @param limit the number of solutions, after which the search stops
+     * @param found the number of solutions found so far
+     * @return the number of solutions found so far plus the solutions below the actual cover, but not more than limit
+     */
+    private int search(int depth, int guesses, int limit, int found) {
+        if ( this.right[ROOT] == ROOT ) {
+            if ( found == 0 ) {
+                System.arraycopy(this.chosen, 0, this.solution, 0, this.givens + depth);
+            }
+            return found + 1;
+        }
+        int col = this.right[ROOT];
+        for ( int c = this.right[col]; c != ROOT && this.size[col] > 1; c = this.right[c] ) {
+            if ( this.size[c] < this.size[col] ) {
+                col = c;
+            }
+        }
+        if ( this.size[col] == 0 ) {
+            return found;
+        }
+        boolean guess = this.size[col] > 1;
+        cover(col);
+        for ( int row = this.down[col]; row != col && found < limit; row = this.down[row] ) {
+            if ( guess ) {
+                this.state.incrNodes(guesses + 1);
+            }
+            this.chosen[this.givens + depth] = CANDIDATE[row];
+            for ( int node = this.right[row]; node != row; node = this.right[node] ) {
+                cover(COLUMN[node]);
+            }
+            found = search(depth + 1, guess ? guesses + 1 : guesses, limit, found);
+            for ( int node = this.left[row]; node != row; node = this.left[node] ) {
+                uncover(COLUMN[node]);
+            }
+        }
+        uncover(col);
+        return found;
+    }
+
+    private void cover(int col) {
+        this.right[this.left[col]] = this.right[col];
+        this.left[this.right[col]] = this.left[col];
+        for ( int row = this.down[col]; row != col; row = this.down[row] ) {
+            for ( int node = this.right[row]; node != row; node = this.right[node] ) {
+                this.down[this.up[node]] = this.down[node];
+                this.up[this.down[node]] = this.up[node];
+                this.size[COLUMN[node]]--;
+            }
+        }
+    }
+
+    private void uncover(int col) {
+        for ( int row = this.up[col]; row != col; row = this.up[row] ) {
+            for ( int node = this.left[row]; node != row; node = this.left[node] ) {
+                this.size[COLUMN[node]]++;
+                this.down[this.up[node]] = node;
+                this.up[this.down[node]] = node;
+            }
+        }
+        this.right[this.left[col]] = col;
+        this.left[this.right[col]] = col;
+    }
+}
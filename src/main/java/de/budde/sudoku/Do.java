@@ -1,6 +1,7 @@
 package de.budde.sudoku;
 
 import java.util.EnumSet;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -9,6 +10,8 @@ import de.fraunhofer.iais.dbc.DBCException;
 
 public class Do {
     private static final Pattern VALIDCHARS = Pattern.compile("[123456789 \\.]{81,81}");
+    private static volatile boolean ruleLogging = true;
+    private static final ThreadLocal<Boolean> QUIET = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
     private Do() {
     }
@@ -34,6 +37,44 @@ public class Do {
         return cells;
     }
 
+    /**
+     * switch the logging of the rules on or off for the whole process. If off, the loggers are not even asked whether they are enabled. This is a
+     * configuration, e.g. of a benchmark. Runs, that must not log, use {@link #quietly(Supplier)}, which doesn't change the setting of other threads.
+     *
+     * @param on true, if the rules should log (depending on the logger configuration); false, if rules should never log
+     * @return the previous setting
+     */
+    public static boolean setRuleLogging(boolean on) {
+        boolean previous = ruleLogging;
+        ruleLogging = on;
+        return previous;
+    }
+
+    /**
+     * run a task with the logging of the rules switched off in the calling thread. Other threads are not affected, thus runs in many threads (the batch mode,
+     * the generator, ...) and single sudokus logging their rules don't interfere. A task running in more threads must call this in each of them. Calls may
+     * be nested.
+     *
+     * @param task the task to run
+     * @return the result of the task
+     */
+    public static <T> T quietly(Supplier<T> task) {
+        Boolean quiet = QUIET.get();
+        QUIET.set(Boolean.TRUE);
+        try {
+            return task.get();
+        } finally {
+            QUIET.set(quiet);
+        }
+    }
+
+    /**
+     * @return true, if the rules may log in the calling thread: the logging is switched on for the process and not switched off for the thread
+     */
+    static boolean isRuleLogging() {
+        return ruleLogging && !QUIET.get();
+    }
+
     /**
      * log, that a rule started
      *
@@ -66,7 +107,7 @@ public class Do {
      * @param msg to be logged
      */
     public static void logI(Logger log, int depth, String msg) {
-        if ( log.isInfoEnabled() ) {
+        if ( isRuleLogging() && log.isInfoEnabled() ) {
             StringBuilder sb = new StringBuilder();
             addIndentation(sb, depth);
             sb.append(msg);
@@ -74,11 +115,30 @@ public class Do {
         }
     }
 
+    /**
+     * log a message about a value of a cell with a indentation. The message is only build, if the logger is enabled. Format: "ruleId: msg cell {x,y} = val"
+     *
+     * @param log logger to use
+     * @param depth of indentation
+     * @param ruleId name of the rule, that logs
+     * @param msg to be logged, maybe empty
+     * @param idx index of the cell
+     * @param valMask the value as a single bit mask
+     */
+    public static void logCell(Logger log, int depth, char ruleId, String msg, int idx, int valMask) {
+        if ( isRuleLogging() && log.isInfoEnabled() ) {
+            StringBuilder sb = new StringBuilder();
+            addIndentation(sb, depth);
+            sb.append(ruleId).append(": ").append(msg).append("cell ").append(Cell.toXY(idx)).append(" = ").append(Val.ofMask(valMask));
+            log.info(sb.toString());
+        }
+    }
+
     /**
      * help to log that a rule started or finished.
      */
     private static void logRule(Logger log, int depth, String prefix, char ruleId, String msg, State state) {
-        if ( log.isInfoEnabled() ) {
+        if ( isRuleLogging() && log.isInfoEnabled() ) {
             StringBuilder sb = new StringBuilder();
             addIndentation(sb, depth);
             sb.append(prefix).append(ruleId).append(": ");
@@ -108,7 +168,7 @@ public class Do {
      *
      * @param aS the string to check
      */
-    private static void check(String aS) {
+    static void check(String aS) {
         if ( aS == null || aS.length() != 81 ) {
             throw new DBCException("invalid size. Must be 81");
         } else if ( !VALIDCHARS.matcher(aS).matches() ) {
@@ -0,0 +1,239 @@
+package de.budde.sudoku;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * a generator of proper sudokus (sudokus with exactly one solution). A random full grid is created by a search, that tries the values in random order. Then
+ * clues are removed in random order (single cells or pairs of cells symmetric to the center), as long as the sudoku keeps a unique solution. The generation
+ * stops, when the target number of clues is reached or when no clue can be removed any more (the sudoku is minimal).<br>
+ * <br>
+ * Each removal attempt is a uniqueness check by {@link RuleMachine#countSolutions(int, State, int)}. All checks reuse one {@link State}, that is reloaded
+ * from the actual puzzle. Thus a generator allocates no memory per attempt. A generator is NOT thread-safe, every thread needs its own one. The output
+ * depends only on the seed.
+ */
+public class Generator {
+    private static final byte[] EMPTY = empty();
+    private static final long SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    /**
+     * how clues are removed
+     */
+    public enum Symmetry {
+        /**
+         * single clues are removed
+         */
+        NONE,
+        /**
+         * a clue and the clue symmetric to the center are removed together. The sudoku is symmetric under a rotation by 180 degree. A pair is removed only,
+         * if at least the target number of clues is left. Pairs keep the number of clues odd, thus the center cell is removed first for an even target and
+         * kept for an odd one
+         */
+        ROTATIONAL
+    }
+
+    private final State state = new State();
+    private final Random random;
+    private final byte[] grid = new byte[81];
+    private final byte[] puzzle = new byte[81];
+    private final int[] order = new int[81];
+
+    /**
+     * create a generator
+     *
+     * @param seed the seed of the random generator. The same seed generates the same sequence of sudokus
+     */
+    public Generator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * generate a proper sudoku
+     *
+     * @param targetClues the number of clues, at which the removal stops. 0 (or any number below the minimal number) generates a minimal sudoku
+     * @param symmetry how clues are removed
+     * @return the sudoku as 81 chars, '1' ... '9' for clues and '.' for unknown cells
+     */
+    public String generate(int targetClues, Symmetry symmetry) {
+        byte[] record = new byte[81];
+        Do.quietly(() -> generate(targetClues, symmetry, record, 0));
+        return new String(record, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * generate a proper sudoku into an array. The rules log, if not switched off by {@link Do#quietly(java.util.function.Supplier)}
+     *
+     * @param targetClues the number of clues, at which the removal stops. It is never undershot, but not reached, if no clue can be removed any more. 0
+     *        (or any number below the minimal number, for {@link Symmetry#ROTATIONAL} an even one) generates a minimal sudoku
+     * @param symmetry how clues are removed
+     * @param record the array receiving the sudoku as 81 bytes
+     * @param offset the index of the first byte to write
+     * @return the number of clues of the sudoku generated
+     */
+    public int generate(int targetClues, Symmetry symmetry, byte[] record, int offset) {
+        DBC.notNull(symmetry);
+        fullGrid();
+        System.arraycopy(this.grid, 0, this.puzzle, 0, 81);
+        int clues = 81;
+        if ( symmetry == Symmetry.ROTATIONAL && targetClues < 81 && targetClues % 2 == 0 ) {
+            // pairs keep the number of clues odd, thus an even target needs the center cell. Removed first, the sudoku is unique for sure
+            this.puzzle[40] = '.';
+            clues--;
+        }
+        shuffleCells();
+        for ( int i = 0; i < 81 && clues > targetClues; i++ ) {
+            int idx = this.order[i];
+            int partner = symmetry == Symmetry.ROTATIONAL ? 80 - idx : idx;
+            int removed = idx == partner ? 1 : 2;
+            if ( this.puzzle[idx] == '.' || clues - removed < targetClues || symmetry == Symmetry.ROTATIONAL && removed == 1 ) {
+                // a pair must not undershoot the target. The center cell is removed before or kept for an odd target
+                continue;
+            }
+            this.puzzle[idx] = '.';
+            this.puzzle[partner] = '.';
+            if ( isUnique() ) {
+                clues -= removed;
+            } else {
+                this.puzzle[idx] = this.grid[idx];
+                this.puzzle[partner] = this.grid[partner];
+            }
+        }
+        System.arraycopy(this.puzzle, 0, record, offset, 81);
+        return clues;
+    }
+
+    /**
+     * @return the solution of the sudoku generated last, as 81 chars '1' ... '9'
+     */
+    public String getSolution() {
+        return new String(this.grid, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * generate many proper sudokus in parallel. The sudoku i is generated by a generator seeded from 'seed' and i, thus the corpus depends on the seed, but
+     * NOT on the number of threads. The rules don't log.
+     *
+     * @param size the number of sudokus to generate
+     * @param targetClues the number of clues, at which the removal stops. 0 generates minimal sudokus
+     * @param symmetry how clues are removed
+     * @param seed the seed of the corpus
+     * @param threads the number of worker threads, at least 1. If 1, the calling thread generates the sudokus
+     * @return the generated sudokus
+     */
+    public static Corpus generate(int size, int targetClues, Symmetry symmetry, long seed, int threads) {
+        DBC.isTrue(size >= 0 && threads >= 1, "the size must not be negative and at least one thread is required");
+        byte[] records = new byte[size * 81];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> Do.quietly(() -> {
+            Generator generator = new Generator(seed);
+            for ( int i = next.getAndIncrement(); i < size; i = next.getAndIncrement() ) {
+                generator.random.setSeed(seed + i * SEED_INCREMENT);
+                generator.generate(targetClues, symmetry, records, i * 81);
+            }
+            return null;
+        });
+        ExecutorService workers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            if ( workers == null ) {
+                worker.run();
+            } else {
+                List<Future<?>> futures = new ArrayList<>();
+                for ( int t = 0; t < threads; t++ ) {
+                    futures.add(workers.submit(worker));
+                }
+                for ( Future<?> future : futures ) {
+                    future.get();
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new DBCException("generation interrupted", e);
+        } catch ( ExecutionException e ) {
+            throw new DBCException("generation failed", e.getCause());
+        } finally {
+            if ( workers != null ) {
+                workers.shutdownNow();
+            }
+        }
+        return new Corpus(records, size);
+    }
+
+    /**
+     * create a random full grid into the array 'grid'
+     */
+    private void fullGrid() {
+        this.state.load(EMPTY, 0);
+        if ( RuleMachine.propagate(0, this.state) == Status.CONTRADICTION || !fillRandomly() ) {
+            throw new DBCException("no full grid found - logical error of the solver");
+        }
+        this.state.store(this.grid, 0);
+    }
+
+    /**
+     * the search of {@link RuleMachine#searchInPlace(int, State)}, but the values of a cell are tried in random order
+     */
+    private boolean fillRandomly() {
+        final char ruleGeneratorId = 'G';
+        int idx = RuleMachine.pickCell(this.state);
+        if ( idx < 0 ) {
+            return true;
+        }
+        int mark = this.state.mark();
+        for ( int mask = this.state.getMask(idx); mask != 0; ) {
+            int valMask = nthBit(mask, this.random.nextInt(Integer.bitCount(mask)));
+            mask &= ~valMask;
+            Status status = this.state.assign(idx, valMask, ruleGeneratorId);
+            if ( status != Status.CONTRADICTION ) {
+                status = RuleMachine.propagate(1, this.state);
+            }
+            if ( status == Status.SOLVED || status == Status.CONSISTENT && fillRandomly() ) {
+                return true;
+            }
+            this.state.rollback(mark);
+        }
+        return false;
+    }
+
+    private boolean isUnique() {
+        return this.state.load(this.puzzle, 0) != Status.CONTRADICTION && RuleMachine.countSolutions(0, this.state, 2) == 1;
+    }
+
+    private void shuffleCells() {
+        for ( int i = 0; i < 81; i++ ) {
+            this.order[i] = i;
+        }
+        for ( int i = 80; i > 0; i-- ) {
+            int j = this.random.nextInt(i + 1);
+            int tmp = this.order[i];
+            this.order[i] = this.order[j];
+            this.order[j] = tmp;
+        }
+    }
+
+    /**
+     * @return the mask with the n-th lowest bit (starting from 0) of the mask given
+     */
+    private static int nthBit(int mask, int n) {
+        for ( int i = 0; i < n; i++ ) {
+            mask &= mask - 1;
+        }
+        return mask & -mask;
+    }
+
+    private static byte[] empty() {
+        byte[] empty = new byte[81];
+        Arrays.fill(empty, (byte) '.');
+        return empty;
+    }
+}
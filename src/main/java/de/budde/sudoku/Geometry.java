@@ -0,0 +1,349 @@
+package de.budde.sudoku;
+
+import java.util.Arrays;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * the geometry of a sudoku with blocks of 'boxRows' x 'boxCols' cells. The grid has n = boxRows * boxCols rows, columns, blocks and values, thus n * n
+ * cells. The standard sudoku is 3 x 3 (see {@link #STANDARD}), 16 x 16 sudokus have blocks of 4 x 4, 25 x 25 sudokus blocks of 5 x 5.<br>
+ * <br>
+ * Variants declare more units, each of n cells, that must contain every value exactly once: both diagonals ({@link #withDiagonals()}), the extra windoku
+ * boxes ({@link #withWindoku()}) or any other cells ({@link #withUnits(int[][])}). A jigsaw sudoku replaces the blocks by irregular regions read from a
+ * region map ({@link #jigsaw(String)}).<br>
+ * <br>
+ * The tables are generated, when the geometry is created. They have the layout of the tables of {@link Structure}: the unit ids are 0 ... n-1 for the
+ * rows, n ... 2n-1 for the columns, 2n ... 3n-1 for the blocks (or regions) and 3n ... for the extra units, the members of a unit are sorted by cell index.
+ * The extra units are compiled into the same tables, thus the rules and the search don't know about variants and a variant costs no more per step than
+ * the classic sudoku (only the cells of an extra unit have more peers). The values of a cell are a bit mask of n bits in an int, thus n must not be
+ * greater than 31. Values are written as '1' ... '9', 'A', 'B', ... (a 16 x 16 sudoku uses '1' ... 'G'), unknown cells as '.' or '0'. A geometry is
+ * immutable.
+ */
+public class Geometry {
+    private static final String SYMBOLS = "123456789ABCDEFGHIJKLMNOPQRSTUV";
+
+    /**
+     * the geometry of the standard 9 x 9 sudoku
+     */
+    public static final Geometry STANDARD = new Geometry(3, 3);
+
+    private final int boxRows;
+    private final int boxCols;
+    private final int size;
+    private final int cells;
+    private final int allValues;
+    private final int[] regionOf;
+    private final int[][] extraUnits;
+    private final String variants;
+    private final int[][] unitMembers;
+    private final int[][] unitsOf;
+    private final int[][] unitPositions;
+    private final int[][] peers;
+
+    /**
+     * create a geometry and generate its tables
+     *
+     * @param boxRows the number of rows of a block, at least 1
+     * @param boxCols the number of columns of a block, at least 1
+     */
+    public Geometry(int boxRows, int boxCols) {
+        this(boxRows, boxCols, blocks(boxRows, boxCols), new int[0][], "");
+    }
+
+    /**
+     * create a geometry and generate its tables
+     *
+     * @param boxRows the number of rows of a block; 0 for a jigsaw sudoku
+     * @param boxCols the number of columns of a block; 0 for a jigsaw sudoku
+     * @param regionOf the block (or region) 0 ... n-1 of every cell
+     * @param extraUnits the extra units, each with n different cells
+     * @param variants the names of the variants, for {@link #toString()}
+     */
+    private Geometry(int boxRows, int boxCols, int[] regionOf, int[][] extraUnits, String variants) {
+        int n = (int) Math.round(Math.sqrt(regionOf.length));
+        this.boxRows = boxRows;
+        this.boxCols = boxCols;
+        this.size = n;
+        this.cells = n * n;
+        this.allValues = (1 << n) - 1;
+        this.regionOf = regionOf;
+        this.extraUnits = extraUnits;
+        this.variants = variants;
+        int units = 3 * n + extraUnits.length;
+        this.unitMembers = new int[units][];
+        int[] unitsPerCell = new int[this.cells];
+        for ( int[] extraUnit : extraUnits ) {
+            DBC.isTrue(extraUnit.length == n, "an extra unit must have n cells");
+            for ( int idx : extraUnit ) {
+                DBC.isTrue(idx >= 0 && idx < this.cells, "invalid cell of an extra unit");
+                unitsPerCell[idx]++;
+            }
+        }
+        this.unitsOf = new int[this.cells][];
+        this.unitPositions = new int[this.cells][];
+        for ( int idx = 0; idx < this.cells; idx++ ) {
+            this.unitsOf[idx] = new int[3 + unitsPerCell[idx]];
+            this.unitPositions[idx] = new int[3 + unitsPerCell[idx]];
+        }
+        for ( int unit = 0; unit < units; unit++ ) {
+            this.unitMembers[unit] = new int[n];
+        }
+        int[] filled = new int[units];
+        int[] unitsFilled = new int[this.cells];
+        for ( int idx = 0; idx < this.cells; idx++ ) {
+            addToUnit(idx / n, idx, filled, unitsFilled);
+            addToUnit(n + idx % n, idx, filled, unitsFilled);
+            addToUnit(2 * n + regionOf[idx], idx, filled, unitsFilled);
+        }
+        for ( int e = 0; e < extraUnits.length; e++ ) {
+            int[] members = extraUnits[e].clone();
+            Arrays.sort(members);
+            for ( int i = 0; i < n; i++ ) {
+                DBC.isTrue(i == 0 || members[i] != members[i - 1], "the cells of an extra unit must be different");
+                addToUnit(3 * n + e, members[i], filled, unitsFilled);
+            }
+        }
+        this.peers = new int[this.cells][];
+        boolean[] isPeer = new boolean[this.cells];
+        for ( int idx = 0; idx < this.cells; idx++ ) {
+            int count = 0;
+            for ( int unit : this.unitsOf[idx] ) {
+                for ( int other : this.unitMembers[unit] ) {
+                    if ( other != idx && !isPeer[other] ) {
+                        isPeer[other] = true;
+                        count++;
+                    }
+                }
+            }
+            this.peers[idx] = new int[count];
+            count = 0;
+            for ( int other = 0; other < this.cells; other++ ) {
+                if ( isPeer[other] ) {
+                    isPeer[other] = false;
+                    this.peers[idx][count++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * create the geometry of a jigsaw sudoku: the blocks are replaced by irregular regions
+     *
+     * @param regionMap n * n chars, the region of every cell. Cells with the same char belong to the same region. There must be n regions of n cells
+     * @return the geometry
+     */
+    public static Geometry jigsaw(String regionMap) {
+        DBC.notNull(regionMap);
+        int n = (int) Math.round(Math.sqrt(regionMap.length()));
+        DBC.isTrue(n * n == regionMap.length() && n >= 1 && n <= SYMBOLS.length(), "the region map must have n * n chars, n <= 31");
+        StringBuilder regionChars = new StringBuilder();
+        int[] regionOf = new int[n * n];
+        int[] regionSize = new int[n];
+        for ( int idx = 0; idx < n * n; idx++ ) {
+            char c = regionMap.charAt(idx);
+            int region = regionChars.indexOf(String.valueOf(c));
+            if ( region < 0 ) {
+                DBC.isTrue(regionChars.length() < n, "the region map must have n regions");
+                region = regionChars.length();
+                regionChars.append(c);
+            }
+            regionOf[idx] = region;
+            regionSize[region]++;
+        }
+        for ( int region = 0; region < n; region++ ) {
+            DBC.isTrue(regionSize[region] == n, "every region must have n cells");
+        }
+        return new Geometry(0, 0, regionOf, new int[0][], " jigsaw");
+    }
+
+    /**
+     * @return this geometry with both diagonals as extra units (diagonal sudoku, sudoku X)
+     */
+    public Geometry withDiagonals() {
+        int n = this.size;
+        int[][] diagonals = new int[2][n];
+        for ( int i = 0; i < n; i++ ) {
+            diagonals[0][i] = i * n + i;
+            diagonals[1][i] = i * n + n - 1 - i;
+        }
+        return with(diagonals, " diagonal");
+    }
+
+    /**
+     * @return this geometry with the extra boxes of a windoku as extra units. The extra boxes have the size of a block and are separated by one row (column)
+     *         from each other and from the border. A 9 x 9 windoku has 4 extra boxes
+     */
+    public Geometry withWindoku() {
+        DBC.isTrue(this.boxRows > 0, "a jigsaw sudoku has no windoku boxes");
+        int n = this.size;
+        int boxesDown = (n - 1) / (this.boxRows + 1);
+        int boxesAcross = (n - 1) / (this.boxCols + 1);
+        DBC.isTrue(boxesDown > 0 && boxesAcross > 0, "the grid is too small for windoku boxes");
+        int[][] boxes = new int[boxesDown * boxesAcross][n];
+        for ( int b = 0; b < boxes.length; b++ ) {
+            int top = 1 + b / boxesAcross * (this.boxRows + 1);
+            int left = 1 + b % boxesAcross * (this.boxCols + 1);
+            for ( int i = 0; i < n; i++ ) {
+                boxes[b][i] = (top + i / this.boxCols) * n + left + i % this.boxCols;
+            }
+        }
+        return with(boxes, " windoku");
+    }
+
+    /**
+     * @param units more units, each with n different cells, that must contain every value exactly once
+     * @return this geometry with the units as extra units
+     */
+    public Geometry withUnits(int[]... units) {
+        DBC.notNull(units);
+        return with(units, " units");
+    }
+
+    /**
+     * @param n the number of rows of the grid, a square number (4, 9, 16, 25)
+     * @return the geometry of the grid with square blocks
+     */
+    public static Geometry ofSize(int n) {
+        int boxSize = (int) Math.round(Math.sqrt(n));
+        DBC.isTrue(boxSize * boxSize == n, "the size of a grid with square blocks must be a square number");
+        return n == 9 ? STANDARD : new Geometry(boxSize, boxSize);
+    }
+
+    /**
+     * @return the number of rows of a block; 0 for a jigsaw sudoku
+     */
+    public int getBoxRows() {
+        return this.boxRows;
+    }
+
+    /**
+     * @return the number of columns of a block; 0 for a jigsaw sudoku
+     */
+    public int getBoxCols() {
+        return this.boxCols;
+    }
+
+    /**
+     * @return the number of rows (and columns, blocks and values) of the grid
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of cells of the grid
+     */
+    public int getCells() {
+        return this.cells;
+    }
+
+    /**
+     * @return the number of units (rows, columns, blocks and extra units) of the grid
+     */
+    public int getUnits() {
+        return this.unitMembers.length;
+    }
+
+    /**
+     * @return the mask of all values
+     */
+    public int getAllValues() {
+        return this.allValues;
+    }
+
+    /**
+     * @return the members of a unit, sorted by cell index
+     */
+    int[] getUnitMembers(int unit) {
+        return this.unitMembers[unit];
+    }
+
+    /**
+     * @return the ids of the units of a cell: {row, column, block, extra units ...}
+     */
+    int[] getUnitsOf(int idx) {
+        return this.unitsOf[idx];
+    }
+
+    /**
+     * @return the positions of a cell in its units
+     */
+    int[] getUnitPositions(int idx) {
+        return this.unitPositions[idx];
+    }
+
+    /**
+     * @return the peers of a cell: all cells, which share at least one unit with the cell (the cell itself is excluded)
+     */
+    int[] getPeers(int idx) {
+        return this.peers[idx];
+    }
+
+    /**
+     * @param c a char of a sudoku
+     * @return the value of the char as 0 ... n-1; -1 for an unknown cell ('.', '0' or ' ')
+     */
+    public int valueOf(char c) {
+        if ( c == '.' || c == '0' || c == ' ' ) {
+            return -1;
+        }
+        int val = SYMBOLS.indexOf(Character.toUpperCase(c));
+        if ( val < 0 || val >= this.size ) {
+            throw new DBCException("invalid char " + c + ". Must be " + SYMBOLS.substring(0, this.size) + ", '0', ' ' or '.'");
+        }
+        return val;
+    }
+
+    /**
+     * @param val a value 0 ... n-1
+     * @return the char of the value
+     */
+    public char symbolOf(int val) {
+        return SYMBOLS.charAt(val);
+    }
+
+    /**
+     * check a sudoku given as a String: n * n chars, that are values or unknown cells
+     *
+     * @param aS the sudoku
+     */
+    public void check(String aS) {
+        if ( aS == null || aS.length() != this.cells ) {
+            throw new DBCException("invalid size. Must be " + this.cells);
+        }
+        for ( int i = 0; i < this.cells; i++ ) {
+            valueOf(aS.charAt(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        String blocks = this.boxRows > 0 ? " (blocks " + this.boxRows + "x" + this.boxCols + ")" : "";
+        return this.size + "x" + this.size + blocks + this.variants;
+    }
+
+    private Geometry with(int[][] units, String variant) {
+        int[][] extra = Arrays.copyOf(this.extraUnits, this.extraUnits.length + units.length);
+        for ( int u = 0; u < units.length; u++ ) {
+            extra[this.extraUnits.length + u] = units[u].clone();
+        }
+        return new Geometry(this.boxRows, this.boxCols, this.regionOf, extra, this.variants + variant);
+    }
+
+    private void addToUnit(int unit, int idx, int[] filled, int[] unitsFilled) {
+        this.unitsOf[idx][unitsFilled[idx]] = unit;
+        this.unitPositions[idx][unitsFilled[idx]++] = filled[unit];
+        this.unitMembers[unit][filled[unit]++] = idx;
+    }
+
+    private static int[] blocks(int boxRows, int boxCols) {
+        DBC.isTrue(boxRows >= 1 && boxCols >= 1 && boxRows * boxCols <= SYMBOLS.length(), "blocks must have 1 ... 31 cells");
+        int n = boxRows * boxCols;
+        int[] regionOf = new int[n * n];
+        for ( int idx = 0; idx < n * n; idx++ ) {
+            regionOf[idx] = idx / n / boxRows * boxRows + idx % n / boxCols;
+        }
+        return regionOf;
+    }
+}
@@ -0,0 +1,190 @@
+package de.budde.sudoku;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a solver for sudokus of any {@link Geometry} (4 x 4, 9 x 9, 16 x 16, 25 x 25, ...). It applies the rules of the propagation of {@link RuleMachine} -
+ * naked singles (rule 'O') and hidden singles (rule 'E') - and the backtracking search with the trail of {@link RuleMachine#searchInPlace(int, State)} (rule
+ * 'B'), but to a {@link GridState}, whose tables and masks are sized by the geometry.<br>
+ * <br>
+ * The standard 9 x 9 sudoku keeps its own, hard-wired engines ({@link State}, {@link BatchSolver}, ...), that are faster. A grid solver owns its state,
+ * which is reused for every sudoku. It is NOT thread-safe, every thread needs its own one.
+ */
+public class GridSolver {
+    private final GridState state;
+
+    /**
+     * create a solver for the sudokus of a geometry
+     *
+     * @param geometry the geometry of the sudokus
+     */
+    public GridSolver(Geometry geometry) {
+        this.state = new GridState(geometry);
+    }
+
+    /**
+     * solve a sudoku. The solution (or the state, when the search failed) is available by {@link #getState()}
+     *
+     * @param aS the sudoku as a String of n * n chars, see {@link Geometry#valueOf(char)}
+     * @return {@link Status#SOLVED}, if a solution was found; {@link Status#CONTRADICTION} otherwise
+     */
+    public Status solve(String aS) {
+        Status status = this.state.load(aS);
+        if ( status == Status.CONSISTENT ) {
+            status = propagate(this.state);
+        }
+        if ( status == Status.CONSISTENT ) {
+            status = searchInPlace(0, this.state) ? Status.SOLVED : Status.CONTRADICTION;
+        }
+        return status;
+    }
+
+    /**
+     * count the solutions of a sudoku, but stop counting at a limit
+     *
+     * @param aS the sudoku as a String of n * n chars
+     * @param limit the limit, at least 1
+     * @return the number of solutions, at most 'limit'
+     */
+    public int countSolutions(String aS, int limit) {
+        DBC.isTrue(limit >= 1, "the limit must be positive");
+        Status status = this.state.load(aS);
+        if ( status == Status.CONSISTENT ) {
+            status = propagate(this.state);
+        }
+        if ( status == Status.CONTRADICTION ) {
+            return 0;
+        } else if ( status == Status.SOLVED ) {
+            return 1;
+        } else {
+            return count(0, this.state, limit);
+        }
+    }
+
+    /**
+     * @return the state of the last sudoku solved. It is overwritten by the next one
+     */
+    public GridState getState() {
+        return this.state;
+    }
+
+    /**
+     * apply naked and hidden singles, until the queues of the state are empty. See {@link RuleMachine#propagate(int, State)}
+     */
+    static Status propagate(GridState state) {
+        while ( true ) {
+            if ( nakedSingles(state) == Status.CONTRADICTION ) {
+                state.clearQueues();
+                return Status.CONTRADICTION;
+            }
+            int unit = state.pollUnit();
+            if ( unit < 0 ) {
+                return state.getNumberFinalized() == state.getGeometry().getCells() ? Status.SOLVED : Status.CONSISTENT;
+            } else if ( hiddenSingles(state, unit) == Status.CONTRADICTION ) {
+                state.clearQueues();
+                return Status.CONTRADICTION;
+            }
+        }
+    }
+
+    private static Status nakedSingles(GridState state) {
+        final char ruleOneValLeftId = 'O';
+        for ( int idx = state.pollCell(); idx >= 0; idx = state.pollCell() ) {
+            int mask = state.getMask(idx);
+            if ( !state.isFinalValueSet(idx) && Integer.bitCount(mask) == 1 ) {
+                if ( state.assign(idx, mask, ruleOneValLeftId) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    private static Status hiddenSingles(GridState state, int unit) {
+        final char ruleExcludedValId = 'E';
+        int[] members = state.getGeometry().getUnitMembers(unit);
+        int n = state.getGeometry().getSize();
+        for ( int v = 0; v < n; v++ ) {
+            // not a loop over the masks: for n = 31 the mask would overflow
+            int valMask = 1 << v;
+            int places = state.getPlaces(unit, valMask);
+            if ( places == 0 ) {
+                return Status.CONTRADICTION;
+            } else if ( (places & (places - 1)) == 0 ) {
+                int place = members[Integer.numberOfTrailingZeros(places)];
+                if ( !state.isFinalValueSet(place) ) {
+                    if ( state.assign(place, valMask, ruleExcludedValId) == Status.CONTRADICTION ) {
+                        return Status.CONTRADICTION;
+                    }
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    private static boolean searchInPlace(int recDepth, GridState state) {
+        final char ruleBacktrackerId = 'B';
+        int idx = pickCell(state);
+        if ( idx < 0 ) {
+            return true;
+        }
+        int mark = state.mark();
+        for ( int m = state.getMask(idx); m != 0; m &= m - 1 ) {
+            state.incrNodes(recDepth + 1);
+            Status status = state.assign(idx, m & -m, ruleBacktrackerId);
+            if ( status != Status.CONTRADICTION ) {
+                status = propagate(state);
+            }
+            if ( status == Status.SOLVED || status == Status.CONSISTENT && searchInPlace(recDepth + 1, state) ) {
+                return true;
+            }
+            state.rollback(mark);
+        }
+        return false;
+    }
+
+    private static int count(int recDepth, GridState state, int limit) {
+        int idx = pickCell(state);
+        if ( idx < 0 ) {
+            return 1;
+        }
+        int mark = state.mark();
+        int solutions = 0;
+        for ( int m = state.getMask(idx); m != 0 && solutions < limit; m &= m - 1 ) {
+            state.incrNodes(recDepth + 1);
+            Status status = state.assign(idx, m & -m, 'B');
+            if ( status != Status.CONTRADICTION ) {
+                status = propagate(state);
+            }
+            if ( status == Status.SOLVED ) {
+                solutions++;
+            } else if ( status == Status.CONSISTENT ) {
+                solutions += count(recDepth + 1, state, limit - solutions);
+            }
+            state.rollback(mark);
+        }
+        return solutions;
+    }
+
+    /**
+     * @return the cell with the least number of possible values, that is not finalized; -1 if all cells are finalized
+     */
+    private static int pickCell(GridState state) {
+        int cells = state.getGeometry().getCells();
+        int minValsIdx = -1;
+        int minValsSize = Integer.MAX_VALUE;
+        for ( int idx = 0; idx < cells; idx++ ) {
+            if ( !state.isFinalValueSet(idx) ) {
+                int size = Integer.bitCount(state.getMask(idx));
+                if ( size < minValsSize ) {
+                    minValsSize = size;
+                    minValsIdx = idx;
+                    if ( minValsSize <= 2 ) {
+                        break;
+                    }
+                }
+            }
+        }
+        return minValsIdx;
+    }
+}
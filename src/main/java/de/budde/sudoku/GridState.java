@@ -0,0 +1,423 @@
+package de.budde.sudoku;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * the state of a sudoku of any {@link Geometry}: the possible values of the cells as bit masks, the places of the values in the units, the work queues of
+ * the rules and the trail of changes. It has the design of {@link State} (primitive arrays only, no object per cell, changes are recorded on a trail and
+ * rolled back by the search), but the sizes come from the geometry. A grid state is reused for many sudokus of the same geometry. It is NOT thread-safe.
+ */
+public class GridState {
+    private static final long TRAIL_FINAL = 1L << 62;
+
+    private final Geometry geometry;
+    private final int n;
+    private final int cells;
+    private final int units;
+    private final int[] possibleVals;
+    // places[unit * n + v]: mask of the positions in the unit, where the value v is still possible
+    private final int[] places;
+    private final long[] cellSteps;
+    private final char[] ruleIds;
+    // an entry is: idx | mask << 16 | TRAIL_FINAL, if the cell was finalized
+    private final long[] trail;
+    private int trailTop;
+    private long steps;
+    private long nodes;
+    private int maxDepth;
+    private int finalized;
+    private final int[] cellQueue;
+    private final boolean[] cellQueued;
+    private int cellQueueHead;
+    private int cellQueueSize;
+    private final int[] unitQueue;
+    private final boolean[] unitQueued;
+    private int unitQueueHead;
+    private int unitQueueSize;
+
+    /**
+     * create a state without any cell values. It has to be initialized by {@link #load(String)}
+     *
+     * @param geometry the geometry of the sudokus
+     */
+    public GridState(Geometry geometry) {
+        DBC.notNull(geometry);
+        this.geometry = geometry;
+        this.n = geometry.getSize();
+        this.cells = geometry.getCells();
+        this.units = geometry.getUnits();
+        this.possibleVals = new int[this.cells];
+        this.places = new int[this.units * this.n];
+        this.cellSteps = new long[this.cells];
+        this.ruleIds = new char[this.cells];
+        this.trail = new long[this.cells * (this.n + 1)]; // a cell has at most n-1 removals and 1 finalization
+        this.cellQueue = new int[this.cells];
+        this.cellQueued = new boolean[this.cells];
+        this.unitQueue = new int[this.units];
+        this.unitQueued = new boolean[this.units];
+    }
+
+    /**
+     * @return the geometry of the state
+     */
+    public Geometry getGeometry() {
+        return this.geometry;
+    }
+
+    /**
+     * reinitialize this state from a sudoku given as a String of n * n chars (see {@link Geometry#valueOf(char)}). The initial values are propagated to the
+     * peers, further rules are NOT applied.
+     *
+     * @param aS the sudoku
+     * @return {@link Status#CONTRADICTION}, if the initial values are contradictory; {@link Status#CONSISTENT} otherwise
+     */
+    public Status load(String aS) {
+        this.geometry.check(aS);
+        this.trailTop = 0;
+        this.steps = 0;
+        this.nodes = 0;
+        this.maxDepth = 0;
+        this.finalized = 0;
+        clearQueues();
+        int all = this.geometry.getAllValues();
+        for ( int i = 0; i < this.cells; i++ ) {
+            this.possibleVals[i] = all;
+            this.cellSteps[i] = -1;
+            this.ruleIds[i] = '?';
+        }
+        int allPlaces = (1 << this.n) - 1;
+        for ( int p = 0; p < this.places.length; p++ ) {
+            this.places[p] = allPlaces;
+        }
+        boolean consistent = true;
+        for ( int i = 0; i < this.cells; i++ ) {
+            int val = this.geometry.valueOf(aS.charAt(i));
+            if ( val >= 0 ) {
+                consistent &= assign(i, 1 << val, 'I') == Status.CONSISTENT;
+                this.cellSteps[i] = 0;
+            }
+        }
+        this.trailTop = 0; // the initial values are never rolled back
+        this.steps = 0;
+        enqueueAll();
+        return consistent ? Status.CONSISTENT : Status.CONTRADICTION;
+    }
+
+    /**
+     * finalize a value of a cell and remove it from the peers. See {@link State#assign(int, int, char)}
+     *
+     * @param idx the index of the cell
+     * @param valMask the final value as a single bit mask
+     * @param ruleId the rule identifier, who discovered the final value
+     * @return {@link Status#CONTRADICTION} if the state is invalid now; {@link Status#CONSISTENT} otherwise
+     */
+    public Status assign(int idx, int valMask, char ruleId) {
+        this.steps++;
+        if ( this.cellSteps[idx] >= 0 ) {
+            throw new DBCException("cell " + idx + " got a final value for the second time - logical error of a rule");
+        } else if ( (this.possibleVals[idx] & valMask) == 0 ) {
+            return Status.CONTRADICTION;
+        }
+        int mask = this.possibleVals[idx];
+        this.trail[this.trailTop++] = idx | (long) mask << 16 | TRAIL_FINAL;
+        boolean placeLeft = true;
+        if ( mask != valMask ) {
+            placeLeft = removePlaces(idx, mask & ~valMask);
+            enqueueUnitsOf(idx);
+        }
+        this.possibleVals[idx] = valMask;
+        this.cellSteps[idx] = this.steps;
+        this.ruleIds[idx] = ruleId;
+        this.finalized++;
+        boolean noCellEmpty = removeValueFromPeers(valMask, idx);
+        return placeLeft && noCellEmpty && isOnlyPlace(idx, valMask) ? Status.CONSISTENT : Status.CONTRADICTION;
+    }
+
+    /**
+     * @return the mark to be used for {@link #rollback(int)}. See {@link State#mark()}
+     */
+    public int mark() {
+        return this.trailTop;
+    }
+
+    /**
+     * undo all changes recorded on the trail after a mark has been taken
+     *
+     * @param mark a position of the trail, returned by {@link #mark()}
+     */
+    public void rollback(int mark) {
+        DBC.isTrue(mark <= this.trailTop);
+        while ( this.trailTop > mark ) {
+            long entry = this.trail[--this.trailTop];
+            int idx = (int) (entry & 0xFFFF);
+            int mask = (int) (entry >>> 16 & this.geometry.getAllValues());
+            addPlaces(idx, mask & ~this.possibleVals[idx]);
+            this.possibleVals[idx] = mask;
+            if ( (entry & TRAIL_FINAL) != 0 ) {
+                this.cellSteps[idx] = -1;
+                this.ruleIds[idx] = '?';
+                this.finalized--;
+            }
+        }
+        clearQueues();
+    }
+
+    /**
+     * @return the values possible for a cell as a bit mask
+     */
+    public int getMask(int idx) {
+        return this.possibleVals[idx];
+    }
+
+    /**
+     * @return the mask of the positions in a unit, where a value (as a single bit mask) is still possible
+     */
+    public int getPlaces(int unit, int valMask) {
+        return this.places[unit * this.n + Integer.numberOfTrailingZeros(valMask)];
+    }
+
+    /**
+     * @return true, if the cell is finalized
+     */
+    public boolean isFinalValueSet(int idx) {
+        return this.cellSteps[idx] >= 0;
+    }
+
+    /**
+     * @return the id of the rule, that finalized the cell; '?', if the cell is not finalized
+     */
+    public char getRuleId(int idx) {
+        return this.ruleIds[idx];
+    }
+
+    /**
+     * @return the number of finalized cells
+     */
+    public int getNumberFinalized() {
+        return this.finalized;
+    }
+
+    /**
+     * @return the number of finalizations, see {@link State#getStepsAsLong()}
+     */
+    public long getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * @return the number of values tried by the search
+     */
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return the maximal number of values guessed at the same time
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * count a node of the search
+     *
+     * @param depth the number of values guessed at the same time, including this one
+     */
+    void incrNodes(int depth) {
+        this.nodes++;
+        if ( depth > this.maxDepth ) {
+            this.maxDepth = depth;
+        }
+    }
+
+    /**
+     * exhaustive check: every cell has a value left, no value is finalized twice in a unit and every value has a place in every unit
+     *
+     * @return true, if the state is valid
+     */
+    public boolean isValid() {
+        for ( int i = 0; i < this.cells; i++ ) {
+            if ( this.possibleVals[i] == 0 ) {
+                return false;
+            }
+        }
+        for ( int unit = 0; unit < this.units; unit++ ) {
+            int seen = 0;
+            int possible = 0;
+            for ( int idx : this.geometry.getUnitMembers(unit) ) {
+                possible |= this.possibleVals[idx];
+                if ( isFinalValueSet(idx) ) {
+                    if ( (seen & this.possibleVals[idx]) != 0 ) {
+                        return false;
+                    }
+                    seen |= this.possibleVals[idx];
+                }
+            }
+            if ( possible != this.geometry.getAllValues() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the sudoku as a String of n * n chars, finalized cells as values, the other cells as '.'
+     */
+    public String toCompactString() {
+        StringBuilder sb = new StringBuilder(this.cells);
+        for ( int i = 0; i < this.cells; i++ ) {
+            sb.append(isFinalValueSet(i) ? this.geometry.symbolOf(Integer.numberOfTrailingZeros(this.possibleVals[i])) : '.');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        // a jigsaw sudoku has no blocks: no separators inside the grid
+        int boxRows = this.geometry.getBoxRows() > 0 ? this.geometry.getBoxRows() : this.n;
+        int boxCols = this.geometry.getBoxCols() > 0 ? this.geometry.getBoxCols() : this.n;
+        StringBuilder separator = new StringBuilder();
+        for ( int b = 0; b < this.n / boxCols; b++ ) {
+            separator.append("+ ");
+            for ( int c = 0; c < boxCols; c++ ) {
+                separator.append("- ");
+            }
+        }
+        separator.append('+');
+        String compact = toCompactString();
+        StringBuilder sb = new StringBuilder();
+        for ( int row = 0; row < this.n; row++ ) {
+            if ( row % boxRows == 0 ) {
+                sb.append(separator).append('\n');
+            }
+            for ( int col = 0; col < this.n; col++ ) {
+                sb.append(col % boxCols == 0 ? "| " : "").append(compact.charAt(row * this.n + col)).append(' ');
+            }
+            sb.append("| \n");
+        }
+        return sb.append(separator).toString();
+    }
+
+    int pollCell() {
+        if ( this.cellQueueSize == 0 ) {
+            return -1;
+        }
+        int idx = this.cellQueue[this.cellQueueHead];
+        this.cellQueueHead = (this.cellQueueHead + 1) % this.cells;
+        this.cellQueueSize--;
+        this.cellQueued[idx] = false;
+        return idx;
+    }
+
+    int pollUnit() {
+        if ( this.unitQueueSize == 0 ) {
+            return -1;
+        }
+        int unit = this.unitQueue[this.unitQueueHead];
+        this.unitQueueHead = (this.unitQueueHead + 1) % this.units;
+        this.unitQueueSize--;
+        this.unitQueued[unit] = false;
+        return unit;
+    }
+
+    void clearQueues() {
+        while ( pollCell() >= 0 ) {
+            // empty the queue and reset the flags
+        }
+        while ( pollUnit() >= 0 ) {
+            // empty the queue and reset the flags
+        }
+    }
+
+    private boolean removeValueFromPeers(int valMask, int finalizedCellId) {
+        boolean noCellEmpty = true;
+        for ( int idx : this.geometry.getPeers(finalizedCellId) ) {
+            int mask = this.possibleVals[idx];
+            if ( (mask & valMask) != 0 ) {
+                this.trail[this.trailTop++] = idx | (long) mask << 16;
+                int newMask = mask & ~valMask;
+                if ( newMask == 0 ) {
+                    noCellEmpty = false;
+                } else if ( (newMask & (newMask - 1)) == 0 ) {
+                    enqueueCell(idx);
+                }
+                this.possibleVals[idx] = newMask;
+                if ( !removePlaces(idx, valMask) ) {
+                    noCellEmpty = false;
+                }
+                enqueueUnitsOf(idx);
+            }
+        }
+        return noCellEmpty;
+    }
+
+    private boolean isOnlyPlace(int idx, int valMask) {
+        int val = Integer.numberOfTrailingZeros(valMask);
+        int[] units = this.geometry.getUnitsOf(idx);
+        int[] positions = this.geometry.getUnitPositions(idx);
+        for ( int k = 0; k < units.length; k++ ) {
+            if ( this.places[units[k] * this.n + val] != 1 << positions[k] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean removePlaces(int idx, int removedMask) {
+        boolean placeLeft = true;
+        int[] units = this.geometry.getUnitsOf(idx);
+        int[] positions = this.geometry.getUnitPositions(idx);
+        for ( int m = removedMask; m != 0; m &= m - 1 ) {
+            int val = Integer.numberOfTrailingZeros(m);
+            for ( int k = 0; k < units.length; k++ ) {
+                int p = units[k] * this.n + val;
+                this.places[p] &= ~(1 << positions[k]);
+                if ( this.places[p] == 0 ) {
+                    placeLeft = false;
+                }
+            }
+        }
+        return placeLeft;
+    }
+
+    private void addPlaces(int idx, int addedMask) {
+        int[] units = this.geometry.getUnitsOf(idx);
+        int[] positions = this.geometry.getUnitPositions(idx);
+        for ( int m = addedMask; m != 0; m &= m - 1 ) {
+            int val = Integer.numberOfTrailingZeros(m);
+            for ( int k = 0; k < units.length; k++ ) {
+                this.places[units[k] * this.n + val] |= 1 << positions[k];
+            }
+        }
+    }
+
+    private void enqueueAll() {
+        for ( int i = 0; i < this.cells; i++ ) {
+            enqueueCell(i);
+        }
+        for ( int u = 0; u < this.units; u++ ) {
+            enqueueUnit(u);
+        }
+    }
+
+    private void enqueueCell(int idx) {
+        if ( !this.cellQueued[idx] ) {
+            this.cellQueued[idx] = true;
+            this.cellQueue[(this.cellQueueHead + this.cellQueueSize++) % this.cells] = idx;
+        }
+    }
+
+    private void enqueueUnit(int unit) {
+        if ( !this.unitQueued[unit] ) {
+            this.unitQueued[unit] = true;
+            this.unitQueue[(this.unitQueueHead + this.unitQueueSize++) % this.units] = unit;
+        }
+    }
+
+    private void enqueueUnitsOf(int idx) {
+        for ( int unit : this.geometry.getUnitsOf(idx) ) {
+            enqueueUnit(unit);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package de.budde.sudoku;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * a reproducible load driver: solve all sudokus of a {@link Corpus} with a given number of threads after some warm-up rounds and report the throughput,
+ * the latency percentiles, the steps per sudoku (see {@link State#getSteps()}) and a histogram of the nodes of the backtracking search (see
+ * {@link State#getNodes()}). The figures are reported for the whole corpus and for each {@link Difficulty}. The report is machine-readable (CSV or JSON),
+ * thus runs on different commits can be compared by a diff.
+ */
+public class LoadDriver {
+    /**
+     * number of sudokus, that a worker takes from the corpus at once
+     */
+    private static final int BLOCK = 64;
+    /**
+     * the histogram of nodes has a bucket for 0 nodes, a bucket for 2^(k-1) ... 2^k-1 nodes for k = 1 ... 20 and a last bucket for more nodes
+     */
+    private static final int HISTOGRAM_SIZE = 22;
+
+    private LoadDriver() {
+    }
+
+    /**
+     * the difficulty of a sudoku, measured by the number of nodes the backtracking search needed to solve it
+     */
+    public enum Difficulty {
+        EASY( 0 ), MEDIUM( 10 ), HARD( 100 ), EXTREME( Long.MAX_VALUE );
+
+        private final long maxNodes;
+
+        private Difficulty(long maxNodes) {
+            this.maxNodes = maxNodes;
+        }
+
+        /**
+         * @param nodes number of nodes of the backtracking search
+         * @return the difficulty of a sudoku, that needed that many nodes
+         */
+        public static Difficulty of(long nodes) {
+            for ( Difficulty difficulty : values() ) {
+                if ( nodes <= difficulty.maxNodes ) {
+                    return difficulty;
+                }
+            }
+            return EXTREME;
+        }
+    }
+
+    /**
+     * the formats of a report
+     */
+    public enum Format {
+        CSV, JSON
+    }
+
+    /**
+     * solve all sudokus of a corpus with the engine configured, see {@link Solver.Engine#configured()} and {@link #run(Corpus, Solver.Engine, int, int)}
+     *
+     * @param corpus the sudokus to solve
+     * @param threads the number of worker threads, at least 1. If 1, the calling thread solves the sudokus
+     * @param warmupRounds the number of rounds, whose figures are discarded (to let the JIT compile the hot paths)
+     * @return the report of the measured round
+     */
+    public static Report run(Corpus corpus, int threads, int warmupRounds) {
+        return run(corpus, Solver.Engine.configured(), threads, warmupRounds);
+    }
+
+    /**
+     * solve all sudokus of a corpus. The corpus is solved 'warmupRounds' times without measurement, then once with measurement. If the engine uses the
+     * rules, the statistics of the rules of the measured round are logged, see {@link Scheduler#getStatistics()}
+     *
+     * @param corpus the sudokus to solve
+     * @param engine the engine, that creates a solver for each worker
+     * @param threads the number of worker threads, at least 1. If 1, the calling thread solves the sudokus
+     * @param warmupRounds the number of rounds, whose figures are discarded (to let the JIT compile the hot paths)
+     * @return the report of the measured round
+     */
+    public static Report run(Corpus corpus, Solver.Engine engine, int threads, int warmupRounds) {
+        DBC.notNull(engine);
+        DBC.isTrue(threads >= 1, "at least one thread is required");
+        DBC.isTrue(warmupRounds >= 0, "the number of warm-up rounds must not be negative");
+        ExecutorService workers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            for ( int round = 0; round < warmupRounds; round++ ) {
+                solveAll(corpus, engine, new Measurement(corpus.size()), workers, threads);
+            }
+            Scheduler scheduler = RuleMachine.getScheduler();
+            scheduler.resetStatistics();
+            Measurement measurement = new Measurement(corpus.size());
+            long start = System.nanoTime();
+            solveAll(corpus, engine, measurement, workers, threads);
+            long nanos = System.nanoTime() - start;
+            Report report = new Report(corpus.size(), threads, warmupRounds, nanos, measurement);
+            RunSudoku.RUN.info(
+                engine + " solved " + report.getAll().getSolved() + " of " + corpus.size() + " sudokus in " + nanos / 1000000 + " msec, "
+                    + report.getPuzzlesPerSecond() + " sudokus/sec");
+            if ( engine == Solver.Engine.RULES ) {
+                RunSudoku.RUN.info("statistics of the rules:\n" + scheduler);
+            }
+            return report;
+        } finally {
+            if ( workers != null ) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private static void solveAll(Corpus corpus, Solver.Engine engine, Measurement measurement, ExecutorService workers, int threads) {
+        AtomicInteger next = new AtomicInteger();
+        Callable<Void> worker = () -> Do.quietly(() -> {
+            Solver solver = engine.create();
+            for ( int from = next.getAndAdd(BLOCK); from < corpus.size(); from = next.getAndAdd(BLOCK) ) {
+                int to = Math.min(from + BLOCK, corpus.size());
+                for ( int i = from; i < to; i++ ) {
+                    measurement.solve(solver, corpus.getRecords(), i);
+                }
+            }
+            return null;
+        });
+        if ( workers == null ) {
+            try {
+                worker.call();
+            } catch ( Exception e ) {
+                throw new DBCException("load run failed", e);
+            }
+        } else {
+            List<Future<Void>> futures = new ArrayList<>();
+            for ( int t = 0; t < threads; t++ ) {
+                futures.add(workers.submit(worker));
+            }
+            for ( Future<Void> future : futures ) {
+                try {
+                    future.get();
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new DBCException("load run interrupted", e);
+                } catch ( ExecutionException e ) {
+                    throw new DBCException("load run failed", e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * the figures of each sudoku of a round. Each sudoku is solved by exactly one worker, thus the arrays are written without synchronization. A record
+     * with invalid chars gets 0 steps and 0 nodes and is counted in the bucket 'all' only
+     */
+    private static class Measurement {
+        private final long[] latencies;
+        private final long[] steps;
+        private final long[] nodes;
+        private final boolean[] solved;
+        private final boolean[] invalid;
+
+        Measurement(int size) {
+            this.latencies = new long[size];
+            this.steps = new long[size];
+            this.nodes = new long[size];
+            this.solved = new boolean[size];
+            this.invalid = new boolean[size];
+        }
+
+        void solve(Solver solver, byte[] records, int i) {
+            long start = System.nanoTime();
+            Status status;
+            try {
+                status = solver.solve(records, i * 81);
+            } catch ( DBCException e ) {
+                status = null; // invalid chars in the record: reported as not solved. The state belongs to the sudoku solved before
+            }
+            this.latencies[i] = System.nanoTime() - start;
+            this.invalid[i] = status == null;
+            this.steps[i] = status == null ? 0 : solver.getState().getStepsAsLong();
+            this.nodes[i] = status == null ? 0 : solver.getState().getNodes();
+            this.solved[i] = status == Status.SOLVED;
+        }
+    }
+
+    /**
+     * the report of a load run
+     */
+    public static class Report {
+        private final int puzzles;
+        private final int threads;
+        private final int warmupRounds;
+        private final long nanos;
+        private final List<Stats> buckets = new ArrayList<>();
+
+        Report(int puzzles, int threads, int warmupRounds, long nanos, Measurement measurement) {
+            this.puzzles = puzzles;
+            this.threads = threads;
+            this.warmupRounds = warmupRounds;
+            this.nanos = nanos;
+            this.buckets.add(new Stats("all", measurement, null));
+            for ( Difficulty difficulty : Difficulty.values() ) {
+                this.buckets.add(new Stats(difficulty.name().toLowerCase(Locale.ROOT), measurement, difficulty));
+            }
+        }
+
+        /**
+         * @return the runtime of the measured round in nanoseconds
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return the throughput of the measured round
+         */
+        public long getPuzzlesPerSecond() {
+            return this.nanos == 0 ? 0 : this.puzzles * 1000000000L / this.nanos;
+        }
+
+        /**
+         * @return the figures of all sudokus
+         */
+        public Stats getAll() {
+            return this.buckets.get(0);
+        }
+
+        /**
+         * @param difficulty a difficulty
+         * @return the figures of the sudokus of that difficulty
+         */
+        public Stats get(Difficulty difficulty) {
+            return this.buckets.get(difficulty.ordinal() + 1);
+        }
+
+        /**
+         * @return the figures of all sudokus, followed by the figures of each difficulty
+         */
+        public List<Stats> getBuckets() {
+            return Collections.unmodifiableList(this.buckets);
+        }
+
+        /**
+         * @param format the format of the report
+         * @return the report as CSV (a header line and one line per bucket) or as JSON (one object)
+         */
+        public String format(Format format) {
+            return format == Format.CSV ? toCsv() : toJson();
+        }
+
+        private String toCsv() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("bucket,puzzles,solved,threads,warmup_rounds,nanos,puzzles_per_sec");
+            sb.append(",latency_p50_ns,latency_p90_ns,latency_p99_ns,latency_max_ns,steps_mean,steps_p50,steps_p90,steps_max,nodes_mean,nodes_p50,nodes_max");
+            for ( int h = 0; h < HISTOGRAM_SIZE; h++ ) {
+                sb.append(",nodes_").append(histogramLabel(h).replace('-', '_').replace(">=", "ge"));
+            }
+            sb.append('\n');
+            for ( Stats stats : this.buckets ) {
+                sb.append(stats.name).append(',').append(stats.puzzles).append(',').append(stats.solved).append(',').append(this.threads);
+                sb.append(',').append(this.warmupRounds).append(',').append(this.nanos).append(',').append(getPuzzlesPerSecond());
+                for ( long latency : stats.latencies ) {
+                    sb.append(',').append(latency);
+                }
+                sb.append(',').append(decimal(stats.stepsMean));
+                for ( long step : stats.steps ) {
+                    sb.append(',').append(step);
+                }
+                sb.append(',').append(decimal(stats.nodesMean)).append(',').append(stats.nodesP50).append(',').append(stats.nodesMax);
+                for ( long count : stats.nodeHistogram ) {
+                    sb.append(',').append(count);
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+
+        private String toJson() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\n  \"puzzles\": ").append(this.puzzles).append(",\n  \"threads\": ").append(this.threads);
+            sb.append(",\n  \"warmupRounds\": ").append(this.warmupRounds).append(",\n  \"nanos\": ").append(this.nanos);
+            sb.append(",\n  \"puzzlesPerSecond\": ").append(getPuzzlesPerSecond()).append(",\n  \"buckets\": [");
+            for ( int b = 0; b < this.buckets.size(); b++ ) {
+                Stats stats = this.buckets.get(b);
+                sb.append(b == 0 ? "\n" : ",\n");
+                sb.append("    { \"bucket\": \"").append(stats.name).append("\", \"puzzles\": ").append(stats.puzzles);
+                sb.append(", \"solved\": ").append(stats.solved);
+                sb.append(",\n      \"latencyNanos\": { \"p50\": ").append(stats.latencies[0]).append(", \"p90\": ").append(stats.latencies[1]);
+                sb.append(", \"p99\": ").append(stats.latencies[2]).append(", \"max\": ").append(stats.latencies[3]).append(" }");
+                sb.append(",\n      \"steps\": { \"mean\": ").append(decimal(stats.stepsMean)).append(", \"p50\": ").append(stats.steps[0]);
+                sb.append(", \"p90\": ").append(stats.steps[1]).append(", \"max\": ").append(stats.steps[2]).append(" }");
+                sb.append(",\n      \"nodes\": { \"mean\": ").append(decimal(stats.nodesMean)).append(", \"p50\": ").append(stats.nodesP50);
+                sb.append(", \"max\": ").append(stats.nodesMax).append(" }");
+                sb.append(",\n      \"nodeHistogram\": {");
+                for ( int h = 0; h < HISTOGRAM_SIZE; h++ ) {
+                    sb.append(h == 0 ? " \"" : ", \"").append(histogramLabel(h)).append("\": ").append(stats.nodeHistogram[h]);
+                }
+                sb.append(" } }");
+            }
+            sb.append("\n  ]\n}\n");
+            return sb.toString();
+        }
+
+        private static String decimal(double d) {
+            return String.format(Locale.ROOT, "%.1f", d);
+        }
+    }
+
+    /**
+     * the figures of the sudokus of one bucket
+     */
+    public static class Stats {
+        private final String name;
+        private final int puzzles;
+        private final int solved;
+        // p50, p90, p99 and max of the latencies
+        private final long[] latencies;
+        private final double stepsMean;
+        // p50, p90 and max of the steps
+        private final long[] steps;
+        private final double nodesMean;
+        private final long nodesP50;
+        private final long nodesMax;
+        private final long[] nodeHistogram = new long[HISTOGRAM_SIZE];
+
+        Stats(String name, Measurement measurement, Difficulty difficulty) {
+            this.name = name;
+            int size = measurement.latencies.length;
+            long[] latencies = new long[size];
+            long[] steps = new long[size];
+            long[] nodes = new long[size];
+            int n = 0;
+            int solved = 0;
+            for ( int i = 0; i < size; i++ ) {
+                if ( difficulty == null || !measurement.invalid[i] && Difficulty.of(measurement.nodes[i]) == difficulty ) {
+                    latencies[n] = measurement.latencies[i];
+                    steps[n] = measurement.steps[i];
+                    nodes[n] = measurement.nodes[i];
+                    this.nodeHistogram[histogramBucket(nodes[n])]++;
+                    solved += measurement.solved[i] ? 1 : 0;
+                    n++;
+                }
+            }
+            this.puzzles = n;
+            this.solved = solved;
+            latencies = Arrays.copyOf(latencies, n);
+            steps = Arrays.copyOf(steps, n);
+            nodes = Arrays.copyOf(nodes, n);
+            Arrays.sort(latencies);
+            Arrays.sort(steps);
+            Arrays.sort(nodes);
+            this.latencies = new long[] {
+                percentile(latencies, 50),
+                percentile(latencies, 90),
+                percentile(latencies, 99),
+                percentile(latencies, 100)
+            };
+            this.stepsMean = mean(steps);
+            this.steps = new long[] {
+                percentile(steps, 50),
+                percentile(steps, 90),
+                percentile(steps, 100)
+            };
+            this.nodesMean = mean(nodes);
+            this.nodesP50 = percentile(nodes, 50);
+            this.nodesMax = percentile(nodes, 100);
+        }
+
+        /**
+         * @return the name of the bucket: 'all' or the name of a difficulty in lower case
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return the number of sudokus in this bucket
+         */
+        public int getPuzzles() {
+            return this.puzzles;
+        }
+
+        /**
+         * @return the number of sudokus in this bucket, that were solved
+         */
+        public int getSolved() {
+            return this.solved;
+        }
+
+        /**
+         * @param percent the percentile: 50, 90, 99 or 100 (the maximum)
+         * @return the latency of that percentile in nanoseconds
+         */
+        public long getLatency(int percent) {
+            switch ( percent ) {
+                case 50:
+                    return this.latencies[0];
+                case 90:
+                    return this.latencies[1];
+                case 99:
+                    return this.latencies[2];
+                case 100:
+                    return this.latencies[3];
+                default:
+                    throw new DBCException("only the percentiles 50, 90, 99 and 100 are reported");
+            }
+        }
+
+        /**
+         * @return the mean of the steps per sudoku
+         */
+        public double getStepsMean() {
+            return this.stepsMean;
+        }
+
+        /**
+         * @return the maximal number of nodes of a backtracking search
+         */
+        public long getNodesMax() {
+            return this.nodesMax;
+        }
+
+        /**
+         * @return the histogram of the nodes of the backtracking search: the count of sudokus with 0 nodes, with 1 node, with 2-3 nodes, with 4-7 nodes, ...
+         */
+        public long[] getNodeHistogram() {
+            return this.nodeHistogram.clone();
+        }
+    }
+
+    static int histogramBucket(long nodes) {
+        return Math.min(64 - Long.numberOfLeadingZeros(nodes), HISTOGRAM_SIZE - 1);
+    }
+
+    static String histogramLabel(int bucket) {
+        if ( bucket <= 1 ) {
+            return "" + bucket;
+        } else if ( bucket == HISTOGRAM_SIZE - 1 ) {
+            return ">=" + (1L << (bucket - 1));
+        } else {
+            return (1L << (bucket - 1)) + "-" + ((1L << bucket) - 1);
+        }
+    }
+
+    /**
+     * @return the nearest-rank percentile of sorted values; 0 if there are no values
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if ( sorted.length == 0 ) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double mean(long[] values) {
+        if ( values.length == 0 ) {
+            return 0;
+        }
+        double sum = 0;
+        for ( long value : values ) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+}
@@ -4,23 +4,200 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.stream.Collectors;
 
+import de.fraunhofer.iais.dbc.DBCException;
+
 public class Main {
 
+    /**
+     * solve a single sudoku: {@code Main <file>}. The engine is selected by the system property 'sudoku.engine', see {@link Solver.Engine#configured()}<br>
+     * solve a single sudoku with a parallel search: {@code Main -parallel <file>}<br>
+     * solve a single sudoku of another size or a variant: {@code Main -grid <file> [<box-rows> <box-cols> | jigsaw <region-file>] [diagonal] [windoku]}.
+     * Default are square blocks, see {@link Geometry#ofSize(int)}<br>
+     * solve a file with one sudoku per line: {@code Main -batch <file> <solution-file> [<number-of-threads> [<catalog-file>]]}. Default is one thread per
+     * processor. With a catalog file the sudokus are looked up in the catalog and new ones are inserted, a missing catalog file is created<br>
+     * convert a file with one sudoku per line into a binary corpus: {@code Main -tobinary <text-file> <binary-file> [<solution-text-file>]}<br>
+     * convert a binary corpus into a file with one sudoku (or solution) per line: {@code Main -totext <binary-file> <text-file> [solutions]}<br>
+     * generate a synthetic corpus from the examples and challenges: {@code Main -corpus <corpus-file> <number-of-sudokus> [<random-seed>]}<br>
+     * generate proper sudokus: {@code Main -generate <corpus-file> <number-of-sudokus> [<target-clues> [none|rotational [<random-seed> [<number-of-threads>]]]]}.
+     * Defaults are minimal sudokus, rotational symmetry, seed 0 and one thread per processor<br>
+     * rate the sudokus of a corpus: {@code Main -rate <corpus-file>}. One line per sudoku with grade and score is written to stdout<br>
+     * measure solving a corpus: {@code Main -load <corpus-file> [<number-of-threads> [<warm-up-rounds> [csv|json [rules|dlx|bitboard]]]]}. Defaults are one
+     * thread per processor, 1 warm-up round, csv and the engine of the system property 'sudoku.engine' (see {@link Solver.Engine#configured()}). The report
+     * is written to stdout
+     */
     public static void main(String[] args) {
-        new Main().run(args[0]);
+        if ( args.length >= 3 && "-batch".equals(args[0]) ) {
+            int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            new Main().runBatch(args[1], args[2], threads, args.length > 4 ? args[4] : null);
+        } else if ( args.length >= 3 && "-tobinary".equals(args[0]) ) {
+            new Main().toBinary(args[1], args[2], args.length > 3 ? args[3] : null);
+        } else if ( args.length >= 3 && "-totext".equals(args[0]) ) {
+            new Main().toText(args[1], args[2], args.length > 3 && "solutions".equals(args[3]));
+        } else if ( args.length >= 3 && "-corpus".equals(args[0]) ) {
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            new Main().generateCorpus(args[1], Integer.parseInt(args[2]), seed);
+        } else if ( args.length >= 3 && "-generate".equals(args[0]) ) {
+            int targetClues = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+            Generator.Symmetry symmetry = args.length > 4 ? Generator.Symmetry.valueOf(args[4].toUpperCase()) : Generator.Symmetry.ROTATIONAL;
+            long seed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+            int threads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
+            new Main().generate(args[1], Integer.parseInt(args[2]), targetClues, symmetry, seed, threads);
+        } else if ( args.length == 2 && "-rate".equals(args[0]) ) {
+            new Main().rate(args[1]);
+        } else if ( args.length >= 2 && "-load".equals(args[0]) ) {
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            int warmupRounds = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+            LoadDriver.Format format = args.length > 4 ? LoadDriver.Format.valueOf(args[4].toUpperCase()) : LoadDriver.Format.CSV;
+            Solver.Engine engine = args.length > 5 ? Solver.Engine.valueOf(args[5].toUpperCase()) : Solver.Engine.configured();
+            new Main().runLoad(args[1], engine, threads, warmupRounds, format);
+        } else if ( args.length >= 2 && "-grid".equals(args[0]) ) {
+            new Main().runGrid(args[1], Arrays.copyOfRange(args, 2, args.length));
+        } else if ( args.length == 2 && "-parallel".equals(args[0]) ) {
+            new Main().run(args[1], true);
+        } else {
+            new Main().run(args[0], false);
+        }
     }
 
-    private void run(String challengFileNameInFolderChallenges) {
+    private void run(String challengFileNameInFolderChallenges, boolean parallel) {
         System.out.println("solving SUDOKU " + challengFileNameInFolderChallenges);
         Path path;
         try {
             path = Paths.get(challengFileNameInFolderChallenges);
             String toSolve = Files.readAllLines(path).stream().collect(Collectors.joining());
-            RunSudoku.run(toSolve);
+            if ( parallel ) {
+                RunSudoku.run(toSolve, true);
+            } else {
+                RunSudoku.run(toSolve);
+            }
         } catch ( IOException e ) {
             System.out.println("The challenge file " + challengFileNameInFolderChallenges + " could not be read");
         }
     }
+
+    private void runGrid(String fileName, String[] options) {
+        System.out.println("solving SUDOKU " + fileName);
+        try {
+            String toSolve = Files.readAllLines(Paths.get(fileName)).stream().collect(Collectors.joining());
+            Geometry geometry;
+            int i = 0;
+            if ( options.length >= 2 && Character.isDigit(options[0].charAt(0)) ) {
+                geometry = new Geometry(Integer.parseInt(options[0]), Integer.parseInt(options[1]));
+                i = 2;
+            } else if ( options.length >= 2 && "jigsaw".equals(options[0]) ) {
+                geometry = Geometry.jigsaw(Files.readAllLines(Paths.get(options[1])).stream().collect(Collectors.joining()));
+                i = 2;
+            } else {
+                geometry = Geometry.ofSize((int) Math.round(Math.sqrt(toSolve.length())));
+            }
+            for ( ; i < options.length; i++ ) {
+                if ( "diagonal".equals(options[i]) ) {
+                    geometry = geometry.withDiagonals();
+                } else if ( "windoku".equals(options[i]) ) {
+                    geometry = geometry.withWindoku();
+                } else {
+                    throw new DBCException("invalid option " + options[i] + ". Must be diagonal or windoku");
+                }
+            }
+            GridSolver solver = new GridSolver(geometry);
+            long start = System.nanoTime();
+            Status status = solver.solve(toSolve);
+            long msec = (System.nanoTime() - start) / 1000000;
+            GridState state = solver.getState();
+            System.out.println(geometry + ": " + status + " in " + msec + " msec, " + state.getNodes() + " nodes, max depth " + state.getMaxDepth());
+            System.out.println(state);
+        } catch ( IOException e ) {
+            System.out.println("The challenge file " + fileName + " could not be read");
+        }
+    }
+
+    private void runBatch(String inFileName, String outFileName, int threads, String catalogFileName) {
+        System.out.println("solving SUDOKUS from " + inFileName + " into " + outFileName + " using " + threads + " threads");
+        try {
+            Catalog catalog = null;
+            if ( catalogFileName != null ) {
+                Path catalogFile = Paths.get(catalogFileName);
+                // a sudoku needs at least 41 bytes, in the text and in the binary format
+                catalog = Files.exists(catalogFile) ? Catalog.open(catalogFile) : Catalog.create(catalogFile, Files.size(Paths.get(inFileName)) / 41);
+            }
+            RunBatch.run(Paths.get(inFileName), Paths.get(outFileName), threads, catalog);
+            if ( catalog != null ) {
+                catalog.force();
+                System.out.println(catalog);
+            }
+        } catch ( IOException e ) {
+            System.out.println("The file " + inFileName + " could not be read or the file " + outFileName + " could not be written");
+        }
+    }
+
+    private void toBinary(String textFileName, String binaryFileName, String solutionFileName) {
+        try {
+            long start = System.nanoTime();
+            Path solutions = solutionFileName == null ? null : Paths.get(solutionFileName);
+            BinaryCorpus corpus = BinaryCorpus.fromText(Paths.get(textFileName), solutions, Paths.get(binaryFileName));
+            long msec = (System.nanoTime() - start) / 1000000;
+            System.out.println("converted " + corpus.size() + " SUDOKUS into " + binaryFileName + " in " + msec + " msec");
+        } catch ( IOException e ) {
+            System.out.println("The file " + textFileName + " could not be read or the file " + binaryFileName + " could not be written");
+        }
+    }
+
+    private void toText(String binaryFileName, String textFileName, boolean solutions) {
+        try {
+            BinaryCorpus corpus = BinaryCorpus.open(Paths.get(binaryFileName));
+            corpus.toText(Paths.get(textFileName), solutions);
+            System.out.println("converted " + corpus.size() + (solutions ? " solutions" : " SUDOKUS") + " into " + textFileName);
+        } catch ( IOException e ) {
+            System.out.println("The file " + binaryFileName + " could not be read or the file " + textFileName + " could not be written");
+        }
+    }
+
+    private void generateCorpus(String outFileName, int size, long seed) {
+        try {
+            Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+            Corpus.generate(seeds, size, seed).write(Paths.get(outFileName));
+            System.out.println("generated " + size + " SUDOKUS from " + seeds.size() + " seeds into " + outFileName);
+        } catch ( IOException e ) {
+            System.out.println("The folders _examples and _challenges could not be read or the file " + outFileName + " could not be written");
+        }
+    }
+
+    private void generate(String outFileName, int size, int targetClues, Generator.Symmetry symmetry, long seed, int threads) {
+        long start = System.nanoTime();
+        Corpus corpus = Generator.generate(size, targetClues, symmetry, seed, threads);
+        long msec = (System.nanoTime() - start) / 1000000;
+        try {
+            corpus.write(Paths.get(outFileName));
+            System.out.println("generated " + size + " SUDOKUS into " + outFileName + " in " + msec + " msec using " + threads + " threads");
+        } catch ( IOException e ) {
+            System.out.println("The file " + outFileName + " could not be written");
+        }
+    }
+
+    private void rate(String corpusFileName) {
+        try {
+            Corpus corpus = Corpus.read(Paths.get(corpusFileName));
+            Rater rater = new Rater();
+            StringBuilder sb = new StringBuilder();
+            for ( int i = 0; i < corpus.size(); i++ ) {
+                Rating rating = rater.rate(corpus.getRecords(), i * 81);
+                sb.append(corpus.get(i)).append(',').append(rating.getGrade()).append(',').append(rating.getScore()).append('\n');
+            }
+            System.out.print(sb);
+        } catch ( IOException e ) {
+            System.out.println("The corpus file " + corpusFileName + " could not be read");
+        }
+    }
+
+    private void runLoad(String corpusFileName, Solver.Engine engine, int threads, int warmupRounds, LoadDriver.Format format) {
+        try {
+            Corpus corpus = Corpus.read(Paths.get(corpusFileName));
+            System.out.print(LoadDriver.run(corpus, engine, threads, warmupRounds).format(format));
+        } catch ( IOException e ) {
+            System.out.println("The corpus file " + corpusFileName + " could not be read");
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package de.budde.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+/**
+ * the backtracking rule 'B' for a single (hard) sudoku, executed in parallel: near the top of the search tree every possible value of the picked cell is
+ * tried by a fork/join task on its own copy of the state. Below the split depth, or if only few cells are open, a task searches sequentially in place. When a
+ * task finds a solution, all other tasks are cancelled cooperatively. When the solutions are counted (e.g. 2 for checking uniqueness), the tasks share the
+ * counter and are cancelled, when it reaches the limit. The rules don't log in the tasks.
+ */
+public class ParallelSearch {
+    /**
+     * default: split the first 4 levels of the search tree
+     */
+    public static final int DEFAULT_SPLIT_DEPTH = 4;
+    /**
+     * default: don't split, if less than 30 cells are open. The sequential search is fast enough then
+     */
+    public static final int DEFAULT_MIN_OPEN_CELLS = 30;
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final int minOpenCells;
+
+    /**
+     * create a parallel search with the default cut-offs running in the common fork/join pool
+     */
+    public ParallelSearch() {
+        this(ForkJoinPool.commonPool(), DEFAULT_SPLIT_DEPTH, DEFAULT_MIN_OPEN_CELLS);
+    }
+
+    /**
+     * create a parallel search
+     *
+     * @param pool the fork/join pool running the tasks
+     * @param splitDepth the depth of the search tree, up to which the values of a cell are tried in parallel
+     * @param minOpenCells the minimal number of not finalized cells for trying the values of a cell in parallel
+     */
+    public ParallelSearch(ForkJoinPool pool, int splitDepth, int minOpenCells) {
+        DBC.notNull(pool);
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.minOpenCells = minOpenCells;
+    }
+
+    /**
+     * search a solution for a state. The state given is not modified. The rules don't log during the search.
+     *
+     * @param state the state to solve, usually after the propagation of the rules 'O' and 'E'
+     * @return a solved copy of the state. If the sudoku has no solution, an exception is thrown
+     */
+    public State solve(State state) {
+        Search search = new Search(1, false);
+        State root = Do.quietly(() -> run(search, state));
+        State solution = root != null ? root : search.solution.get();
+        if ( solution == null ) {
+            throw new DBCException("B: no solution");
+        }
+        return solution;
+    }
+
+    /**
+     * count the solutions of a state, but stop as soon as 'limit' solutions are found. The tasks share the counter, the first task reaching the limit cancels
+     * all others. A sudoku is proper, if count(state, 2) returns 1. The state given is not modified. The rules don't log during the search.
+     *
+     * @param state the state to count the solutions of, usually after the propagation of the rules 'O' and 'E'
+     * @param limit the number of solutions, after which the search stops, at least 1
+     * @return the number of solutions, but not more than limit. 0, if the sudoku has no solution
+     */
+    public int count(State state, int limit) {
+        DBC.isTrue(limit >= 1, "the limit must be at least 1");
+        Search search = new Search(limit, true);
+        State root = Do.quietly(() -> run(search, state));
+        return root != null ? 1 : Math.min(search.solutions.get(), limit);
+    }
+
+    /**
+     * propagate a copy of the state and search it by the tasks of the pool
+     *
+     * @return the copy, if it is solved by the propagation; null otherwise
+     */
+    private State run(Search search, State state) {
+        State root = state.clone();
+        Status status = RuleMachine.getScheduler().run(0, root);
+        if ( status == Status.SOLVED ) {
+            return root;
+        } else if ( status == Status.CONSISTENT ) {
+            this.pool.invoke(new SearchTask(search, root, 0));
+        }
+        return null;
+    }
+
+    /**
+     * the data shared by all tasks of one search
+     */
+    private static class Search {
+        private final int limit;
+        private final boolean counting;
+        private final AtomicBoolean cancel = new AtomicBoolean(false);
+        private final AtomicReference<State> solution = new AtomicReference<>();
+        private final AtomicInteger solutions = new AtomicInteger();
+
+        Search(int limit, boolean counting) {
+            this.limit = limit;
+            this.counting = counting;
+        }
+
+        void found(State state) {
+            this.solution.compareAndSet(null, state);
+            if ( this.solutions.incrementAndGet() >= this.limit ) {
+                this.cancel.set(true);
+            }
+        }
+    }
+
+    private class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final State state;
+        private final int depth;
+
+        SearchTask(Search search, State state, int depth) {
+            this.search = search;
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            Do.quietly(() -> {
+                search();
+                return null;
+            });
+        }
+
+        private void search() {
+            if ( this.search.cancel.get() ) {
+                return;
+            }
+            if ( this.depth >= ParallelSearch.this.splitDepth || 81 - this.state.getNumberFinalized() < ParallelSearch.this.minOpenCells ) {
+                if ( this.search.counting ) {
+                    RuleMachine.countInPlace(this.depth, this.state, this.search.limit, this.search.solutions, this.search.cancel);
+                } else if ( RuleMachine.searchInPlace(this.depth, this.state, this.search.cancel) ) {
+                    this.search.found(this.state);
+                }
+                return;
+            }
+            int idx = RuleMachine.pickCell(this.state);
+            if ( idx < 0 ) {
+                this.search.found(this.state);
+                return;
+            }
+            List<SearchTask> tasks = new ArrayList<>();
+            for ( int m = this.state.getMask(idx); m != 0; m &= m - 1 ) {
+                int valMask = m & -m;
+                State trial = this.state.clone();
+                Status status = trial.assign(idx, valMask, 'B');
+                if ( status != Status.CONTRADICTION ) {
+                    status = RuleMachine.getScheduler().run(this.depth + 1, trial);
+                }
+                if ( status == Status.SOLVED ) {
+                    this.search.found(trial);
+                    if ( this.search.cancel.get() ) {
+                        return;
+                    }
+                } else if ( status == Status.CONSISTENT ) {
+                    tasks.add(new SearchTask(this.search, trial, this.depth + 1));
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+}
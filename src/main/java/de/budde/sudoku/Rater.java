@@ -0,0 +1,82 @@
+package de.budde.sudoku;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * rates the difficulty of sudokus. A sudoku is solved with the cheapest rules first: naked singles (rule 'O') as long as possible, then hidden singles
+ * (rule 'E'), then all elimination rules (see {@link Scheduler#ALL}) and backtracking (rule 'B') only, if all these rules are stuck.
+ * Then the rule ids recorded for the cells of the solution are counted and combined with the eliminations, the nodes and the depth of the backtracking
+ * search into a {@link Rating}. Nothing is logged and no String is rendered.<br>
+ * <br>
+ * A rater owns one {@link State}, which is reused for every sudoku, thus rating millions of sudokus allocates only the ratings. A rater is NOT thread-safe,
+ * every thread needs its own one.
+ */
+public class Rater {
+    private final State state = new State();
+
+    /**
+     * rate a sudoku given as a String of 81 chars ('1' ... '9' for known values, '.', '0' or ' ' for unknown values)
+     *
+     * @param aS the sudoku
+     * @return the rating
+     */
+    public Rating rate(String aS) {
+        Do.check(aS);
+        return rate(aS.getBytes(StandardCharsets.US_ASCII), 0);
+    }
+
+    /**
+     * rate a sudoku given as 81 bytes. See {@link BatchSolver#solve(byte[], int)} for the format. The rules are applied quietly (see
+     * {@link Do#quietly(java.util.function.Supplier)}) and the search uses {@link Scheduler#ALL}, thus the rating does not depend on the scheduler
+     * configured for the solvers (see {@link RuleMachine#setScheduler(Scheduler)})
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @return the rating
+     */
+    public Rating rate(byte[] record, int offset) {
+        Status status = Do.quietly(() -> solve(record, offset));
+        int givens = 0;
+        int nakedSingles = 0;
+        int hiddenSingles = 0;
+        int guesses = 0;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            switch ( this.state.getRuleId(idx) ) {
+                case 'I':
+                    givens++;
+                    break;
+                case 'O':
+                    nakedSingles++;
+                    break;
+                case 'E':
+                    hiddenSingles++;
+                    break;
+                case 'B':
+                    guesses++;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new Rating(
+            givens,
+            nakedSingles,
+            hiddenSingles,
+            guesses,
+            this.state.getEliminations(),
+            this.state.getNodes(),
+            this.state.getMaxDepth(),
+            status == Status.SOLVED);
+    }
+
+    private Status solve(byte[] record, int offset) {
+        Status status = this.state.load(record, offset);
+        if ( status != Status.CONTRADICTION ) {
+            status = Scheduler.ALL.run(0, this.state);
+        }
+        if ( status == Status.CONSISTENT ) {
+            status = RuleMachine.searchInPlace(0, this.state, Scheduler.ALL, null) ? Status.SOLVED : Status.CONTRADICTION;
+        }
+        return status;
+    }
+}
@@ -0,0 +1,152 @@
+package de.budde.sudoku;
+
+/**
+ * the difficulty of a sudoku, computed by {@link Rater} from the rules needed to solve it. A rating is immutable.
+ */
+public class Rating {
+    /**
+     * weights of the score: a naked single (rule 'O') is the cheapest step, a hidden single (rule 'E') needs a look at a neighborhood, an elimination needs
+     * a look at a pattern of cells, a node of the backtracking search is a guess, and each level of nested guesses makes a sudoku much harder for a human
+     */
+    static final int WEIGHT_NAKED_SINGLE = 1;
+    static final int WEIGHT_HIDDEN_SINGLE = 3;
+    static final int WEIGHT_ELIMINATION = 5;
+    static final int WEIGHT_NODE = 10;
+    static final int WEIGHT_DEPTH = 30;
+
+    /**
+     * the grade of a sudoku. It is decided by the most expensive rule needed
+     */
+    public enum Grade {
+        /**
+         * naked singles (rule 'O') solve the sudoku
+         */
+        EASY,
+        /**
+         * hidden singles (rule 'E') or elimination rules are needed, but no backtracking
+         */
+        MEDIUM,
+        /**
+         * backtracking is needed, but never more than one guess at the same time
+         */
+        HARD,
+        /**
+         * backtracking with 2 or 3 guesses at the same time
+         */
+        EXPERT,
+        /**
+         * backtracking with more than 3 guesses at the same time
+         */
+        EXTREME,
+        /**
+         * the sudoku has no solution
+         */
+        INVALID
+    }
+
+    private final int givens;
+    private final int nakedSingles;
+    private final int hiddenSingles;
+    private final int guesses;
+    private final long eliminations;
+    private final long nodes;
+    private final int maxDepth;
+    private final Grade grade;
+
+    Rating(int givens, int nakedSingles, int hiddenSingles, int guesses, long eliminations, long nodes, int maxDepth, boolean solved) {
+        this.givens = givens;
+        this.nakedSingles = nakedSingles;
+        this.hiddenSingles = hiddenSingles;
+        this.guesses = guesses;
+        this.eliminations = eliminations;
+        this.nodes = nodes;
+        this.maxDepth = maxDepth;
+        if ( !solved ) {
+            this.grade = Grade.INVALID;
+        } else if ( maxDepth > 3 ) {
+            this.grade = Grade.EXTREME;
+        } else if ( maxDepth > 1 ) {
+            this.grade = Grade.EXPERT;
+        } else if ( maxDepth == 1 ) {
+            this.grade = Grade.HARD;
+        } else if ( hiddenSingles > 0 || eliminations > 0 ) {
+            this.grade = Grade.MEDIUM;
+        } else {
+            this.grade = Grade.EASY;
+        }
+    }
+
+    /**
+     * @return the grade of the sudoku
+     */
+    public Grade getGrade() {
+        return this.grade;
+    }
+
+    /**
+     * @return the score of the sudoku: the weighted sum of the rule usage counts, the backtracking nodes and the backtracking depth. A higher score is
+     *         harder. Scores order sudokus inside a grade
+     */
+    public long getScore() {
+        return this.nakedSingles * WEIGHT_NAKED_SINGLE
+            + this.hiddenSingles * WEIGHT_HIDDEN_SINGLE
+            + this.eliminations * WEIGHT_ELIMINATION
+            + this.nodes * WEIGHT_NODE
+            + this.maxDepth * WEIGHT_DEPTH;
+    }
+
+    /**
+     * @return the number of initial values (rule 'I')
+     */
+    public int getGivens() {
+        return this.givens;
+    }
+
+    /**
+     * @return the number of cells of the solution finalized as naked single (rule 'O')
+     */
+    public int getNakedSingles() {
+        return this.nakedSingles;
+    }
+
+    /**
+     * @return the number of cells of the solution finalized as hidden single (rule 'E')
+     */
+    public int getHiddenSingles() {
+        return this.hiddenSingles;
+    }
+
+    /**
+     * @return the number of cells of the solution finalized by a guess of the backtracking rule (rule 'B')
+     */
+    public int getGuesses() {
+        return this.guesses;
+    }
+
+    /**
+     * @return the number of candidates removed by the elimination rules (rules 'L', 'N', 'H', 'T', 'U' and 'X')
+     */
+    public long getEliminations() {
+        return this.eliminations;
+    }
+
+    /**
+     * @return the number of values tried by the backtracking rule (the branches of the search tree)
+     */
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return the maximal number of guesses at the same time (the depth of the search tree)
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    @Override
+    public String toString() {
+        return this.grade + " score=" + getScore() + " I=" + this.givens + " O=" + this.nakedSingles + " E=" + this.hiddenSingles + " B=" + this.guesses
+            + " eliminations=" + this.eliminations + " nodes=" + this.nodes + " depth=" + this.maxDepth;
+    }
+}
@@ -0,0 +1,29 @@
+package de.budde.sudoku;
+
+/**
+ * a logical rule, that removes possible values or finalizes cells. Rules are applied by a {@link Scheduler} in the order of their cost. A rule must NOT
+ * guess: everything it does has to follow from the state. All changes must be done by {@link State#assign(int, int, char)} and
+ * {@link State#eliminate(int, int)}, thus they are recorded on the trail and can be rolled back by the backtracking rule. A rule must be stateless (or
+ * thread-safe), because one rule is used by many threads.
+ */
+public interface Rule {
+    /**
+     * @return the id of the rule, e.g. used as the rule id of cells finalized by the rule and in the logging
+     */
+    char getId();
+
+    /**
+     * @return the name of the rule, used in the configuration of a {@link Scheduler} and in its statistics
+     */
+    String getName();
+
+    /**
+     * apply the rule once. The rule may stop after it made some progress, because the scheduler will apply cheaper rules and then this rule again. Progress
+     * is detected by the scheduler from the steps and the eliminations of the state.
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return {@link Status#CONTRADICTION}, if the state is invalid now; {@link Status#CONSISTENT} otherwise
+     */
+    Status apply(int recDepth, State state);
+}
@@ -1,8 +1,12 @@
 package de.budde.sudoku;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fraunhofer.iais.dbc.DBC;
 import de.fraunhofer.iais.dbc.DBCException;
 
 public class RuleMachine {
@@ -12,6 +16,23 @@ public class RuleMachine {
     private static final Logger RESULT_EXCLUDED_VAL = LoggerFactory.getLogger("RESULT_EXCLUDED_VAL");
     private static final Logger RULE_BACKTRACK = LoggerFactory.getLogger("RULE_BACKTRACK");
     private static final Logger RESULT_BACKTRACK = LoggerFactory.getLogger("RESULT_BACKTRACK");
+    private static final Logger RESULT_ELIMINATION = LoggerFactory.getLogger("RESULT_ELIMINATION");
+    // masks of the 3 positions of a line inside a neighborhood (for a row or column: the part in one block; for a block: one of its rows)
+    private static final int[] TRIPLE = {
+        0x7,
+        0x38,
+        0x1C0
+    };
+    // masks of the 3 positions of a column inside a block
+    private static final int[] BLOCK_COLUMN = {
+        0x49,
+        0x92,
+        0x124
+    };
+    /**
+     * the rules, that the backtracking rule applies at every node before guessing. Null until first used, then {@link Scheduler#configured()}, if not set
+     */
+    private static volatile Scheduler scheduler;
 
     private RuleMachine() {
     }
@@ -25,19 +46,30 @@ public class RuleMachine {
      *
      * @param recDepth depth of recursion, used for debug indentation
      * @param state actual state of the cells
-     * @return the updated state, after the rule has finished
+     * @return the updated state, after the rule has finished. If the state gets invalid, an exception is thrown
      */
     static State ruleOneValLeft(int recDepth, State state) {
+        return orThrow(oneValLeft(recDepth, state), 'O', state);
+    }
+
+    /**
+     * the rule {@link #ruleOneValLeft(int, State)}, that signals an invalid state by its return value
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return the status of the state, after the rule has finished
+     */
+    static Status oneValLeft(int recDepth, State state) {
         final char ruleOneValLeftId = 'O';
         Do.logStartRule(RULE_ONE_VAL_LEFT, recDepth, ruleOneValLeftId, state);
         int finalizedCellsBefore = state.getNumberFinalized();
-        state = ruleOneValLeftSingleStep(recDepth, state);
+        Status status = oneValLeftSingleStep(recDepth, state);
         int finalizedCellsAfter = state.getNumberFinalized();
-        if ( finalizedCellsBefore != finalizedCellsAfter && finalizedCellsAfter < 81 ) {
-            state = ruleOneValLeft(recDepth + 1, state);
+        if ( status == Status.CONSISTENT && finalizedCellsBefore != finalizedCellsAfter && finalizedCellsAfter < 81 ) {
+            status = oneValLeft(recDepth + 1, state);
         }
         Do.logEndRule(RULE_ONE_VAL_LEFT, recDepth, ruleOneValLeftId, null, state);
-        return state;
+        return status;
     }
 
     /**
@@ -47,18 +79,31 @@ public class RuleMachine {
      *
      * @param recDepth depth of recursion, used for debug indentation
      * @param state actual state of the cells
-     * @return the updated state, after the rule has finished
+     * @return the updated state, after the rule has finished. If the state gets invalid, an exception is thrown
      */
     static State ruleOneValLeftSingleStep(int recDepth, State state) {
+        return orThrow(oneValLeftSingleStep(recDepth, state), 'O', state);
+    }
+
+    /**
+     * the rule {@link #ruleOneValLeftSingleStep(int, State)}, that signals an invalid state by its return value
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return the status of the state, after the rule has finished
+     */
+    static Status oneValLeftSingleStep(int recDepth, State state) {
         final char ruleOneValLeftId = 'O';
-        for ( Cell cell : state.getCells() ) {
-            if ( !cell.isFinalValueSet() && cell.isOnlyOneValLeft() ) {
-                Val val = cell.getTheFinalVal();
-                state.setFinalCellVal(cell, val, ruleOneValLeftId);
-                Do.logI(RESULT_ONE_VAL_LEFT, recDepth, ruleOneValLeftId + ": cell " + cell.toXY() + " = " + val);
+        for ( int idx = 0; idx < 81; idx++ ) {
+            int mask = state.getMask(idx);
+            if ( !state.isFinalValueSet(idx) && Integer.bitCount(mask) == 1 ) {
+                if ( state.assign(idx, mask, ruleOneValLeftId) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+                Do.logCell(RESULT_ONE_VAL_LEFT, recDepth, ruleOneValLeftId, "", idx, mask);
             }
         }
-        return state;
+        return solvedOrConsistent(state);
     }
 
     /**
@@ -69,32 +114,425 @@ public class RuleMachine {
      *
      * @param recDepth depth of recursion, used for debug indentation
      * @param state actual state of the cells
-     * @return the updated state, after the rule has finished
+     * @return the updated state, after the rule has finished. If the state gets invalid, an exception is thrown
      */
     static State ruleExcludedVal(int recDepth, State state) {
+        return orThrow(excludedVal(recDepth, state), 'E', state);
+    }
+
+    /**
+     * the rule {@link #ruleExcludedVal(int, State)}, that signals an invalid state by its return value
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return the status of the state, after the rule has finished
+     */
+    static Status excludedVal(int recDepth, State state) {
         final char ruleExcludedValId = 'E';
         Do.logStartRule(RULE_EXCLUDED_VAL, recDepth, ruleExcludedValId, state);
         boolean atLeastOneSuccess = false;
-        for ( Cell cell : state.getCells() ) {
-            if ( !cell.isFinalValueSet() ) {
-                for ( Val val : cell.getPossibleVals() ) {
-                    boolean success = state.valImpossibleInAtLeastOneNeighborhood(val, cell);
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( !state.isFinalValueSet(idx) ) {
+                for ( int m = state.getMask(idx); m != 0; m &= m - 1 ) {
+                    int valMask = m & -m;
+                    boolean success = state.valImpossibleInAtLeastOneNeighborhood(valMask, idx);
                     if ( success ) {
                         atLeastOneSuccess = true;
-                        state.setFinalCellVal(cell, val, ruleExcludedValId);
-                        Do.logI(RESULT_EXCLUDED_VAL, recDepth, ruleExcludedValId + ": cell " + cell.toXY() + " = " + val);
+                        if ( state.assign(idx, valMask, ruleExcludedValId) == Status.CONTRADICTION ) {
+                            Do.logEndRule(RULE_EXCLUDED_VAL, recDepth, ruleExcludedValId, "CONTRADICTION", state);
+                            return Status.CONTRADICTION;
+                        }
+                        Do.logCell(RESULT_EXCLUDED_VAL, recDepth, ruleExcludedValId, "", idx, valMask);
                         break;
                     }
                 }
             }
         }
-        state.valid();
-        if ( atLeastOneSuccess && state.getNumberFinalized() < 81 ) {
-            state = ruleOneValLeft(recDepth + 1, state);
-            state = ruleExcludedVal(recDepth + 1, state);
+        Status status = solvedOrConsistent(state);
+        if ( atLeastOneSuccess && status == Status.CONSISTENT ) {
+            status = oneValLeft(recDepth + 1, state);
+            if ( status == Status.CONSISTENT ) {
+                status = excludedVal(recDepth + 1, state);
+            }
         }
         Do.logEndRule(RULE_EXCLUDED_VAL, recDepth, ruleExcludedValId, null, state);
-        return state;
+        return status;
+    }
+
+    /**
+     * the rules 'O' and 'E' driven by the work queues of the state: instead of rescanning all cells, only the cells and neighborhoods affected by a removal
+     * are checked, until no work is left (fixpoint)<br>
+     * - for a queued cell C<br>
+     * if: only one value is possible for C<br>
+     * then: propagate this to C' neighborhood (rule 'O')<br>
+     * - for a queued neighborhood N<br>
+     * if: a value V is possible for only one cell C of N<br>
+     * then: V must be the correct value for C. Propagate this to C's neighbarhood (rule 'E')
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells
+     * @return the updated state, after the rule has finished. If the state gets invalid, an exception is thrown
+     */
+    static State rulePropagate(int recDepth, State state) {
+        return orThrow(propagate(recDepth, state), 'P', state);
+    }
+
+    /**
+     * the rule {@link #rulePropagate(int, State)}, that signals an invalid state by its return value
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return the status of the state, after the rule has finished
+     */
+    static Status propagate(int recDepth, State state) {
+        while ( true ) {
+            if ( nakedSingles(recDepth, state) == Status.CONTRADICTION ) {
+                state.clearQueues();
+                return Status.CONTRADICTION;
+            }
+            int unit = state.pollUnit();
+            if ( unit < 0 ) {
+                return solvedOrConsistent(state);
+            } else if ( hiddenSingles(recDepth, state, unit) == Status.CONTRADICTION ) {
+                state.clearQueues();
+                return Status.CONTRADICTION;
+            }
+        }
+    }
+
+    /**
+     * rule 'O' driven by the work queue of cells: finalize all queued cells, which have only one value left, until the queue is empty
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return {@link Status#CONTRADICTION}, if a finalization made the state invalid; {@link Status#CONSISTENT} otherwise
+     */
+    static Status nakedSingles(int recDepth, State state) {
+        final char ruleOneValLeftId = 'O';
+        for ( int idx = state.pollCell(); idx >= 0; idx = state.pollCell() ) {
+            int mask = state.getMask(idx);
+            if ( !state.isFinalValueSet(idx) && Integer.bitCount(mask) == 1 ) {
+                if ( state.assign(idx, mask, ruleOneValLeftId) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+                Do.logCell(RESULT_ONE_VAL_LEFT, recDepth, ruleOneValLeftId, "", idx, mask);
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * rule 'E' driven by the work queue of neighborhoods: take queued neighborhoods, until one of them had a hidden single, that was finalized (see
+     * {@link #hiddenSingles(int, State, int)}), or the queue is empty
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return {@link Status#CONTRADICTION}, if a neighborhood lost a value or a finalization made the state invalid; {@link Status#CONSISTENT} otherwise
+     */
+    static Status hiddenSingles(int recDepth, State state) {
+        long steps = state.getStepsAsLong();
+        for ( int unit = state.pollUnit(); unit >= 0; unit = state.pollUnit() ) {
+            if ( hiddenSingles(recDepth, state, unit) == Status.CONTRADICTION ) {
+                return Status.CONTRADICTION;
+            } else if ( state.getStepsAsLong() != steps ) {
+                break;
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * finalize all cells of a neighborhood, which are the only place for a value in this neighborhood
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @param unit the id of the neighborhood
+     * @return {@link Status#CONTRADICTION}, if a value has no place left in the neighborhood; {@link Status#CONSISTENT} otherwise
+     */
+    private static Status hiddenSingles(int recDepth, State state, int unit) {
+        final char ruleExcludedValId = 'E';
+        int[] members = Structure.UNIT_MEMBERS[unit];
+        for ( int valMask = 1; valMask <= Val.ALL; valMask <<= 1 ) {
+            int places = state.getPlaces(unit, valMask);
+            if ( places == 0 ) {
+                return Status.CONTRADICTION;
+            } else if ( (places & (places - 1)) == 0 ) {
+                int place = members[Integer.numberOfTrailingZeros(places)];
+                if ( !state.isFinalValueSet(place) ) {
+                    if ( state.assign(place, valMask, ruleExcludedValId) == Status.CONTRADICTION ) {
+                        return Status.CONTRADICTION;
+                    }
+                    Do.logCell(RESULT_EXCLUDED_VAL, recDepth, ruleExcludedValId, "", place, valMask);
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * apply the rules of the scheduler configured for the backtracking rule, see {@link Scheduler#run(int, State)}. If the state gets invalid, an exception is
+     * thrown
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells
+     * @return the updated state, after the rules have finished
+     */
+    static State ruleScheduled(int recDepth, State state) {
+        return orThrow(getScheduler().run(recDepth, state), 'S', state);
+    }
+
+    /**
+     * @return the scheduler, whose rules the backtracking rule applies at every node before guessing
+     */
+    public static Scheduler getScheduler() {
+        Scheduler configured = scheduler;
+        if ( configured == null ) {
+            configured = Scheduler.configured();
+            scheduler = configured;
+        }
+        return configured;
+    }
+
+    /**
+     * replace the scheduler, whose rules the backtracking rule applies at every node before guessing. The default is {@link Scheduler#configured()}
+     *
+     * @param newScheduler the scheduler to use from now on
+     * @return the previous scheduler
+     */
+    public static Scheduler setScheduler(Scheduler newScheduler) {
+        DBC.notNull(newScheduler);
+        Scheduler previous = getScheduler();
+        scheduler = newScheduler;
+        return previous;
+    }
+
+    /**
+     * rule 'L': if the places of a value in a block are in one row (column), the value is removed from the rest of that row (column). If the places of a value
+     * in a row (column) are in one block, the value is removed from the rest of that block.
+     */
+    static Status lockedCandidates(int recDepth, State state) {
+        for ( int unit = 0; unit < 27; unit++ ) {
+            int[] members = Structure.UNIT_MEMBERS[unit];
+            for ( int valMask = 1; valMask <= Val.ALL; valMask <<= 1 ) {
+                int places = state.getPlaces(unit, valMask);
+                if ( (places & (places - 1)) == 0 ) {
+                    continue; // finalized or a hidden single: nothing to eliminate
+                }
+                for ( int t = 0; t < 3; t++ ) {
+                    if ( unit < 18 ) {
+                        if ( (places & ~TRIPLE[t]) == 0 ) {
+                            int block = Structure.UNITS_OF[members[3 * t]][2];
+                            if ( eliminateOutside(recDepth, state, 'L', block, valMask, unit < 9 ? 0 : 1, unit) == Status.CONTRADICTION ) {
+                                return Status.CONTRADICTION;
+                            }
+                        }
+                    } else if ( (places & ~TRIPLE[t]) == 0 ) {
+                        int row = Structure.UNITS_OF[members[3 * t]][0];
+                        if ( eliminateOutside(recDepth, state, 'L', row, valMask, 2, unit) == Status.CONTRADICTION ) {
+                            return Status.CONTRADICTION;
+                        }
+                    } else if ( (places & ~BLOCK_COLUMN[t]) == 0 ) {
+                        int column = Structure.UNITS_OF[members[t]][1];
+                        if ( eliminateOutside(recDepth, state, 'L', column, valMask, 2, unit) == Status.CONTRADICTION ) {
+                            return Status.CONTRADICTION;
+                        }
+                    }
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * remove a value from all cells of a neighborhood, that are not member of another neighborhood
+     *
+     * @param unit the neighborhood, whose cells lose the value
+     * @param kind the kind of the other neighborhood: 0 row, 1 column, 2 block
+     * @param except the other neighborhood, whose cells keep the value
+     */
+    private static Status eliminateOutside(int recDepth, State state, char ruleId, int unit, int valMask, int kind, int except) {
+        for ( int idx : Structure.UNIT_MEMBERS[unit] ) {
+            if ( Structure.UNITS_OF[idx][kind] != except && (state.getMask(idx) & valMask) != 0 ) {
+                Do.logCell(RESULT_ELIMINATION, recDepth, ruleId, "NOT ", idx, valMask);
+                if ( state.eliminate(idx, valMask) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * rule 'N' (k = 2) and 'T' (k = 3): if k cells of a neighborhood have together only k possible values, these values are removed from the other cells of
+     * the neighborhood
+     */
+    static Status nakedSubsets(int recDepth, State state, int k) {
+        char ruleId = k == 2 ? 'N' : 'T';
+        for ( int unit = 0; unit < 27; unit++ ) {
+            int[] members = Structure.UNIT_MEMBERS[unit];
+            int open = 0;
+            int candidates = 0;
+            for ( int p = 0; p < 9; p++ ) {
+                int mask = state.getMask(members[p]);
+                if ( (mask & (mask - 1)) != 0 ) {
+                    open |= 1 << p;
+                    if ( Integer.bitCount(mask) <= k ) {
+                        candidates |= 1 << p;
+                    }
+                }
+            }
+            if ( Integer.bitCount(open) <= k || Integer.bitCount(candidates) < k ) {
+                continue; // no other cell could lose a value
+            }
+            for ( int ma = candidates; ma != 0; ma &= ma - 1 ) {
+                int a = Integer.numberOfTrailingZeros(ma);
+                int maskA = state.getMask(members[a]);
+                for ( int mb = ma & (ma - 1); mb != 0; mb &= mb - 1 ) {
+                    int b = Integer.numberOfTrailingZeros(mb);
+                    int maskAB = maskA | state.getMask(members[b]);
+                    if ( Integer.bitCount(maskAB) > k ) {
+                        continue;
+                    } else if ( k == 2 ) {
+                        if ( eliminateFromOthers(recDepth, state, ruleId, unit, maskAB, open & ~(1 << a | 1 << b)) == Status.CONTRADICTION ) {
+                            return Status.CONTRADICTION;
+                        }
+                        continue;
+                    }
+                    for ( int mc = mb & (mb - 1); mc != 0; mc &= mc - 1 ) {
+                        int c = Integer.numberOfTrailingZeros(mc);
+                        int maskABC = maskAB | state.getMask(members[c]);
+                        if ( Integer.bitCount(maskABC) == 3 ) {
+                            if ( eliminateFromOthers(recDepth, state, ruleId, unit, maskABC, open & ~(1 << a | 1 << b | 1 << c)) == Status.CONTRADICTION ) {
+                                return Status.CONTRADICTION;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * remove values from the cells of a neighborhood at some positions
+     */
+    private static Status eliminateFromOthers(int recDepth, State state, char ruleId, int unit, int valMask, int positions) {
+        int[] members = Structure.UNIT_MEMBERS[unit];
+        for ( int m = positions; m != 0; m &= m - 1 ) {
+            int idx = members[Integer.numberOfTrailingZeros(m)];
+            if ( (state.getMask(idx) & valMask) != 0 ) {
+                Do.logCell(RESULT_ELIMINATION, recDepth, ruleId, "NOT ", idx, state.getMask(idx) & valMask);
+                if ( state.eliminate(idx, valMask) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * rule 'H' (k = 2) and 'U' (k = 3): if k values have together only k places in a neighborhood, all other values are removed from the cells at these places
+     */
+    static Status hiddenSubsets(int recDepth, State state, int k) {
+        char ruleId = k == 2 ? 'H' : 'U';
+        for ( int unit = 0; unit < 27; unit++ ) {
+            int open = 0;
+            int candidates = 0;
+            for ( int v = 0; v < 9; v++ ) {
+                int places = state.getPlaces(unit, 1 << v);
+                if ( (places & (places - 1)) != 0 ) {
+                    open |= 1 << v;
+                    if ( Integer.bitCount(places) <= k ) {
+                        candidates |= 1 << v;
+                    }
+                }
+            }
+            if ( Integer.bitCount(open) <= k || Integer.bitCount(candidates) < k ) {
+                continue; // no cell could lose a value
+            }
+            for ( int ma = candidates; ma != 0; ma &= ma - 1 ) {
+                int a = Integer.numberOfTrailingZeros(ma);
+                int placesA = state.getPlaces(unit, 1 << a);
+                for ( int mb = ma & (ma - 1); mb != 0; mb &= mb - 1 ) {
+                    int b = Integer.numberOfTrailingZeros(mb);
+                    int placesAB = placesA | state.getPlaces(unit, 1 << b);
+                    if ( Integer.bitCount(placesAB) > k ) {
+                        continue;
+                    } else if ( k == 2 ) {
+                        if ( keepOnly(recDepth, state, ruleId, unit, 1 << a | 1 << b, placesAB) == Status.CONTRADICTION ) {
+                            return Status.CONTRADICTION;
+                        }
+                        continue;
+                    }
+                    for ( int mc = mb & (mb - 1); mc != 0; mc &= mc - 1 ) {
+                        int c = Integer.numberOfTrailingZeros(mc);
+                        int placesABC = placesAB | state.getPlaces(unit, 1 << c);
+                        if ( Integer.bitCount(placesABC) == 3 ) {
+                            if ( keepOnly(recDepth, state, ruleId, unit, 1 << a | 1 << b | 1 << c, placesABC) == Status.CONTRADICTION ) {
+                                return Status.CONTRADICTION;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * remove all values, that are not in a set of values, from the cells of a neighborhood at some positions
+     */
+    private static Status keepOnly(int recDepth, State state, char ruleId, int unit, int valMask, int positions) {
+        int[] members = Structure.UNIT_MEMBERS[unit];
+        for ( int m = positions; m != 0; m &= m - 1 ) {
+            int idx = members[Integer.numberOfTrailingZeros(m)];
+            int removed = state.getMask(idx) & ~valMask;
+            if ( removed != 0 ) {
+                Do.logCell(RESULT_ELIMINATION, recDepth, ruleId, "NOT ", idx, removed);
+                if ( state.eliminate(idx, removed) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+            }
+        }
+        return Status.CONSISTENT;
+    }
+
+    /**
+     * rule 'X': if a value has in two rows exactly the same two places (columns), then the value is removed from the rest of these two columns. The same
+     * holds with rows and columns swapped.
+     */
+    static Status xWing(int recDepth, State state) {
+        for ( int valMask = 1; valMask <= Val.ALL; valMask <<= 1 ) {
+            for ( int base = 0; base <= 9; base += 9 ) {
+                // base 0: the lines are rows, the crossing lines are columns (unit ids 9...17), base 9: vice versa
+                int cross = 9 - base;
+                for ( int line1 = base; line1 < base + 9; line1++ ) {
+                    int places = state.getPlaces(line1, valMask);
+                    if ( Integer.bitCount(places) != 2 ) {
+                        continue;
+                    }
+                    for ( int line2 = line1 + 1; line2 < base + 9; line2++ ) {
+                        if ( state.getPlaces(line2, valMask) != places ) {
+                            continue;
+                        }
+                        int lines = 1 << line1 - base | 1 << line2 - base;
+                        for ( int m = places; m != 0; m &= m - 1 ) {
+                            int crossLine = cross + Integer.numberOfTrailingZeros(m);
+                            int[] members = Structure.UNIT_MEMBERS[crossLine];
+                            for ( int p = 0; p < 9; p++ ) {
+                                if ( (lines & 1 << p) == 0 && (state.getMask(members[p]) & valMask) != 0 ) {
+                                    Do.logCell(RESULT_ELIMINATION, recDepth, 'X', "NOT ", members[p], valMask);
+                                    if ( state.eliminate(members[p], valMask) == Status.CONTRADICTION ) {
+                                        return Status.CONTRADICTION;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return Status.CONSISTENT;
     }
 
     /**
@@ -111,66 +549,272 @@ public class RuleMachine {
     static State ruleBacktracker(int recDepth, State state, boolean[] visitedCells) {
         final char ruleBacktrackerId = 'B';
         Do.logStartRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, state);
-        Cell cell = null;
-        while ( (cell = pickCell(state, visitedCells)) != null ) {
-            int idx = cell.getIdx();
-            for ( Val val : cell.getPossibleVals() ) {
+        int idx;
+        while ( (idx = pickCell(state, visitedCells)) >= 0 ) {
+            for ( int m = state.getMask(idx); m != 0; m &= m - 1 ) {
+                int valMask = m & -m;
                 State stateForTrial = state.clone();
-                Cell test = stateForTrial.getCells()[idx];
                 try {
-                    Do.logI(RESULT_BACKTRACK, recDepth, ruleBacktrackerId + ": TRY  cell " + test + " = " + val);
-                    stateForTrial.setFinalCellVal(test, val, ruleBacktrackerId);
+                    Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "TRY  ", idx, valMask);
+                    stateForTrial.setFinalCellVal(idx, valMask, ruleBacktrackerId);
                     stateForTrial = ruleOneValLeft(recDepth + 1, stateForTrial);
                     stateForTrial = ruleExcludedVal(recDepth + 1, stateForTrial);
                     stateForTrial.valid();
-                    Do.logI(RESULT_BACKTRACK, recDepth, ruleBacktrackerId + ": SUCC cell " + test.toXY() + " = " + val);
+                    Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "SUCC ", idx, valMask);
                     if ( stateForTrial.getNumberFinalized() < 81 ) {
                         stateForTrial = ruleBacktracker(recDepth + 1, stateForTrial, visitedCells.clone());
                     }
                     Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "FINAL SUCCESS", stateForTrial);
                     return stateForTrial;
                 } catch ( DBCException e ) {
-                    Do.logI(RESULT_BACKTRACK, recDepth, ruleBacktrackerId + ": FAIL cell " + state.getCells()[idx] + " = " + val);
-                    state.incrSteps(stateForTrial.getSteps());
+                    Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "FAIL ", idx, valMask);
+                    state.incrSteps(stateForTrial.getStepsAsLong());
                 }
             }
-            Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "NO SOLUTION for " + cell.toXY(), state);
+            Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "NO SOLUTION for " + Cell.toXY(idx), state);
             throw new DBCException(ruleBacktrackerId + ": no solution (1)");
         }
         Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "NO SOLUTION AT ALL", state);
         throw new DBCException(ruleBacktrackerId + ": no solution (2)");
     }
 
+    /**
+     * the same search as {@link #ruleBacktracker(int, State, boolean[])}, but all trials are done in place on the state given. Before a value is tried, a
+     * mark of the state's trail is taken. If the trial fails, the state is rolled back to the mark. Thus no state is copied.
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells. It is modified in place and contains the solution, when the rule has finished
+     * @return the solved state
+     */
+    static State ruleBacktrackerInPlace(int recDepth, State state) {
+        final char ruleBacktrackerId = 'B';
+        Do.logStartRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, state);
+        Status status = getScheduler().run(recDepth, state);
+        if ( status == Status.CONTRADICTION || status == Status.CONSISTENT && !searchInPlace(recDepth, state) ) {
+            Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "NO SOLUTION AT ALL", state);
+            throw new DBCException(ruleBacktrackerId + ": no solution");
+        }
+        Do.logEndRule(RULE_BACKTRACK, recDepth, ruleBacktrackerId, "FINAL SUCCESS", state);
+        return state;
+    }
+
+    /**
+     * try the possible values of the cell with the least number of possible values. Solve the rest recursively. After a value is set, the rules of the
+     * scheduler are applied, see {@link #getScheduler()}. The state given should be propagated by the same scheduler.
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @return true, if the state is solved; false, if no solution exists. Then the state is rolled back to the state at the time of the call
+     */
+    static boolean searchInPlace(int recDepth, State state) {
+        return searchInPlace(recDepth, state, null);
+    }
+
+    /**
+     * try the possible values of the cell with the least number of possible values. Solve the rest recursively. The search can be cancelled cooperatively by
+     * another thread.
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @param cancel if not null and set to true, the search stops as soon as possible and returns false
+     * @return true, if the state is solved; false, if no solution exists or the search was cancelled. Then the state is rolled back to the state at the time
+     *         of the call
+     */
+    static boolean searchInPlace(int recDepth, State state, AtomicBoolean cancel) {
+        return searchInPlace(recDepth, state, getScheduler(), cancel);
+    }
+
+    /**
+     * try the possible values of the cell with the least number of possible values. Solve the rest recursively with the rules of the scheduler given,
+     * independent of {@link #getScheduler()}
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @param scheduler the scheduler, whose rules are applied after a value is set
+     * @param cancel if not null and set to true, the search stops as soon as possible and returns false
+     * @return true, if the state is solved; false, if no solution exists or the search was cancelled. Then the state is rolled back to the state at the time
+     *         of the call
+     */
+    static boolean searchInPlace(int recDepth, State state, Scheduler scheduler, AtomicBoolean cancel) {
+        final char ruleBacktrackerId = 'B';
+        int idx = pickCell(state);
+        if ( idx < 0 ) {
+            return true;
+        }
+        int mark = state.mark();
+        for ( int m = state.getMask(idx); m != 0; m &= m - 1 ) {
+            if ( cancel != null && cancel.get() ) {
+                break;
+            }
+            int valMask = m & -m;
+            Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "TRY  ", idx, valMask);
+            state.incrNodes(recDepth + 1);
+            Status status = state.assign(idx, valMask, ruleBacktrackerId);
+            if ( status != Status.CONTRADICTION ) {
+                status = scheduler.run(recDepth + 1, state);
+            }
+            if ( status == Status.CONTRADICTION ) {
+                Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "FAIL ", idx, valMask);
+            } else {
+                Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "SUCC ", idx, valMask);
+                if ( status == Status.SOLVED || searchInPlace(recDepth + 1, state, scheduler, cancel) ) {
+                    return true;
+                }
+            }
+            state.rollback(mark);
+        }
+        return false;
+    }
+
+    /**
+     * count the solutions of a sudoku, but stop as soon as 'limit' solutions are found. The search is the same as {@link #searchInPlace(int, State)}, but
+     * after a success it rolls back and explores the remaining values. With limit 2 this answers "is the sudoku proper (has exactly one solution)?": the
+     * search stops at the second solution, and a proper sudoku needs one search, that has to exhaust the tree after its solution was found.<br>
+     * <br>
+     * The state is propagated by the rules of the scheduler (see {@link #getScheduler()}) and then restored to that propagated state: no guessed value
+     * remains set.
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, modified in place
+     * @param limit the number of solutions, after which the search stops, at least 1
+     * @return the number of solutions, but not more than limit. 0, if the sudoku has no solution
+     */
+    static int countSolutions(int recDepth, State state, int limit) {
+        DBC.isTrue(limit >= 1, "the limit must be at least 1");
+        Scheduler scheduler = getScheduler();
+        Status status = scheduler.run(recDepth, state);
+        if ( status != Status.CONSISTENT ) {
+            return status == Status.SOLVED ? 1 : 0;
+        }
+        return countInPlace(recDepth, state, scheduler, limit, 0);
+    }
+
+    /**
+     * @return the number of solutions found so far (found) plus the solutions below the actual state, but not more than limit. The state is rolled back to
+     *         the state at the time of the call
+     */
+    private static int countInPlace(int recDepth, State state, Scheduler scheduler, int limit, int found) {
+        final char ruleBacktrackerId = 'B';
+        int idx = pickCell(state);
+        if ( idx < 0 ) {
+            return found + 1;
+        }
+        int mark = state.mark();
+        for ( int m = state.getMask(idx); m != 0 && found < limit; m &= m - 1 ) {
+            int valMask = m & -m;
+            state.incrNodes(recDepth + 1);
+            Status status = state.assign(idx, valMask, ruleBacktrackerId);
+            if ( status != Status.CONTRADICTION ) {
+                status = scheduler.run(recDepth + 1, state);
+            }
+            if ( status == Status.SOLVED ) {
+                found++;
+                Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "SOL " + found, idx, valMask);
+            } else if ( status == Status.CONSISTENT ) {
+                found = countInPlace(recDepth + 1, state, scheduler, limit, found);
+            }
+            state.rollback(mark);
+        }
+        return found;
+    }
+
+    /**
+     * count the solutions below a state into a counter shared by many searches, but stop as soon as the counter reaches 'limit'. Then the search sets the
+     * cancel flag, that stops the other searches, too. This is the sequential part of {@link ParallelSearch#count(State, int)}
+     *
+     * @param recDepth depth of recursion, used for debug indentation
+     * @param state actual state of the cells, propagated by the scheduler. It is modified in place and rolled back to the state at the time of the call
+     * @param limit the number of solutions, after which all searches stop, at least 1
+     * @param solutions the counter of the solutions found by all searches
+     * @param cancel if set to true, the search stops as soon as possible
+     */
+    static void countInPlace(int recDepth, State state, int limit, AtomicInteger solutions, AtomicBoolean cancel) {
+        countInPlace(recDepth, state, getScheduler(), limit, solutions, cancel);
+    }
+
+    private static void countInPlace(int recDepth, State state, Scheduler scheduler, int limit, AtomicInteger solutions, AtomicBoolean cancel) {
+        final char ruleBacktrackerId = 'B';
+        int idx = pickCell(state);
+        if ( idx < 0 ) {
+            if ( solutions.incrementAndGet() >= limit ) {
+                cancel.set(true);
+            }
+            return;
+        }
+        int mark = state.mark();
+        for ( int m = state.getMask(idx); m != 0 && !cancel.get(); m &= m - 1 ) {
+            int valMask = m & -m;
+            state.incrNodes(recDepth + 1);
+            Status status = state.assign(idx, valMask, ruleBacktrackerId);
+            if ( status != Status.CONTRADICTION ) {
+                status = scheduler.run(recDepth + 1, state);
+            }
+            if ( status == Status.SOLVED ) {
+                Do.logCell(RESULT_BACKTRACK, recDepth, ruleBacktrackerId, "SOL ", idx, valMask);
+                if ( solutions.incrementAndGet() >= limit ) {
+                    cancel.set(true);
+                }
+            } else if ( status == Status.CONSISTENT ) {
+                countInPlace(recDepth + 1, state, scheduler, limit, solutions, cancel);
+            }
+            state.rollback(mark);
+        }
+    }
+
+    /**
+     * pick the not finalized cell with the least number of possible values
+     *
+     * @param state of the sudoku
+     * @return the index of the cell picked; -1, if all cells are finalized
+     */
+    static int pickCell(State state) {
+        int minValsIdx = -1;
+        int minValsSize = 10;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( !state.isFinalValueSet(idx) ) {
+                int size = Integer.bitCount(state.getMask(idx));
+                if ( size < minValsSize ) {
+                    minValsSize = size;
+                    minValsIdx = idx;
+                    if ( minValsSize <= 2 ) {
+                        break;
+                    }
+                }
+            }
+        }
+        return minValsIdx;
+    }
+
     /**
      * pick the cell with the least number of possible values, but only, if not already visited :-) and if not finalized
      *
      * @param state of the sudoku
      * @param visitedCells array remembering which cells have been visited
-     * @return
+     * @return the index of the cell picked; -1, if all cells have been visited
      */
-    private static Cell pickCell(State state, boolean[] visitedCells) {
-        Cell minValsCell = null;
-        for ( Cell cell : state.getCells() ) {
-            if ( !visitedCells[cell.getIdx()] ) {
-                if ( !cell.isFinalValueSet() ) {
-                    minValsCell = cell;
+    private static int pickCell(State state, boolean[] visitedCells) {
+        int minValsIdx = -1;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( !visitedCells[idx] ) {
+                if ( !state.isFinalValueSet(idx) ) {
+                    minValsIdx = idx;
                 }
             }
         }
         // all have been visited. Unsolvable sudoku (???)
-        if ( minValsCell == null ) {
-            return null;
+        if ( minValsIdx < 0 ) {
+            return -1;
         }
         // find the cell with the least number of possible values
-        int minValsSize = minValsCell.getPossibleVals().size();
+        int minValsSize = Integer.bitCount(state.getMask(minValsIdx));
         if ( minValsSize > 2 ) {
-            for ( Cell cell : state.getCells() ) {
-                if ( !visitedCells[cell.getIdx()] ) {
-                    if ( !cell.isFinalValueSet() ) {
-                        int size = cell.getPossibleVals().size();
+            for ( int idx = 0; idx < 81; idx++ ) {
+                if ( !visitedCells[idx] ) {
+                    if ( !state.isFinalValueSet(idx) ) {
+                        int size = Integer.bitCount(state.getMask(idx));
                         if ( size < minValsSize ) {
                             minValsSize = size;
-                            minValsCell = cell;
+                            minValsIdx = idx;
                             if ( minValsSize <= 2 ) {
                                 break;
                             }
@@ -180,7 +824,29 @@ public class RuleMachine {
             }
         }
         // mark it visited and return it
-        visitedCells[minValsCell.getIdx()] = true;
-        return minValsCell;
+        visitedCells[minValsIdx] = true;
+        return minValsIdx;
+    }
+
+    /**
+     * @return {@link Status#SOLVED}, if all cells of the state are finalized; {@link Status#CONSISTENT} otherwise
+     */
+    private static Status solvedOrConsistent(State state) {
+        return state.getNumberFinalized() == 81 ? Status.SOLVED : Status.CONSISTENT;
+    }
+
+    /**
+     * translate the status of a rule to the exception based API: a contradiction is an error there
+     *
+     * @param status the status a rule returned
+     * @param ruleId the id of the rule
+     * @param state the state the rule worked on
+     * @return the state, if it is not invalid
+     */
+    private static State orThrow(Status status, char ruleId, State state) {
+        if ( status == Status.CONTRADICTION ) {
+            throw new DBCException(ruleId + ": the state is invalid");
+        }
+        return state;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,95 @@
+package de.budde.sudoku;
+
+/**
+ * the rules of {@link RuleMachine} as {@link Rule}s, in the order of their cost
+ */
+public enum Rules implements Rule {
+    /**
+     * rule 'O': finalize the queued cells, that have only one value left
+     */
+    NAKED_SINGLES( 'O' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.nakedSingles(recDepth, state);
+        }
+    },
+    /**
+     * rule 'E': finalize a value, that has only one place left in a queued neighborhood
+     */
+    HIDDEN_SINGLES( 'E' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.hiddenSingles(recDepth, state);
+        }
+    },
+    /**
+     * rule 'L': pointing and box-line reduction
+     */
+    LOCKED_CANDIDATES( 'L' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.lockedCandidates(recDepth, state);
+        }
+    },
+    /**
+     * rule 'N': 2 cells of a neighborhood with the same 2 values left
+     */
+    NAKED_PAIRS( 'N' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.nakedSubsets(recDepth, state, 2);
+        }
+    },
+    /**
+     * rule 'H': 2 values with the same 2 places left in a neighborhood
+     */
+    HIDDEN_PAIRS( 'H' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.hiddenSubsets(recDepth, state, 2);
+        }
+    },
+    /**
+     * rule 'T': 3 cells of a neighborhood with together 3 values left
+     */
+    NAKED_TRIPLES( 'T' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.nakedSubsets(recDepth, state, 3);
+        }
+    },
+    /**
+     * rule 'U': 3 values with together 3 places left in a neighborhood
+     */
+    HIDDEN_TRIPLES( 'U' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.hiddenSubsets(recDepth, state, 3);
+        }
+    },
+    /**
+     * rule 'X': a value with the same 2 places in 2 rows (columns)
+     */
+    X_WING( 'X' ) {
+        @Override
+        public Status apply(int recDepth, State state) {
+            return RuleMachine.xWing(recDepth, state);
+        }
+    };
+
+    private final char id;
+
+    private Rules(char id) {
+        this.id = id;
+    }
+
+    @Override
+    public char getId() {
+        return this.id;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+}
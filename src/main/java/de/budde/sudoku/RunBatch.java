@@ -0,0 +1,411 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.fraunhofer.iais.dbc.DBC;
+import de.fraunhofer.iais.dbc.DBCException;
+
+public class RunBatch {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int CHUNK_SIZE = 1024;
+    private static final byte[] FAILED = failed();
+    private static final ThreadLocal<Solver> SOLVER = ThreadLocal.withInitial(() -> Solver.Engine.configured().create());
+    private static final ThreadLocal<SlicedSolver> SLICED_SOLVER = ThreadLocal.withInitial(SlicedSolver::new);
+    private static final ThreadLocal<Chunk> BINARY_CHUNK = ThreadLocal.withInitial(Chunk::new);
+
+    private RunBatch() {
+    }
+
+    /**
+     * batch entry: solve all sudokus of a file in the calling thread. See {@link #run(Path, Path, int)}
+     *
+     * @param in the file with the sudokus
+     * @param out the file receiving the solutions
+     * @return the counters of the batch run
+     */
+    public static Result run(Path in, Path out) throws IOException {
+        return run(in, out, 1);
+    }
+
+    /**
+     * batch entry: solve all sudokus of a file. Each line of the file contains one sudoku as 81 chars ('1' ... '9' for known values, '.', '0' or ' ' for
+     * unknown values). Empty lines are ignored. For each sudoku one line with the solution as 81 chars '1' ... '9' is written to the output file. For a
+     * sudoku, that is invalid or has no solution, a line of 81 '.' is written. The file is streamed, neither lines nor states are created per sudoku.<br>
+     * <br>
+     * The sudokus are read in chunks. If more than one thread is requested, the chunks are solved by a pool of workers, each owning a reusable
+     * {@link Solver} of the engine configured (see {@link Solver.Engine#configured()}). For the engine {@link Solver.Engine#RULES} the sudokus are solved
+     * by a {@link SlicedSolver}, 64 sudokus in lockstep, and only the sudokus needing a guess are searched one by one. At most 2 chunks per thread are in
+     * flight, then reading waits for the oldest chunk. Chunks are written in the order they were read, thus the order of the solutions is the order of the sudokus.<br>
+     * <br>
+     * If the input file is a binary corpus (see {@link BinaryCorpus}), the output file is a binary corpus with the sudokus and their solutions. The
+     * chunks are read and written by record index from and to the mapped files.
+     *
+     * @param in the file with the sudokus
+     * @param out the file receiving the solutions
+     * @param threads the number of worker threads, at least 1. If 1, the calling thread solves the sudokus
+     * @return the counters of the batch run
+     */
+    public static Result run(Path in, Path out, int threads) throws IOException {
+        return run(in, out, threads, null);
+    }
+
+    /**
+     * batch entry: solve all sudokus of a file, see {@link #run(Path, Path, int)}. Every sudoku is looked up in a catalog first, sudokus not cataloged are
+     * solved by a {@link CatalogSolver}, that inserts them into the catalog. Thus the sliced solver is not used, the sudokus are solved one by one
+     *
+     * @param in the file with the sudokus
+     * @param out the file receiving the solutions
+     * @param threads the number of worker threads, at least 1. If 1, the calling thread solves the sudokus
+     * @param catalog the catalog shared by all workers; null, if no catalog is used
+     * @return the counters of the batch run
+     */
+    public static Result run(Path in, Path out, int threads, Catalog catalog) throws IOException {
+        DBC.isTrue(threads >= 1, "at least one thread is required");
+        long start = System.nanoTime();
+        Result result = new Result();
+        ExecutorService workers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            if ( BinaryCorpus.isBinary(in) ) {
+                runBinary(in, out, workers, catalog, result);
+            } else {
+                runText(in, out, workers, threads, catalog, result);
+            }
+        } finally {
+            if ( workers != null ) {
+                workers.shutdownNow();
+            }
+        }
+        result.nanos = System.nanoTime() - start;
+        RunSudoku.RUN.info(
+            "solved " + result.solved + " of " + result.puzzles + " sudokus in " + result.nanos / 1000000 + " msec, " + result.getPuzzlesPerSecond() + " sudokus/sec");
+        return result;
+    }
+
+    private static void runText(Path in, Path out, ExecutorService workers, int threads, Catalog catalog, Result result) throws IOException {
+        try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+            FileChannel output = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer writer = new Writer(output, result, 2 * threads, catalog);
+            ByteBuffer inBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+            Chunk chunk = writer.freeChunk();
+            int recordLength = 0;
+            while ( input.read(inBuffer) >= 0 ) {
+                byte[] bytes = inBuffer.array();
+                int limit = inBuffer.position();
+                for ( int i = 0; i < limit; i++ ) {
+                    byte b = bytes[i];
+                    if ( b == '\n' ) {
+                        if ( recordLength > 0 ) {
+                            chunk.endRecord(recordLength);
+                            if ( chunk.isFull() ) {
+                                writer.submit(workers, chunk);
+                                chunk = writer.freeChunk();
+                            }
+                        }
+                        recordLength = 0;
+                    } else if ( b != '\r' && recordLength <= 81 ) {
+                        chunk.put(recordLength++, b);
+                    }
+                }
+                inBuffer.clear();
+            }
+            if ( recordLength > 0 ) {
+                chunk.endRecord(recordLength);
+            }
+            writer.submit(workers, chunk);
+            writer.drain(0);
+            writer.flush();
+        }
+    }
+
+    /**
+     * solve a binary corpus: the chunks are read by record index from the mapped input, the sudokus and their solutions are written by record index into a
+     * mapped binary corpus. Thus the chunks are independent of each other, no writer stage is needed
+     */
+    private static void runBinary(Path in, Path out, ExecutorService workers, Catalog catalog, Result result) throws IOException {
+        BinaryCorpus input = BinaryCorpus.open(in);
+        BinaryCorpus output = BinaryCorpus.create(out, input.size(), true);
+        List<Future<Integer>> solved = new ArrayList<>();
+        for ( int from = 0; from < input.size(); from += CHUNK_SIZE ) {
+            int first = from;
+            Callable<Integer> task = () -> BINARY_CHUNK.get().load(input, first).solve(catalog).store(output, first);
+            if ( workers == null ) {
+                result.solved += call(task);
+            } else {
+                solved.add(workers.submit(task));
+            }
+        }
+        try {
+            for ( Future<Integer> future : solved ) {
+                result.solved += future.get();
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new DBCException("batch interrupted", e);
+        } catch ( ExecutionException e ) {
+            throw new DBCException("batch failed", e.getCause());
+        }
+        output.force();
+        result.puzzles = input.size();
+        result.failed = result.puzzles - result.solved;
+    }
+
+    private static int call(Callable<Integer> task) {
+        try {
+            return task.call();
+        } catch ( Exception e ) {
+            throw new DBCException("batch failed", e);
+        }
+    }
+
+    private static byte[] failed() {
+        byte[] failed = new byte[81];
+        Arrays.fill(failed, (byte) '.');
+        return failed;
+    }
+
+    /**
+     * a chunk of sudokus read from the input and their solutions. Chunks are reused.
+     */
+    private static class Chunk {
+        private final byte[] records = new byte[CHUNK_SIZE * 81];
+        private final int[] lengths = new int[CHUNK_SIZE];
+        private final byte[] solutions = new byte[CHUNK_SIZE * 82];
+        private int size;
+        private int solved;
+
+        void put(int pos, byte b) {
+            if ( pos < 81 ) {
+                this.records[this.size * 81 + pos] = b;
+            }
+        }
+
+        void endRecord(int length) {
+            this.lengths[this.size++] = length;
+        }
+
+        boolean isFull() {
+            return this.size == CHUNK_SIZE;
+        }
+
+        /**
+         * decode the records from 'from' on of a binary corpus into this chunk
+         */
+        Chunk load(BinaryCorpus corpus, int from) {
+            this.size = Math.min(CHUNK_SIZE, corpus.size() - from);
+            for ( int r = 0; r < this.size; r++ ) {
+                corpus.readPuzzle(from + r, this.records, r * 81);
+                this.lengths[r] = 81;
+            }
+            return this;
+        }
+
+        /**
+         * encode the sudokus and the solutions of this chunk into the records from 'from' on of a binary corpus with solutions
+         *
+         * @return the number of sudokus solved
+         */
+        int store(BinaryCorpus corpus, int from) {
+            for ( int r = 0; r < this.size; r++ ) {
+                corpus.writePuzzle(from + r, this.records, r * 81);
+                corpus.writeSolution(from + r, this.solutions, r * 82);
+            }
+            return this.solved;
+        }
+
+        /**
+         * solve all sudokus of this chunk by the solvers of the calling thread. The rules don't log. With a catalog the solver of the calling thread is
+         * wrapped by a {@link CatalogSolver}
+         */
+        Chunk solve(Catalog catalog) {
+            return Do.quietly(() -> {
+                if ( catalog != null ) {
+                    return solve(new CatalogSolver(catalog, SOLVER.get()));
+                }
+                return Solver.Engine.configured() == Solver.Engine.RULES ? solve(SLICED_SOLVER.get()) : solve(SOLVER.get());
+            });
+        }
+
+        /**
+         * solve all sudokus of this chunk and put the solutions (or the failure markers) into the solution array
+         */
+        Chunk solve(Solver solver) {
+            this.solved = 0;
+            for ( int r = 0; r < this.size; r++ ) {
+                Status status = Status.CONTRADICTION;
+                if ( this.lengths[r] == 81 ) {
+                    try {
+                        status = solver.solve(this.records, r * 81);
+                    } catch ( DBCException e ) {
+                        // invalid chars in the record: reported as failure
+                    }
+                }
+                if ( status == Status.SOLVED ) {
+                    this.solved++;
+                    solver.writeSolution(this.solutions, r * 82);
+                } else {
+                    System.arraycopy(FAILED, 0, this.solutions, r * 82, 81);
+                }
+                this.solutions[r * 82 + 81] = '\n';
+            }
+            return this;
+        }
+
+        /**
+         * solve all sudokus of this chunk in batches of {@link SlicedSolver#LANES} and put the solutions (or the failure markers) into the solution array
+         */
+        Chunk solve(SlicedSolver solver) {
+            this.solved = 0;
+            for ( int from = 0; from < this.size; from += SlicedSolver.LANES ) {
+                int lanes = Math.min(SlicedSolver.LANES, this.size - from);
+                solver.solve(this.records, from * 81, lanes);
+                for ( int lane = 0; lane < lanes; lane++ ) {
+                    int r = from + lane;
+                    if ( this.lengths[r] == 81 && solver.getStatus(lane) == Status.SOLVED ) {
+                        this.solved++;
+                        solver.writeSolution(lane, this.solutions, r * 82);
+                    } else {
+                        System.arraycopy(FAILED, 0, this.solutions, r * 82, 81);
+                    }
+                    this.solutions[r * 82 + 81] = '\n';
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * the output stage: keeps the chunks in flight in input order, writes solved chunks and recycles them
+     */
+    private static class Writer {
+        private final FileChannel output;
+        private final Result result;
+        private final int maxInFlight;
+        private final Catalog catalog;
+        private final ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        private final ArrayDeque<Chunk> free = new ArrayDeque<>();
+        private final ByteBuffer outBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Writer(FileChannel output, Result result, int maxInFlight, Catalog catalog) {
+            this.output = output;
+            this.result = result;
+            this.maxInFlight = maxInFlight;
+            this.catalog = catalog;
+        }
+
+        Chunk freeChunk() {
+            Chunk chunk = this.free.poll();
+            return chunk == null ? new Chunk() : chunk;
+        }
+
+        /**
+         * solve a chunk, either in the calling thread or by a worker. If too many chunks are in flight, wait for the oldest and write it
+         */
+        void submit(ExecutorService workers, Chunk chunk) throws IOException {
+            if ( workers == null ) {
+                write(chunk.solve(this.catalog));
+            } else {
+                this.inFlight.add(workers.submit(() -> chunk.solve(this.catalog)));
+                drain(this.maxInFlight);
+            }
+        }
+
+        /**
+         * write the oldest chunks in flight, until not more than 'keep' chunks are in flight
+         */
+        void drain(int keep) throws IOException {
+            while ( this.inFlight.size() > keep ) {
+                try {
+                    write(this.inFlight.poll().get());
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new DBCException("batch interrupted", e);
+                } catch ( ExecutionException e ) {
+                    throw new DBCException("batch failed", e.getCause());
+                }
+            }
+        }
+
+        private void write(Chunk chunk) throws IOException {
+            this.result.puzzles += chunk.size;
+            this.result.solved += chunk.solved;
+            this.result.failed += chunk.size - chunk.solved;
+            int length = chunk.size * 82;
+            for ( int pos = 0; pos < length; ) {
+                int n = Math.min(length - pos, this.outBuffer.remaining());
+                this.outBuffer.put(chunk.solutions, pos, n);
+                pos += n;
+                if ( !this.outBuffer.hasRemaining() ) {
+                    flush();
+                }
+            }
+            chunk.size = 0;
+            this.free.add(chunk);
+        }
+
+        void flush() throws IOException {
+            this.outBuffer.flip();
+            while ( this.outBuffer.hasRemaining() ) {
+                this.output.write(this.outBuffer);
+            }
+            this.outBuffer.clear();
+        }
+    }
+
+    /**
+     * the counters of a batch run
+     */
+    public static class Result {
+        private long puzzles;
+        private long solved;
+        private long failed;
+        private long nanos;
+
+        /**
+         * @return the number of sudokus read
+         */
+        public long getPuzzles() {
+            return this.puzzles;
+        }
+
+        /**
+         * @return the number of sudokus solved
+         */
+        public long getSolved() {
+            return this.solved;
+        }
+
+        /**
+         * @return the number of sudokus, which are invalid or have no solution
+         */
+        public long getFailed() {
+            return this.failed;
+        }
+
+        /**
+         * @return the runtime of the batch in nanoseconds
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        /**
+         * @return the throughput of the batch
+         */
+        public long getPuzzlesPerSecond() {
+            return this.nanos == 0 ? 0 : this.puzzles * 1000000000L / this.nanos;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 package de.budde.sudoku;
 
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.fraunhofer.iais.dbc.DBCException;
+
 public class RunSudoku {
     static final Logger RUN = LoggerFactory.getLogger("RUN");
 
@@ -13,21 +15,69 @@ public class RunSudoku {
     }
 
     /**
-     * main entry: solve a sudoku given as a String. Log the result.
+     * main entry: solve a sudoku given as a String with the engine configured (see {@link Solver.Engine#configured()}). Log the result. The solutions are
+     * cached in {@link SolutionCache#DEFAULT}: if the sudoku or a transformation of it was solved before, the solution is taken from the cache. A sudoku,
+     * whose canonical form is too expensive to compute (see {@link SolutionCache#MAX_NODES}), is solved without the cache.
      *
      * @param aS the sudoku given as a String
      */
     public static State run(String aS) {
+        SolutionCache cache = SolutionCache.DEFAULT;
+        CanonicalForm canonical = cache.isEnabled() ? CanonicalForm.of(aS, SolutionCache.MAX_NODES) : null;
+        if ( canonical == null ) {
+            return run(aS, Solver.Engine.configured());
+        }
+        String solution = cache.get(canonical);
+        if ( solution != null ) {
+            return fromCache(aS, solution);
+        }
+        State state = run(aS, Solver.Engine.configured());
+        byte[] record = new byte[81];
+        state.store(record, 0);
+        cache.put(canonical, new String(record, StandardCharsets.US_ASCII));
+        return state;
+    }
+
+    /**
+     * main entry: solve a sudoku given as a String with an engine. Log the result. The rules of the engine {@link Solver.Engine#RULES} log, the other
+     * engines log the start and the solution only.
+     *
+     * @param aS the sudoku given as a String
+     * @param engine the engine to solve the sudoku
+     */
+    public static State run(String aS, Solver.Engine engine) {
+        if ( engine == Solver.Engine.RULES ) {
+            return run(aS, false);
+        }
+        long start = new Date().getTime();
+        Do.check(aS);
+        Solver solver = engine.create();
+        RUN.info("start " + engine + " with " + new State(Do.string2cells(aS)).getNumberFinalized() + " known values");
+        if ( solver.solve(aS.getBytes(StandardCharsets.US_ASCII), 0) != Status.SOLVED ) {
+            throw new DBCException(engine + ": no solution");
+        }
+        State state = solver.getState();
+        state.valid();
+        long delta = new Date().getTime() - start;
+        RUN.info("final result after " + state.getSteps() + " steps and " + state.getNodes() + " nodes in " + delta + " msec");
+        showState(state, false);
+        return state;
+    }
+
+    /**
+     * main entry: solve a sudoku given as a String. Log the result.
+     *
+     * @param aS the sudoku given as a String
+     * @param parallel true: the backtracking rule runs in parallel (see {@link ParallelSearch}); false: sequential
+     */
+    public static State run(String aS, boolean parallel) {
         long start = new Date().getTime();
         State state = new State(Do.string2cells(aS));
         RUN.info("start with " + state.getNumberFinalized() + " known values");
         showState(state, false);
-        state = RuleMachine.ruleOneValLeftSingleStep(0, state);
+        state = RuleMachine.ruleScheduled(0, state);
         if ( state.getNumberFinalized() < 81 ) {
-            state = RuleMachine.ruleExcludedVal(0, state);
-            if ( state.getNumberFinalized() < 81 ) {
-                state = RuleMachine.ruleBacktracker(0, state, mkNothingVisited());
-            }
+            state = parallel ? new ParallelSearch().solve(state) : RuleMachine.ruleBacktrackerInPlace(0, state);
         }
         state.valid();
         long delta = new Date().getTime() - start; // runtime native code generation has great effect on delta!
@@ -36,15 +86,44 @@ public class RunSudoku {
         return state;
     }
 
+    /**
+     * count the solutions of a sudoku given as a String, but stop as soon as 'limit' solutions are found. Log the result.
+     *
+     * @param aS the sudoku given as a String
+     * @param limit the number of solutions, after which the search stops, at least 1. Use 2 to check, whether the sudoku is proper
+     * @return the number of solutions, but not more than limit
+     */
+    public static int countSolutions(String aS, int limit) {
+        State state = new State(Do.string2cells(aS));
+        int solutions = RuleMachine.countSolutions(0, state, limit);
+        RUN.info("found " + solutions + (solutions == limit ? " (the limit)" : "") + " solutions after " + state.getNodes() + " nodes");
+        return solutions;
+    }
+
+    /**
+     * create the state of a sudoku from a cached solution. The cells not given get the rule id 'C'
+     */
+    private static State fromCache(String aS, String solution) {
+        final char ruleCacheId = 'C';
+        long start = new Date().getTime();
+        State state = new State(Do.string2cells(aS));
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( !state.isFinalValueSet(idx) ) {
+                if ( state.assign(idx, 1 << solution.charAt(idx) - '1', ruleCacheId) == Status.CONTRADICTION ) {
+                    throw new DBCException("the cached solution is invalid");
+                }
+            }
+        }
+        state.valid();
+        long delta = new Date().getTime() - start;
+        RUN.info("final result from the " + SolutionCache.DEFAULT + " in " + delta + " msec");
+        showState(state, false);
+        return state;
+    }
+
     private static void showState(State state, boolean showDetails) {
         if ( RUN.isInfoEnabled() ) {
             RUN.info(state.toString(showDetails));
         }
     }
-
-    private static boolean[] mkNothingVisited() {
-        boolean[] visitedCells = new boolean[81];
-        Arrays.fill(visitedCells, false);
-        return visitedCells;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,311 @@
+package de.budde.sudoku;
+
+import java.nio.charset.StandardCharsets;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a batch kernel, that solves up to 64 sudokus in lockstep. The candidates are bit-sliced: for every cell and value one long contains in bit i, whether the
+ * value is still possible in the cell of sudoku i (the "lane" i). Thus one long operation applies a rule to 64 sudokus at the same time:
+ * <ul>
+ * <li>naked singles (rule 'O'): the 9 longs of a cell are counted bit-parallel. The lanes, where exactly one value is left, finalize that value. The lanes,
+ * where no value is left, are dead (the sudoku has no solution).
+ * <li>hidden singles (rule 'E'): the longs of a value in the 9 cells of a neighborhood are counted. The lanes, where the value has exactly one place left,
+ * finalize it there. The lanes, where it has no place left, are dead.
+ * <li>finalizing a value in some lanes removes the other values of the cell and the value from the 20 peers in these lanes.
+ * </ul>
+ * The rules are repeated, until no lane changes any more. Most sudokus are solved by singles alone. Only the lanes, that still need guessing, are handed to
+ * the per sudoku search: their {@link State} is loaded from the sudoku, the finalizations of the kernel are assigned and then the rules of
+ * {@link RuleMachine#getScheduler()} and the backtracking search solve the rest. The states of the lanes solved by the kernel are created lazily by
+ * {@link #getState(int)}, {@link #writeSolution(int, byte[], int)} reads the solution from the slices directly.<br>
+ * <br>
+ * A sliced solver owns the slices and 64 states, which are reused for every batch. It is NOT thread-safe, every thread needs its own one.
+ */
+public class SlicedSolver {
+    /**
+     * the number of sudokus solved in lockstep
+     */
+    public static final int LANES = 64;
+
+    // candidates[idx * 9 + val]: bit i is set, if the value is possible in the cell of lane i
+    private final long[] candidates = new long[81 * 9];
+    // finalized[idx]: bit i is set, if the cell of lane i is finalized; hidden[idx]: ... and it was finalized as hidden single
+    private final long[] finalized = new long[81];
+    private final long[] hidden = new long[81];
+    private final State[] states = new State[LANES];
+    private final Status[] statuses = new Status[LANES];
+    private byte[] records;
+    private int offset;
+    private int size;
+    private long active;
+    private long dead;
+    private long logicOnly;
+    private long materialized;
+
+    public SlicedSolver() {
+        for ( int lane = 0; lane < LANES; lane++ ) {
+            this.states[lane] = new State();
+        }
+    }
+
+    /**
+     * solve sudokus given as consecutive records of 81 bytes. See {@link BatchSolver#solve(byte[], int)} for the format. A record with invalid chars is not
+     * solved. The rules log, if not switched off by {@link Do#quietly(java.util.function.Supplier)}
+     *
+     * @param records the array containing the sudokus
+     * @param offset the index of the first byte of the first sudoku in the array
+     * @param size the number of sudokus, 1 ... {@link #LANES}. The sudoku i is solved in lane i
+     * @return the number of sudokus solved
+     */
+    public int solve(byte[] records, int offset, int size) {
+        DBC.isTrue(size >= 1 && size <= LANES && records.length >= offset + size * 81, "1 ... 64 records of 81 bytes are required");
+        load(records, offset, size);
+        propagate();
+        long solved = this.active & ~this.dead;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            solved &= this.finalized[idx];
+        }
+        this.logicOnly = solved;
+        this.materialized = 0;
+        int count = Long.bitCount(solved);
+        for ( int lane = 0; lane < size; lane++ ) {
+            long bit = 1L << lane;
+            if ( (solved & bit) != 0 ) {
+                this.statuses[lane] = Status.SOLVED;
+            } else if ( (this.dead & bit) != 0 ) {
+                this.statuses[lane] = Status.CONTRADICTION;
+            } else {
+                this.statuses[lane] = search(lane);
+                if ( this.statuses[lane] == Status.SOLVED ) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * solve sudokus given as Strings of 81 chars ('1' ... '9' for known values, '.', '0' or ' ' for unknown values) in batches of {@link #LANES}
+     *
+     * @param sudokus the sudokus to solve
+     * @return the solved states, in the order of the sudokus. null for a sudoku, that has no solution
+     */
+    public State[] solve(String... sudokus) {
+        byte[] batch = new byte[LANES * 81];
+        State[] result = new State[sudokus.length];
+        for ( int from = 0; from < sudokus.length; from += LANES ) {
+            int size = Math.min(LANES, sudokus.length - from);
+            for ( int lane = 0; lane < size; lane++ ) {
+                Do.check(sudokus[from + lane]);
+                System.arraycopy(sudokus[from + lane].getBytes(StandardCharsets.US_ASCII), 0, batch, lane * 81, 81);
+            }
+            solve(batch, 0, size);
+            for ( int lane = 0; lane < size; lane++ ) {
+                result[from + lane] = this.statuses[lane] == Status.SOLVED ? getState(lane).clone() : null;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param lane the lane of a sudoku of the last batch
+     * @return {@link Status#SOLVED}, if the sudoku was solved; {@link Status#CONTRADICTION}, if the sudoku has no solution or invalid chars
+     */
+    public Status getStatus(int lane) {
+        checkLane(lane);
+        return this.statuses[lane];
+    }
+
+    /**
+     * @return the lanes of the last batch, that were solved by the singles of the kernel (bit i for lane i). The other solved lanes needed the search
+     */
+    public long getLogicOnly() {
+        return this.logicOnly;
+    }
+
+    /**
+     * @param lane the lane of a sudoku of the last batch, that was solved
+     * @return the solved state of the sudoku. It is overwritten by the next batch
+     */
+    public State getState(int lane) {
+        checkLane(lane);
+        DBC.isTrue(this.statuses[lane] == Status.SOLVED, "the sudoku has no solution");
+        if ( (this.materialized & 1L << lane) == 0 ) {
+            materialize(lane);
+        }
+        return this.states[lane];
+    }
+
+    /**
+     * write the solution of a sudoku of the last batch as 81 bytes '1' ... '9'
+     *
+     * @param lane the lane of a sudoku of the last batch, that was solved
+     * @param record the array receiving the solution
+     * @param offset the index of the first byte to write
+     */
+    public void writeSolution(int lane, byte[] record, int offset) {
+        checkLane(lane);
+        DBC.isTrue(this.statuses[lane] == Status.SOLVED, "the sudoku has no solution");
+        if ( (this.materialized & 1L << lane) != 0 ) {
+            this.states[lane].store(record, offset);
+        } else {
+            for ( int idx = 0; idx < 81; idx++ ) {
+                record[offset + idx] = (byte) ('1' + valueOf(idx, lane));
+            }
+        }
+    }
+
+    private void load(byte[] records, int offset, int size) {
+        this.records = records;
+        this.offset = offset;
+        this.size = size;
+        this.active = size == LANES ? -1L : (1L << size) - 1;
+        this.dead = ~this.active;
+        for ( int i = 0; i < 81 * 9; i++ ) {
+            this.candidates[i] = this.active;
+        }
+        for ( int idx = 0; idx < 81; idx++ ) {
+            this.finalized[idx] = 0;
+            this.hidden[idx] = 0;
+        }
+        for ( int lane = 0; lane < size; lane++ ) {
+            long bit = 1L << lane;
+            int base = offset + lane * 81;
+            for ( int idx = 0; idx < 81; idx++ ) {
+                int b = records[base + idx];
+                if ( b >= '1' && b <= '9' ) {
+                    finalize(idx, b - '1', bit);
+                } else if ( b != '.' && b != '0' && b != ' ' ) {
+                    this.dead |= bit;
+                }
+            }
+        }
+    }
+
+    /**
+     * apply naked and hidden singles to all lanes, until no lane changes any more
+     */
+    private void propagate() {
+        final long[] candidates = this.candidates;
+        long changed = -1L;
+        while ( (changed & ~this.dead) != 0 ) {
+            changed = 0;
+            for ( int idx = 0; idx < 81; idx++ ) {
+                int base = idx * 9;
+                long ones = 0;
+                long twos = 0;
+                for ( int val = 0; val < 9; val++ ) {
+                    long lanes = candidates[base + val];
+                    twos |= ones & lanes;
+                    ones |= lanes;
+                }
+                this.dead |= ~ones;
+                long singles = ones & ~twos & ~this.finalized[idx] & ~this.dead;
+                if ( singles != 0 ) {
+                    for ( int val = 0; val < 9; val++ ) {
+                        long lanes = singles & candidates[base + val];
+                        if ( lanes != 0 ) {
+                            finalize(idx, val, lanes);
+                        }
+                    }
+                    changed |= singles;
+                }
+            }
+            for ( int unit = 0; unit < 27; unit++ ) {
+                int[] members = Structure.UNIT_MEMBERS[unit];
+                for ( int val = 0; val < 9; val++ ) {
+                    long ones = 0;
+                    long twos = 0;
+                    for ( int idx : members ) {
+                        long lanes = candidates[idx * 9 + val];
+                        twos |= ones & lanes;
+                        ones |= lanes;
+                    }
+                    this.dead |= ~ones;
+                    long singles = ones & ~twos & ~this.dead;
+                    if ( singles != 0 ) {
+                        for ( int idx : members ) {
+                            long lanes = singles & candidates[idx * 9 + val] & ~this.finalized[idx];
+                            if ( lanes != 0 ) {
+                                finalize(idx, val, lanes);
+                                this.hidden[idx] |= lanes;
+                                changed |= lanes;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * finalize a value of a cell in some lanes: remove the other values of the cell and the value from the peers of the cell
+     */
+    private void finalize(int idx, int val, long lanes) {
+        final long[] candidates = this.candidates;
+        int base = idx * 9;
+        for ( int other = 0; other < 9; other++ ) {
+            if ( other != val ) {
+                candidates[base + other] &= ~lanes;
+            }
+        }
+        for ( int peer : Structure.PEERS[idx] ) {
+            candidates[peer * 9 + val] &= ~lanes;
+        }
+        this.finalized[idx] |= lanes;
+    }
+
+    /**
+     * load the state of a lane from its sudoku, assign the finalizations of the kernel and solve the rest by the rules and the search
+     */
+    private Status search(int lane) {
+        State state = this.states[lane];
+        Status status = loadState(lane);
+        if ( status == Status.CONSISTENT ) {
+            status = RuleMachine.getScheduler().run(0, state);
+        }
+        if ( status == Status.CONSISTENT ) {
+            status = RuleMachine.searchInPlace(0, state) ? Status.SOLVED : Status.CONTRADICTION;
+        }
+        this.materialized |= 1L << lane;
+        return status;
+    }
+
+    private void materialize(int lane) {
+        loadState(lane);
+        this.materialized |= 1L << lane;
+    }
+
+    /**
+     * load the state of a lane from its sudoku and assign the values finalized by the kernel (rule 'E' for hidden singles, rule 'O' for naked singles)
+     */
+    private Status loadState(int lane) {
+        State state = this.states[lane];
+        if ( state.load(this.records, this.offset + lane * 81) == Status.CONTRADICTION ) {
+            return Status.CONTRADICTION;
+        }
+        long bit = 1L << lane;
+        for ( int idx = 0; idx < 81; idx++ ) {
+            if ( (this.finalized[idx] & bit) != 0 && !state.isFinalValueSet(idx) ) {
+                char ruleId = (this.hidden[idx] & bit) != 0 ? 'E' : 'O';
+                if ( state.assign(idx, 1 << valueOf(idx, lane), ruleId) == Status.CONTRADICTION ) {
+                    return Status.CONTRADICTION;
+                }
+            }
+        }
+        return state.getNumberFinalized() == 81 ? Status.SOLVED : Status.CONSISTENT;
+    }
+
+    private int valueOf(int idx, int lane) {
+        for ( int val = 0; val < 9; val++ ) {
+            if ( (this.candidates[idx * 9 + val] & 1L << lane) != 0 ) {
+                return val;
+            }
+        }
+        return -1;
+    }
+
+    private void checkLane(int lane) {
+        DBC.isTrue(lane >= 0 && lane < this.size, "invalid lane");
+    }
+}
@@ -0,0 +1,138 @@
+package de.budde.sudoku;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.fraunhofer.iais.dbc.DBC;
+
+/**
+ * a bounded cache of solutions in front of {@link RunSudoku#run(String)}. Sudokus, that are transformations of each other (see {@link CanonicalForm}), share
+ * one entry: the key is the canonical form of the sudoku, the value the solution transformed to the canonical form. A hit is mapped back to a solution of
+ * the sudoku by the inverse transformation. When the cache is full, the least recently used entry is evicted.<br>
+ * <br>
+ * The cache is thread-safe: the entries are guarded by the lock of the map, the hits and misses are counted by {@link LongAdder}s.
+ */
+public class SolutionCache {
+    /**
+     * the cache used by {@link RunSudoku#run(String)}. Its capacity is set by the system property 'sudoku.cache' (default 10000, 0 switches caching off)
+     */
+    public static final SolutionCache DEFAULT = new SolutionCache(Integer.getInteger("sudoku.cache", 10000));
+
+    /**
+     * the maximal number of nodes of the search for the canonical form of a sudoku solved by {@link RunSudoku#run(String)} (see
+     * {@link CanonicalForm#of(String, long)}). The sudokus of a corpus need less than 20000 nodes, sparse or symmetric sudokus need millions. They are
+     * solved without the cache. Set by the system property 'sudoku.cache.nodes' (default 100000)
+     */
+    public static final long MAX_NODES = Long.getLong("sudoku.cache.nodes", 100000L);
+
+    private final int capacity;
+    private final Map<String, String> solutions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * create an empty cache
+     *
+     * @param capacity the maximal number of entries, 0 for a cache, that stores nothing
+     */
+    public SolutionCache(int capacity) {
+        DBC.isTrue(capacity >= 0, "the capacity must not be negative");
+        this.capacity = capacity;
+        this.solutions = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > SolutionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return true, if the cache stores solutions
+     */
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    /**
+     * look up the solution of a sudoku
+     *
+     * @param canonical the canonical form of the sudoku
+     * @return the solution of the sudoku as 81 chars '1' ... '9'; null, if the cache has no solution of the sudoku
+     */
+    public String get(CanonicalForm canonical) {
+        String solution;
+        synchronized ( this.solutions ) {
+            solution = this.solutions.get(canonical.getPuzzle());
+        }
+        if ( solution == null ) {
+            this.misses.increment();
+            return null;
+        } else {
+            this.hits.increment();
+            return canonical.fromCanonical(solution);
+        }
+    }
+
+    /**
+     * store the solution of a sudoku
+     *
+     * @param canonical the canonical form of the sudoku
+     * @param solution the solution of the sudoku as 81 chars '1' ... '9'
+     */
+    public void put(CanonicalForm canonical, String solution) {
+        if ( isEnabled() ) {
+            String canonicalSolution = canonical.toCanonical(solution);
+            synchronized ( this.solutions ) {
+                this.solutions.put(canonical.getPuzzle(), canonicalSolution);
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        synchronized ( this.solutions ) {
+            return this.solutions.size();
+        }
+    }
+
+    /**
+     * remove all entries
+     */
+    public void clear() {
+        synchronized ( this.solutions ) {
+            this.solutions.clear();
+        }
+    }
+
+    /**
+     * @return the number of lookups, that found a solution
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of lookups, that found no solution
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * reset the hits and misses to 0
+     */
+    public void resetStatistics() {
+        this.hits.reset();
+        this.misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "cache: " + size() + " of " + this.capacity + " entries, " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
@@ -0,0 +1,86 @@
+package de.budde.sudoku;
+
+/**
+ * a solver for sudokus given as records of 81 bytes. Bytes '1' ... '9' are initial values, bytes '.', '0' and ' ' are unknown cells. A solver owns one
+ * {@link State}, which is reused for every sudoku and contains the solution after a successful call of {@link #solve(byte[], int)}. A solver is NOT
+ * thread-safe, every thread needs its own one.
+ */
+public interface Solver {
+    /**
+     * the solving engines available
+     */
+    enum Engine {
+        /**
+         * the logical rules and the backtracking search of {@link RuleMachine}, see {@link BatchSolver}
+         */
+        RULES {
+            @Override
+            public Solver create() {
+                return new BatchSolver();
+            }
+        },
+        /**
+         * the exact cover search by dancing links, see {@link DlxSolver}
+         */
+        DLX {
+            @Override
+            public Solver create() {
+                return new DlxSolver();
+            }
+        },
+        /**
+         * naked and hidden singles on digit-major bitboards and a backtracking search, see {@link BitboardSolver}
+         */
+        BITBOARD {
+            @Override
+            public Solver create() {
+                return new BitboardSolver();
+            }
+        };
+
+        /**
+         * @return a new solver of this engine
+         */
+        public abstract Solver create();
+
+        /**
+         * @return the engine configured by the system property 'sudoku.engine' ('rules', 'dlx' or 'bitboard'). Default is {@link #RULES}
+         */
+        public static Engine configured() {
+            return valueOf(System.getProperty("sudoku.engine", RULES.name()).trim().toUpperCase());
+        }
+    }
+
+    /**
+     * solve a sudoku given as 81 bytes
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @return {@link Status#SOLVED}, if the sudoku was solved; {@link Status#CONTRADICTION}, if the sudoku has no solution
+     */
+    Status solve(byte[] record, int offset);
+
+    /**
+     * count the solutions of a sudoku given as 81 bytes, but stop as soon as 'limit' solutions are found. A sudoku is proper, if countSolutions(record,
+     * offset, 2) returns 1.
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @param limit the number of solutions, after which the search stops, at least 1
+     * @return the number of solutions, but not more than limit
+     */
+    int countSolutions(byte[] record, int offset, int limit);
+
+    /**
+     * write the solution of the last sudoku solved as 81 bytes '1' ... '9'
+     *
+     * @param record the array receiving the solution
+     * @param offset the index of the first byte to write
+     */
+    void writeSolution(byte[] record, int offset);
+
+    /**
+     * @return the state of the last sudoku solved. It is overwritten by the next call of {@link #solve(byte[], int)}
+     */
+    State getState();
+}
@@ -2,22 +2,45 @@ package de.budde.sudoku;
 
 import java.math.BigInteger;
 import java.util.Arrays;
-import java.util.EnumSet;
-import java.util.Optional;
 
 import com.google.common.base.Strings;
 
-import de.budde.sudoku.Structure.NeighborHoodStream;
 import de.fraunhofer.iais.dbc.DBC;
 import de.fraunhofer.iais.dbc.DBCException;
 
 public class State {
-    private static final BigInteger MINUS1 = BigInteger.valueOf(-1);
-    private static final BigInteger ZERO = BigInteger.valueOf(0);
-    private static final BigInteger ONE = BigInteger.valueOf(1);
+    /**
+     * a cell has at most 9 removals and 1 finalization, that have to be recorded on the trail
+     */
+    private static final int TRAIL_SIZE = 81 * 10;
+    private static final int TRAIL_FINAL = 1 << 16;
+    /**
+     * if true, every finalization is followed by the exhaustive check {@link #isValid()}. Only for testing and debugging, the default is the incremental check
+     */
+    private static volatile boolean fullValidation = Boolean.getBoolean("sudoku.fullValidation");
 
+    private final short[] possibleVals;
+    // places[unit * 9 + v]: mask of the positions in the neighborhood 'unit', where the value v+1 is still possible
+    private final short[] places;
+    private final long[] cellSteps;
+    private final char[] ruleIds;
     private Cell[] cells;
-    private BigInteger steps;
+    private long steps;
+    private long nodes;
+    private int maxDepth;
+    private long eliminations;
+    private int finalized;
+    private int[] trail;
+    private int trailTop;
+    // the work queues of cells, which may have only one value left, and of neighborhoods, whose possible places for a value changed
+    private final int[] cellQueue;
+    private final boolean[] cellQueued;
+    private int cellQueueHead;
+    private int cellQueueSize;
+    private final int[] unitQueue;
+    private final boolean[] unitQueued;
+    private int unitQueueHead;
+    private int unitQueueSize;
 
     /**
      * create an initial state from a cell array.
@@ -25,11 +48,125 @@ public class State {
      * @param cells the initial cells
      */
     public State(Cell[] cells) {
+        this();
         DBC.isTrue(cells != null && cells.length == 81, "81 cells are required for a 9x9 sudoku");
-        this.cells = cells;
+        for ( int i = 0; i < 81; i++ ) {
+            Cell cell = cells[i];
+            this.possibleVals[i] = cell.getMask();
+            this.cellSteps[i] = cell.getStepAsLong();
+            this.ruleIds[i] = cell.getRuleId();
+            if ( this.cellSteps[i] >= 0 ) {
+                this.finalized++;
+            }
+        }
+        for ( int i = 0; i < 81; i++ ) {
+            addPlaces(i, this.possibleVals[i]);
+        }
         propagateInitialValues();
+        enqueueAll();
         valid();
-        this.steps = ZERO;
+        this.steps = 0;
+    }
+
+    /**
+     * create a state without any cell values. It has to be initialized by {@link #load(byte[], int)}. Such a state can be reused for many sudokus.
+     */
+    State() {
+        this.possibleVals = new short[81];
+        this.places = new short[27 * 9];
+        this.cellSteps = new long[81];
+        this.ruleIds = new char[81];
+        this.cellQueue = new int[81];
+        this.cellQueued = new boolean[81];
+        this.unitQueue = new int[27];
+        this.unitQueued = new boolean[27];
+    }
+
+    /**
+     * reinitialize this state from a sudoku given as 81 bytes, without allocating memory. Bytes '1' ... '9' are initial values, bytes '.', '0' and ' ' are
+     * unknown cells. The initial values are propagated to the neighborhoods, further rules are NOT applied.
+     *
+     * @param record the array containing the sudoku
+     * @param offset the index of the first byte of the sudoku in the array
+     * @return {@link Status#CONTRADICTION}, if the initial values are contradictory; {@link Status#CONSISTENT} otherwise
+     */
+    Status load(byte[] record, int offset) {
+        DBC.isTrue(record.length >= offset + 81, "81 bytes are required for a 9x9 sudoku");
+        int[] trail = this.trail;
+        this.trail = null; // the initial values are never rolled back
+        this.trailTop = 0;
+        this.steps = 0;
+        this.nodes = 0;
+        this.maxDepth = 0;
+        this.eliminations = 0;
+        this.finalized = 0;
+        clearQueues();
+        Arrays.fill(this.possibleVals, Val.ALL);
+        Arrays.fill(this.places, Val.ALL);
+        Arrays.fill(this.cellSteps, -1);
+        Arrays.fill(this.ruleIds, '?');
+        boolean consistent = true;
+        for ( int i = 0; i < 81; i++ ) {
+            int b = record[offset + i];
+            if ( b >= '1' && b <= '9' ) {
+                int valMask = 1 << (b - '1');
+                short mask = this.possibleVals[i];
+                if ( (mask & valMask) == 0 ) {
+                    consistent = false;
+                } else {
+                    consistent &= removePlaces(i, mask & ~valMask);
+                    this.possibleVals[i] = (short) valMask;
+                    this.cellSteps[i] = 0;
+                    this.ruleIds[i] = 'I';
+                    this.finalized++;
+                    consistent &= removeValueFromPeers(valMask, i);
+                }
+            } else if ( b != '.' && b != '0' && b != ' ' ) {
+                this.trail = trail;
+                throw new DBCException("invalid char at position " + i + ". Must be 1..9 '0' ' ' or '.'");
+            }
+        }
+        enqueueAll();
+        this.trail = trail;
+        return consistent ? Status.CONSISTENT : Status.CONTRADICTION;
+    }
+
+    /**
+     * write the final values of this state as 81 bytes '1' ... '9'. Cells without final value are written as '.'
+     *
+     * @param record the array receiving the sudoku
+     * @param offset the index of the first byte to write
+     */
+    void store(byte[] record, int offset) {
+        for ( int i = 0; i < 81; i++ ) {
+            int mask = this.possibleVals[i];
+            record[offset + i] = this.cellSteps[i] >= 0 ? (byte) ('1' + Integer.numberOfTrailingZeros(mask)) : (byte) '.';
+        }
+    }
+
+    /**
+     * create a deep copy of a state. Only the primitive arrays are copied, the cell views are created lazily.
+     *
+     * @param toClone the state to copy
+     */
+    private State(State toClone) {
+        this.possibleVals = toClone.possibleVals.clone();
+        this.places = toClone.places.clone();
+        this.cellSteps = toClone.cellSteps.clone();
+        this.ruleIds = toClone.ruleIds.clone();
+        this.steps = toClone.steps;
+        this.nodes = toClone.nodes;
+        this.maxDepth = toClone.maxDepth;
+        this.eliminations = toClone.eliminations;
+        this.finalized = toClone.finalized;
+        this.cellQueue = toClone.cellQueue.clone();
+        this.cellQueued = toClone.cellQueued.clone();
+        this.cellQueueHead = toClone.cellQueueHead;
+        this.cellQueueSize = toClone.cellQueueSize;
+        this.unitQueue = toClone.unitQueue.clone();
+        this.unitQueued = toClone.unitQueued.clone();
+        this.unitQueueHead = toClone.unitQueueHead;
+        this.unitQueueSize = toClone.unitQueueSize;
     }
 
     /**
@@ -37,23 +174,57 @@ public class State {
      */
     @Override
     public State clone() {
-        Cell[] cells = new Cell[81];
-        for ( int i = 0; i < this.cells.length; i++ ) {
-            cells[i] = this.cells[i].clone();
-        }
-        State clone = new State(cells);
-        clone.steps = this.steps;
-        clone.valid();
-        return clone;
+        return new State(this);
     }
 
     /**
-     * @return the array of all cells of this state
+     * @return the array of all cells of this state. The cells are views on this state, changes of the state are visible in the cells. Changes by a cell are
+     *         done by {@link #setFinalCellVal(int, int, char)} and {@link #eliminate(int, int)} of this state
      */
     public Cell[] getCells() {
+        if ( this.cells == null ) {
+            Cell[] cells = new Cell[81];
+            for ( int i = 0; i < 81; i++ ) {
+                cells[i] = new Cell(i, this.possibleVals, this.cellSteps, this.ruleIds, i, this);
+            }
+            this.cells = cells;
+        }
         return this.cells;
     }
 
+    /**
+     * @param idx the index of a cell
+     * @return the mask of the possible values of the cell (bit 0 for value 1, ..., bit 8 for value 9)
+     */
+    public int getMask(int idx) {
+        return this.possibleVals[idx];
+    }
+
+    /**
+     * @param unit the id of a neighborhood (see {@link Structure#UNIT_MEMBERS})
+     * @param valMask a value as a single bit mask
+     * @return the mask of the positions in the neighborhood (bit p for the cell UNIT_MEMBERS[unit][p]), where the value is still possible
+     */
+    public int getPlaces(int unit, int valMask) {
+        return this.places[unit * 9 + Integer.numberOfTrailingZeros(valMask)];
+    }
+
+    /**
+     * @param idx the index of a cell
+     * @return true, if the final value of the cell has been set and propagated
+     */
+    public boolean isFinalValueSet(int idx) {
+        return this.cellSteps[idx] >= 0;
+    }
+
+    /**
+     * @param idx the index of a cell
+     * @return the id of the rule, that set the final value of the cell; '?', if the final value is not set
+     */
+    public char getRuleId(int idx) {
+        return this.ruleIds[idx];
+    }
+
     /**
      * set the final value for a cell. Remove this value from all cells in all neighborhoods
      *
@@ -62,12 +233,172 @@ public class State {
      * @param ruleId the rule identifier, who discovered the final value
      */
     public void setFinalCellVal(Cell cell, Val val, char ruleId) {
-        this.steps = this.steps.add(ONE);
-        cell.setFinalVal(val, this.steps, ruleId);
-        int finalizedCellId = cell.getIdx();
-        NeighborHoodStream neighborHoodStream = Structure.getNeighborHood(finalizedCellId);
-        neighborHoodStream.get().forEach(g -> removeValueFromNeighborHood(val, finalizedCellId, g));
-        valid();
+        setFinalCellVal(cell.getIdx(), val.mask(), ruleId);
+    }
+
+    /**
+     * set the final value for a cell. Remove this value from all cells in all neighborhoods. If this leads to an invalid state, an exception is thrown
+     *
+     * @param idx the index of the cell, whose final value is known now
+     * @param valMask the final value as a single bit mask
+     * @param ruleId the rule identifier, who discovered the final value
+     */
+    public void setFinalCellVal(int idx, int valMask, char ruleId) {
+        if ( (this.possibleVals[idx] & valMask) == 0 ) {
+            throw new DBCException("cell " + Cell.toXY(idx) + " should be set to " + Val.ofMask(valMask) + ", but that is impossible");
+        } else if ( assign(idx, valMask, ruleId) == Status.CONTRADICTION ) {
+            throw new DBCException("cell " + Cell.toXY(idx) + " set to " + Val.ofMask(valMask) + " makes the state invalid");
+        }
+    }
+
+    /**
+     * set the final value for a cell and remove this value from all cells in all neighborhoods. Contrary to {@link #setFinalCellVal(int, int, char)} no
+     * exception is thrown, if the value is impossible or the state gets invalid. This is signalled by the status returned. In this case the state is
+     * inconsistent and should be rolled back or thrown away.<br>
+     * The check is incremental: only the cells and neighborhoods changed are checked (no set of possible values got empty, every value has a place left in
+     * the changed neighborhoods, the value is not finalized twice in the cell's neighborhoods). See {@link #setFullValidation(boolean)}.
+     *
+     * @param idx the index of the cell, whose final value is known now
+     * @param valMask the final value as a single bit mask
+     * @param ruleId the rule identifier, who discovered the final value
+     * @return {@link Status#CONTRADICTION} if the state is invalid now; {@link Status#CONSISTENT} otherwise
+     */
+    public Status assign(int idx, int valMask, char ruleId) {
+        this.steps++;
+        if ( this.cellSteps[idx] >= 0 ) {
+            throw new DBCException("cell " + Cell.toXY(idx) + " got a final value for the second time - logical error of a rule");
+        } else if ( (this.possibleVals[idx] & valMask) == 0 ) {
+            return Status.CONTRADICTION;
+        }
+        short mask = this.possibleVals[idx];
+        if ( this.trail != null ) {
+            this.trail[this.trailTop++] = idx | mask << 7 | TRAIL_FINAL;
+        }
+        boolean placeLeft = true;
+        if ( mask != valMask ) {
+            placeLeft = removePlaces(idx, mask & ~valMask);
+            enqueueUnitsOf(idx);
+        }
+        this.possibleVals[idx] = (short) valMask;
+        this.cellSteps[idx] = this.steps;
+        this.ruleIds[idx] = ruleId;
+        this.finalized++;
+        boolean noCellEmpty = removeValueFromPeers(valMask, idx);
+        boolean consistent = placeLeft && noCellEmpty && isOnlyPlace(idx, valMask);
+        if ( fullValidation ) {
+            consistent = consistent && isValid();
+        }
+        return consistent ? Status.CONSISTENT : Status.CONTRADICTION;
+    }
+
+    /**
+     * remove values from the set of possible values of a cell, that is not finalized. This is used by the elimination rules, which remove candidates without
+     * finalizing a cell. The change is recorded on the trail and the work queues are updated: if only one value is left, the cell is queued.
+     *
+     * @param idx the index of the cell
+     * @param removeMask the values to be removed. Values already impossible are ignored
+     * @return {@link Status#CONTRADICTION}, if the cell has no value left or a value has no place left in one of the cell's neighborhoods;
+     *         {@link Status#CONSISTENT} otherwise
+     */
+    public Status eliminate(int idx, int removeMask) {
+        short mask = this.possibleVals[idx];
+        int removed = mask & removeMask;
+        if ( removed == 0 ) {
+            return Status.CONSISTENT;
+        }
+        DBC.isTrue(this.cellSteps[idx] < 0, "a finalized cell must not lose values - logical error of a rule");
+        if ( this.trail != null ) {
+            this.trail[this.trailTop++] = idx | mask << 7;
+        }
+        short newMask = (short) (mask & ~removed);
+        this.possibleVals[idx] = newMask;
+        this.eliminations += Integer.bitCount(removed);
+        boolean placeLeft = removePlaces(idx, removed);
+        enqueueUnitsOf(idx);
+        if ( newMask != 0 && (newMask & (newMask - 1)) == 0 ) {
+            enqueueCell(idx);
+        }
+        return placeLeft && newMask != 0 ? Status.CONSISTENT : Status.CONTRADICTION;
+    }
+
+    /**
+     * start to record all changes of the possible values and all finalizations on a trail (if not already done) and return the actual position of the trail.
+     * Calling {@link #rollback(int)} with this mark undoes all changes done after this call and clears the work queues. This allows a search to mutate a
+     * single state in place, instead of cloning the state for every trial. Note, that the step counter is NOT rolled back, it counts failed trials, too.
+     *
+     * @return the mark to be used for {@link #rollback(int)}
+     */
+    public int mark() {
+        if ( this.trail == null ) {
+            this.trail = new int[TRAIL_SIZE];
+        }
+        return this.trailTop;
+    }
+
+    /**
+     * undo all changes recorded on the trail after a mark has been taken
+     *
+     * @param mark a position of the trail, returned by {@link #mark()}
+     */
+    public void rollback(int mark) {
+        DBC.isTrue(this.trail != null && mark <= this.trailTop);
+        while ( this.trailTop > mark ) {
+            int entry = this.trail[--this.trailTop];
+            int idx = entry & 0x7F;
+            short mask = (short) (entry >>> 7 & Val.ALL);
+            addPlaces(idx, mask & ~this.possibleVals[idx]);
+            this.possibleVals[idx] = mask;
+            if ( (entry & TRAIL_FINAL) != 0 ) {
+                this.cellSteps[idx] = -1;
+                this.ruleIds[idx] = '?';
+                this.finalized--;
+            }
+        }
+        clearQueues();
+    }
+
+    /**
+     * take the next cell from the work queue of cells. A cell is queued, when a removal left only one possible value.
+     *
+     * @return the index of the cell; -1, if the queue is empty
+     */
+    int pollCell() {
+        if ( this.cellQueueSize == 0 ) {
+            return -1;
+        }
+        int idx = this.cellQueue[this.cellQueueHead];
+        this.cellQueueHead = (this.cellQueueHead + 1) % 81;
+        this.cellQueueSize--;
+        this.cellQueued[idx] = false;
+        return idx;
+    }
+
+    /**
+     * take the next neighborhood from the work queue of neighborhoods. A neighborhood is queued, when a value was removed from one of its cells.
+     *
+     * @return the unit id of the neighborhood (see {@link Structure#UNIT_MEMBERS}); -1, if the queue is empty
+     */
+    int pollUnit() {
+        if ( this.unitQueueSize == 0 ) {
+            return -1;
+        }
+        int unit = this.unitQueue[this.unitQueueHead];
+        this.unitQueueHead = (this.unitQueueHead + 1) % 27;
+        this.unitQueueSize--;
+        this.unitQueued[unit] = false;
+        return unit;
+    }
+
+    /**
+     * empty both work queues. Necessary, if a propagation is aborted because of a contradiction.
+     */
+    void clearQueues() {
+        while ( pollCell() >= 0 ) {
+            // empty the queue and reset the flags
+        }
+        while ( pollUnit() >= 0 ) {
+            // empty the queue and reset the flags
+        }
     }
 
     /**
@@ -79,24 +410,35 @@ public class State {
      */
     public boolean valImpossibleInAtLeastOneNeighborhood(Val val, Cell cell) {
         DBC.notNull(val);
-        DBC.isTrue(cell.getPossibleVals().contains(val));
-        int idx = cell.getIdx();
-        NeighborHoodStream neighborHoodStream = Structure.getNeighborHood(idx);
-        Optional<?> found = neighborHoodStream.get().filter(g -> isValImpossibleInNeighborhood(val, idx, g)).findFirst();
-        return found.isPresent();
+        return valImpossibleInAtLeastOneNeighborhood(val.mask(), cell.getIdx());
     }
 
     /**
-     * @return the number of cells, whose value is known and this knowledge has been propagated to the cell's neighborhoods
+     * take a value and search a neighborhood, in which this value is impossible for all its cells. See
+     * {@link #valImpossibleInAtLeastOneNeighborhood(Val, Cell)}
+     *
+     * @param valMask the test value as a single bit mask
+     * @param idx the index of the cell, whose neighborhooda are checked
+     * @return true, if a neighborhood is found, in which the value is impossible for all its cells; false, otherwise
      */
-    public int getNumberFinalized() {
-        int finalized = 0;
-        for ( Cell cell : this.cells ) {
-            if ( cell.isFinalValueSet() ) {
-                finalized++;
+    public boolean valImpossibleInAtLeastOneNeighborhood(int valMask, int idx) {
+        DBC.isTrue((this.possibleVals[idx] & valMask) != 0);
+        int val = Integer.numberOfTrailingZeros(valMask);
+        int[] units = Structure.UNITS_OF[idx];
+        int[] positions = Structure.UNIT_POSITIONS[idx];
+        for ( int k = 0; k < 3; k++ ) {
+            if ( this.places[units[k] * 9 + val] == 1 << positions[k] ) {
+                return true;
             }
         }
-        return finalized;
+        return false;
+    }
+
+    /**
+     * @return the number of cells, whose value is known and this knowledge has been propagated to the cell's neighborhoods
+     */
+    public int getNumberFinalized() {
+        return this.finalized;
     }
 
     /**
@@ -107,23 +449,45 @@ public class State {
      * If the state is not valid, throw an exception, otherwise return.
      */
     public void valid() {
-        for ( Cell cell : this.cells ) {
-            EnumSet<Val> possibleVals = cell.getPossibleVals();
-            DBC.isTrue(possibleVals.size() > 0);
+        if ( !isValid() ) {
+            throw new DBCException("the state is invalid:\n" + toString());
+        }
+    }
+
+    /**
+     * switch the exhaustive validation on or off. If on, after every finalization the complete state is checked by {@link #isValid()}, in addition to the
+     * incremental check. This is expensive and intended for testing and debugging.
+     *
+     * @param on true: check exhaustively; false: check incrementally (the default)
+     */
+    public static void setFullValidation(boolean on) {
+        fullValidation = on;
+    }
+
+    /**
+     * check, whether this state is valid. See {@link #valid()}
+     *
+     * @return true, if the state is valid; false otherwise
+     */
+    public boolean isValid() {
+        for ( short possibleVal : this.possibleVals ) {
+            if ( possibleVal == 0 ) {
+                return false;
+            }
         }
         for ( int[] neighborHood : Structure.getAllNeighborhoods() ) {
-            EnumSet<Val> collect = EnumSet.noneOf(Val.class);
+            int collect = 0;
             for ( int idx : neighborHood ) {
-                Cell cell = this.cells[idx];
-                if ( cell.isOnlyOneValLeft() ) {
-                    Val finalVal = cell.getTheFinalVal();
-                    if ( collect.contains(finalVal) ) {
-                        throw new DBCException("NeighborHood " + Arrays.toString(neighborHood) + " at idx " + idx + " has duplicate value " + finalVal);
+                int mask = this.possibleVals[idx];
+                if ( (mask & (mask - 1)) == 0 ) {
+                    if ( (collect & mask) != 0 ) {
+                        return false;
                     }
-                    collect.add(finalVal);
+                    collect |= mask;
                 }
             }
         }
+        return true;
     }
 
     /**
@@ -131,6 +495,13 @@ public class State {
      *         incremented.
      */
     public BigInteger getSteps() {
+        return BigInteger.valueOf(this.steps);
+    }
+
+    /**
+     * @return the number of steps as a primitive. See {@link #getSteps()}
+     */
+    public long getStepsAsLong() {
         return this.steps;
     }
 
@@ -141,7 +512,51 @@ public class State {
      * @param attempts that have been done and failed to be a solution
      */
     public void incrSteps(BigInteger attempts) {
-        this.steps = this.steps.add(attempts);
+        incrSteps(attempts.longValue());
+    }
+
+    /**
+     * increment the steps. See {@link #incrSteps(BigInteger)}
+     *
+     * @param attempts that have been done and failed to be a solution
+     */
+    public void incrSteps(long attempts) {
+        this.steps += attempts;
+    }
+
+    /**
+     * @return the number of values, that the backtracking rule has tried (i.e. the number of nodes of the search tree). 0, if the rules solved the sudoku
+     *         without backtracking
+     */
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return the maximal number of values, that the backtracking rule has guessed at the same time (i.e. the depth of the search tree). 0, if the rules
+     *         solved the sudoku without backtracking
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * @return the number of values, that the elimination rules have removed (including removals, that were rolled back later)
+     */
+    public long getEliminations() {
+        return this.eliminations;
+    }
+
+    /**
+     * count a value tried by the backtracking rule. See {@link #getNodes()} and {@link #getMaxDepth()}
+     *
+     * @param depth the number of values guessed at the same time, including this one
+     */
+    void incrNodes(int depth) {
+        this.nodes++;
+        if ( depth > this.maxDepth ) {
+            this.maxDepth = depth;
+        }
     }
 
     @Override
@@ -174,7 +589,7 @@ public class State {
         final StringBuilder sb = new StringBuilder();
         boolean first = true;
         int three = 0;
-        for ( int i = 0; i < this.cells.length; i++ ) {
+        for ( int i = 0; i < 81; i++ ) {
             if ( i % 9 == 0 ) {
                 if ( first ) {
                     first = false;
@@ -190,8 +605,7 @@ public class State {
                     }
                 }
             }
-            Cell cell = this.cells[i];
-            addCellInfo(sb, cell, showDetails, percentD, empty);
+            addCellInfo(sb, i, showDetails, percentD, empty);
             sb.append((i + 1) % 3 == 0 ? " | " : " ");
         }
         sb.append("\n").append(horizontalSeparator);
@@ -204,12 +618,11 @@ public class State {
      * @param state state in initialization
      */
     private void propagateInitialValues() {
-        for ( Cell cell : getCells() ) {
-            if ( cell.getRuleId() == 'I' ) {
-                int initialCellId = cell.getIdx();
-                Val val = cell.getTheFinalVal();
-                NeighborHoodStream neighborHoodStream = Structure.getNeighborHood(initialCellId);
-                neighborHoodStream.get().forEach(g -> removeValueFromNeighborHood(val, initialCellId, g));
+        for ( int i = 0; i < 81; i++ ) {
+            if ( this.ruleIds[i] == 'I' ) {
+                int valMask = this.possibleVals[i];
+                DBC.isTrue(Integer.bitCount(valMask) == 1);
+                removeValueFromPeers(valMask, i);
             }
         }
     }
@@ -217,11 +630,11 @@ public class State {
     /**
      * for a finalized cell, add the value and optional anotations: ruleId and step-number; otherwise add spaces.
      */
-    private static void addCellInfo(StringBuilder sb, Cell cell, boolean showStep, String percentD, String empty) {
-        if ( cell.isFinalValueSet() ) {
-            sb.append(cell.getTheFinalVal());
+    private void addCellInfo(StringBuilder sb, int idx, boolean showStep, String percentD, String empty) {
+        if ( isFinalValueSet(idx) ) {
+            sb.append(Val.ofMask(this.possibleVals[idx]));
             if ( showStep ) {
-                sb.append("(").append(cell.getRuleId()).append(':').append(String.format(percentD, cell.getStep())).append(")");
+                sb.append("(").append(this.ruleIds[idx]).append(':').append(String.format(percentD, this.cellSteps[idx])).append(")");
             }
         } else {
             sb.append(empty);
@@ -229,38 +642,126 @@ public class State {
     }
 
     /**
-     * check for a single neighborhood, whether a value is impossible for all cells (except the one, that triggered the check)
+     * remove a value from the set of possible values of all peers of a cell, i.e. of all cells of its 3 neighborhoods
      *
-     * @param val the value to be checked
-     * @param mineIdx the index of the triggering cell; has to be excluded from the check
-     * @param neighborHood the cell id's of a neighborhood
-     * @return true, if the value is impossible in the neighborhood
-     */
-    private boolean isValImpossibleInNeighborhood(Val val, int mineIdx, int[] neighborHood) {
-        for ( int idx : neighborHood ) {
-            if ( idx != mineIdx ) {
-                Cell cell = this.cells[idx];
-                if ( cell.isValPossible(val) ) {
-                    return false;
+     * @param valMask the value to be removed as a single bit mask
+     * @param finalizedCellId the index of the cell, whose value was finalized; it is not a peer of itself, of course
+     * @return false, if the set of possible values of a peer got empty; true otherwise
+     */
+    private boolean removeValueFromPeers(int valMask, int finalizedCellId) {
+        short keep = (short) ~valMask;
+        int[] trail = this.trail;
+        boolean noCellEmpty = true;
+        for ( int idx : Structure.PEERS[finalizedCellId] ) {
+            short mask = this.possibleVals[idx];
+            if ( (mask & valMask) != 0 ) {
+                if ( trail != null ) {
+                    trail[this.trailTop++] = idx | mask << 7;
+                }
+                short newMask = (short) (mask & keep);
+                if ( newMask == 0 ) {
+                    noCellEmpty = false;
+                } else if ( (newMask & (newMask - 1)) == 0 ) {
+                    enqueueCell(idx);
+                }
+                this.possibleVals[idx] = newMask;
+                if ( !removePlaces(idx, valMask) ) {
+                    noCellEmpty = false;
                 }
+                enqueueUnitsOf(idx);
+            }
+        }
+        return noCellEmpty;
+    }
+
+    /**
+     * check, that the cell is the only place for the value in its 3 neighborhoods. After the value has been removed from all peers, this is true, iff no peer
+     * had the value finalized.
+     *
+     * @param idx the index of the cell
+     * @param valMask the value as a single bit mask
+     * @return true, if the cell is the only place of the value in all its neighborhoods
+     */
+    private boolean isOnlyPlace(int idx, int valMask) {
+        int val = Integer.numberOfTrailingZeros(valMask);
+        int[] units = Structure.UNITS_OF[idx];
+        int[] positions = Structure.UNIT_POSITIONS[idx];
+        for ( int k = 0; k < 3; k++ ) {
+            if ( this.places[units[k] * 9 + val] != 1 << positions[k] ) {
+                return false;
             }
         }
         return true;
     }
 
     /**
-     * remove a value from the set of possible values of all cells of a neighborHood
+     * remove a cell from the places of values, which are not possible for the cell any more
+     *
+     * @param idx the index of the cell
+     * @param removedMask the values removed from the cell
+     * @return false, if one of the values has no place left in one of the cell's neighborhoods; true otherwise
+     */
+    private boolean removePlaces(int idx, int removedMask) {
+        boolean placeLeft = true;
+        int[] units = Structure.UNITS_OF[idx];
+        int[] positions = Structure.UNIT_POSITIONS[idx];
+        for ( int m = removedMask; m != 0; m &= m - 1 ) {
+            int val = Integer.numberOfTrailingZeros(m);
+            for ( int k = 0; k < 3; k++ ) {
+                int p = units[k] * 9 + val;
+                short places = (short) (this.places[p] & ~(1 << positions[k]));
+                this.places[p] = places;
+                if ( places == 0 ) {
+                    placeLeft = false;
+                }
+            }
+        }
+        return placeLeft;
+    }
+
+    /**
+     * add a cell to the places of values, which got possible for the cell (again)
      *
-     * @param finalVal the value to be removed
-     * @param finalizedCellId the index of the cell, whose value was finalized; has to be excluded from the removal, of course
-     * @param neighborHood the cell id's of a neighborhood
-     */
-    private void removeValueFromNeighborHood(Val finalVal, int finalizedCellId, int[] neighborHood) {
-        DBC.isTrue(neighborHood.length == 9);
-        for ( int idx : neighborHood ) {
-            if ( idx != finalizedCellId ) {
-                this.cells[idx].removeFromSetOfPossibleValues(finalVal);
+     * @param idx the index of the cell
+     * @param addedMask the values added to the cell
+     */
+    private void addPlaces(int idx, int addedMask) {
+        int[] units = Structure.UNITS_OF[idx];
+        int[] positions = Structure.UNIT_POSITIONS[idx];
+        for ( int m = addedMask; m != 0; m &= m - 1 ) {
+            int val = Integer.numberOfTrailingZeros(m);
+            for ( int k = 0; k < 3; k++ ) {
+                this.places[units[k] * 9 + val] |= 1 << positions[k];
             }
         }
     }
-}
\ No newline at end of file
+
+    private void enqueueAll() {
+        for ( int i = 0; i < 81; i++ ) {
+            enqueueCell(i);
+        }
+        for ( int u = 0; u < 27; u++ ) {
+            enqueueUnit(u);
+        }
+    }
+
+    private void enqueueCell(int idx) {
+        if ( !this.cellQueued[idx] ) {
+            this.cellQueued[idx] = true;
+            this.cellQueue[(this.cellQueueHead + this.cellQueueSize++) % 81] = idx;
+        }
+    }
+
+    private void enqueueUnit(int unit) {
+        if ( !this.unitQueued[unit] ) {
+            this.unitQueued[unit] = true;
+            this.unitQueue[(this.unitQueueHead + this.unitQueueSize++) % 27] = unit;
+        }
+    }
+
+    private void enqueueUnitsOf(int idx) {
+        for ( int unit : Structure.UNITS_OF[idx] ) {
+            enqueueUnit(unit);
+        }
+    }
+}
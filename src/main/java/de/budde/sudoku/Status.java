@@ -0,0 +1,9 @@
+package de.budde.sudoku;
+
+/**
+ * the result of a propagation step or of a rule. A contradiction is signalled by this status and NOT by an exception, because contradictions are the normal
+ * case when the backtracking rule tries values. Exceptions are reserved for logical errors.
+ */
+public enum Status {
+    CONSISTENT, CONTRADICTION, SOLVED;
+}
@@ -1,8 +1,6 @@
 package de.budde.sudoku;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.stream.Stream;
 
 public class Structure {
@@ -45,33 +43,68 @@ public class Structure {
 	public static final int[][] ALL_NEIGHBARHOODS = oa(H1, H2, H3, H4, H5, H6, H7, H8, H9, V1, V2, V3, V4, V5, V6, V7,
 			V8, V9, B1, B2, B3, B4, B5, B6, B7, B8, B9);
 	// @formatter:on
-    private static final Map<Integer, NeighborHoodStream> NEIGHBARHOOD_MAPPING;
+    /**
+     * the members of the 27 neighbarhoods: UNIT_MEMBERS[u] are the 9 cell indexes of neighbarhood u. The unit ids are 0..8 for the horizontal, 9..17 for the
+     * vertical and 18..26 for the block neighbarhoods
+     */
+    public static final int[][] UNIT_MEMBERS = ALL_NEIGHBARHOODS;
+    /**
+     * the ids of the 3 neighbarhoods of a cell: UNITS_OF[idx] = {horizontal, vertical, block}
+     */
+    public static final int[][] UNITS_OF = new int[81][3];
+    /**
+     * the positions of a cell in its 3 neighbarhoods: UNIT_MEMBERS[UNITS_OF[idx][k]][UNIT_POSITIONS[idx][k]] == idx
+     */
+    public static final int[][] UNIT_POSITIONS = new int[81][3];
+    /**
+     * the 20 peers of a cell: all cells, which share at least one neighbarhood with the cell (the cell itself is excluded)
+     */
+    public static final int[][] PEERS = new int[81][20];
+    private static final NeighborHoodStream[] NEIGHBARHOOD_MAPPING = new NeighborHoodStream[81];
 
     /**
-     * create the mapping from a cell index to its 3 neighbarhoods (represented as int[9])
+     * create the flat tables and the mapping from a cell index to its 3 neighbarhoods (represented as int[9])
      */
     static {
-        NEIGHBARHOOD_MAPPING = new HashMap<>(81);
         for ( int i = 0; i < 81; i++ ) {
             int[] xy = Cell.idx2xy(i);
             int x = xy[0];
             int y = xy[1];
             int[] blockXy = xy2block(x, y);
             int g = (blockXy[0] - 1) / 3 + blockXy[1] - 1;
-            NeighborHoodStream neighbarHoodStream = new NeighborHoodStream(ALL_H[y - 1], ALL_V[x - 1], ALL_B[g]);
-            NEIGHBARHOOD_MAPPING.put(i, neighbarHoodStream);
+            UNITS_OF[i][0] = y - 1;
+            UNITS_OF[i][1] = 9 + x - 1;
+            UNITS_OF[i][2] = 18 + g;
+            NEIGHBARHOOD_MAPPING[i] = new NeighborHoodStream(ALL_H[y - 1], ALL_V[x - 1], ALL_B[g]);
+            int peers = 0;
+            for ( int j = 0; j < 81; j++ ) {
+                if ( j != i && (j / 9 == i / 9 || j % 9 == i % 9 || (j / 27 == i / 27 && j % 9 / 3 == i % 9 / 3)) ) {
+                    PEERS[i][peers++] = j;
+                }
+            }
+        }
+        for ( int i = 0; i < 81; i++ ) {
+            for ( int k = 0; k < 3; k++ ) {
+                int[] members = UNIT_MEMBERS[UNITS_OF[i][k]];
+                for ( int p = 0; p < 9; p++ ) {
+                    if ( members[p] == i ) {
+                        UNIT_POSITIONS[i][k] = p;
+                    }
+                }
+            }
         }
     }
 
     /**
      * return the neighbarhoods of a cell. A neighbarhoods object can generate a stream of the 3 neighbarhoods each cell has. A neighbarhood is represented as
-     * an int array (each int is the index of a cell)
+     * an int array (each int is the index of a cell)<br>
+     * <b>Note:</b> this is kept for compatibility. The solver uses the allocation-free tables {@link #PEERS}, {@link #UNITS_OF} and {@link #UNIT_MEMBERS}.
      *
      * @param idx of a cell
      * @return the neighbarhoods of a cell
      */
     public static NeighborHoodStream getNeighborHood(int idx) {
-        return NEIGHBARHOOD_MAPPING.get(idx);
+        return NEIGHBARHOOD_MAPPING[idx];
     }
 
     /**
@@ -1,19 +1,45 @@
 package de.budde.sudoku;
 
+import java.util.EnumSet;
+
 import de.fraunhofer.iais.dbc.DBCException;
 
 /**
- * the possible values for a cell. They are defined as a enum and not as char or short or int, because this allows to build easily efficient sets of values
+ * the possible values for a cell. They are defined as a enum and not as char or short or int, because this allows to build easily efficient sets of values.
+ * <br>
+ * Internally the solver stores the set of possible values of a cell as a 9-bit mask (bit 0 for value 1, ..., bit 8 for value 9). This enum offers the
+ * conversions between both representations.
  */
 public enum Val {
     one( 1 ), two( 2 ), three( 3 ), four( 4 ), five( 5 ), six( 6 ), seven( 7 ), eight( 8 ), nine( 9 );
 
+    /**
+     * the mask with all 9 values possible
+     */
+    public static final short ALL = 0x1FF;
+
+    private static final Val[] VALUES = values();
+
     private int n;
 
     private Val(int n) {
         this.n = (short) n;
     }
 
+    /**
+     * @return the int 1 ... 9 of this value
+     */
+    public int getN() {
+        return this.n;
+    }
+
+    /**
+     * @return the single bit mask representing this value
+     */
+    public short mask() {
+        return (short) (1 << (this.n - 1));
+    }
+
     /**
      * return the enum Val matching the char '1' ... '9'
      *
@@ -31,16 +57,52 @@ public enum Val {
      * @return
      */
     public static Val of(int n) {
-        for ( Val val : Val.values() ) {
-            if ( val.n == n ) {
-                return val;
-            }
+        if ( n < 1 || n > 9 ) {
+            throw new DBCException("invalid Val: " + n);
+        }
+        return VALUES[n - 1];
+    }
+
+    /**
+     * return the enum Val matching the lowest bit set in a mask
+     *
+     * @param mask a non empty mask of values
+     * @return the smallest value contained in the mask
+     */
+    public static Val ofMask(int mask) {
+        return of(Integer.numberOfTrailingZeros(mask) + 1);
+    }
+
+    /**
+     * convert a mask to a (new) set of values
+     *
+     * @param mask the mask to convert
+     * @return the set of values, whose bits are set in the mask
+     */
+    public static EnumSet<Val> toSet(int mask) {
+        EnumSet<Val> set = EnumSet.noneOf(Val.class);
+        for ( int m = mask & ALL; m != 0; m &= m - 1 ) {
+            set.add(ofMask(m));
+        }
+        return set;
+    }
+
+    /**
+     * convert a set of values to a mask
+     *
+     * @param vals the set to convert
+     * @return the mask with the bits of all values of the set
+     */
+    public static short toMask(EnumSet<Val> vals) {
+        int mask = 0;
+        for ( Val val : vals ) {
+            mask |= val.mask();
         }
-        throw new DBCException("invalid Val: " + n);
+        return (short) mask;
     }
 
     @Override
     public String toString() {
         return "" + this.n;
     }
-}
\ No newline at end of file
+}
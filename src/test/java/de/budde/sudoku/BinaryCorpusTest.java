@@ -0,0 +1,101 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fraunhofer.iais.dbc.DBCException;
+
+public class BinaryCorpusTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConvert() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 500, 24);
+        byte[] records = corpus.getRecords();
+        System.arraycopy(("11" + seeds.get(0).substring(2)).getBytes(), 0, records, 7 * 81, 81); // no solution
+        Path text = this.folder.newFile("in.txt").toPath();
+        Path solutionText = this.folder.newFile("solutions.txt").toPath();
+        corpus.write(text);
+        Assert.assertEquals(corpus.size(), RunBatch.run(text, solutionText).getPuzzles());
+
+        Path binary = this.folder.newFile("in.bin").toPath();
+        BinaryCorpus.fromText(text, solutionText, binary);
+        Assert.assertEquals(16 + 500 * (41 + 19), Files.size(binary));
+        BinaryCorpus mapped = BinaryCorpus.open(binary);
+        Assert.assertEquals(corpus.size(), mapped.size());
+        Assert.assertTrue(mapped.hasSolutions());
+        Corpus solutions = Corpus.read(solutionText);
+        byte[] record = new byte[81];
+        for ( int i = corpus.size() - 1; i >= 0; i-- ) {
+            Assert.assertEquals(corpus.get(i), mapped.get(i));
+            mapped.readSolution(i, record, 0);
+            Assert.assertArrayEquals(Arrays.copyOfRange(solutions.getRecords(), i * 81, i * 81 + 81), record);
+        }
+        Assert.assertEquals(dots(), solutionOf(mapped, 7));
+
+        Path back = this.folder.newFile("back.txt").toPath();
+        mapped.toText(back, true);
+        Assert.assertArrayEquals(Files.readAllBytes(solutionText), Files.readAllBytes(back));
+        mapped.toText(back, false);
+        Assert.assertArrayEquals(Files.readAllBytes(text), Files.readAllBytes(back));
+        Assert.assertArrayEquals(corpus.getRecords(), Corpus.read(binary).getRecords());
+
+        try {
+            BinaryCorpus.open(text);
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: not a binary corpus
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 2500, 25);
+        Path text = this.folder.newFile("in.txt").toPath();
+        Path binary = this.folder.newFile("in.bin").toPath();
+        corpus.write(text);
+        BinaryCorpus.fromText(text, null, binary);
+        Assert.assertFalse(BinaryCorpus.open(binary).hasSolutions());
+
+        Path expected = this.folder.newFile("expected.txt").toPath();
+        RunBatch.run(text, expected, 1);
+        Corpus solutions = Corpus.read(expected);
+        for ( int threads : new int[] {
+            1,
+            3
+        } ) {
+            Path out = this.folder.newFile("out" + threads + ".bin").toPath();
+            RunBatch.Result result = RunBatch.run(binary, out, threads);
+            Assert.assertEquals(corpus.size(), result.getPuzzles());
+            Assert.assertEquals(corpus.size(), result.getSolved());
+            BinaryCorpus solved = BinaryCorpus.open(out);
+            for ( int i = 0; i < corpus.size(); i++ ) {
+                Assert.assertEquals(corpus.get(i), solved.get(i));
+                Assert.assertEquals(solutions.get(i), solutionOf(solved, i));
+            }
+        }
+    }
+
+    private static String solutionOf(BinaryCorpus corpus, int i) {
+        byte[] record = new byte[81];
+        corpus.readSolution(i, record, 0);
+        return new String(record);
+    }
+
+    private static String dots() {
+        char[] dots = new char[81];
+        Arrays.fill(dots, '.');
+        return new String(dots);
+    }
+}
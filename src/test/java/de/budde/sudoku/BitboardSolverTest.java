@@ -0,0 +1,65 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * differential tests: the bitboard engine must agree with the rules of {@link RuleMachine}
+ */
+public class BitboardSolverTest {
+    @Test
+    public void testPropagate() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        check(Corpus.generate(seeds, 200, 11));
+        check(Generator.generate(50, 0, Generator.Symmetry.NONE, 5, 2));
+    }
+
+    @Test
+    public void testSolve() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Solver rules = new BatchSolver();
+        Solver bitboard = new BitboardSolver();
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            Assert.assertEquals(rules.countSolutions(seeds.getRecords(), i * 81, 100), bitboard.countSolutions(seeds.getRecords(), i * 81, 100));
+        }
+        Corpus corpus = Generator.generate(50, 0, Generator.Symmetry.ROTATIONAL, 8, 2);
+        byte[] expected = new byte[81];
+        byte[] actual = new byte[81];
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(Status.SOLVED, rules.solve(corpus.getRecords(), i * 81));
+            Assert.assertEquals(Status.SOLVED, bitboard.solve(corpus.getRecords(), i * 81));
+            rules.writeSolution(expected, 0);
+            bitboard.writeSolution(actual, 0);
+            Assert.assertArrayEquals(expected, actual);
+            Assert.assertTrue(bitboard.getState().isValid());
+        }
+        String h = seeds.get(seeds.size() - 2); // _challenges/h
+        Assert.assertEquals(RunSudoku.run(h, Solver.Engine.RULES).toString(), RunSudoku.run(h, Solver.Engine.BITBOARD).toString());
+        Assert.assertEquals(Status.CONTRADICTION, bitboard.solve(("11" + h.substring(2)).getBytes(), 0));
+    }
+
+    /**
+     * naked and hidden singles have a unique fixed point: after propagation both engines must have the same candidates
+     */
+    private static void check(Corpus corpus) {
+        BitboardSolver bitboard = new BitboardSolver();
+        State state = new State();
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Status expected = state.load(corpus.getRecords(), i * 81);
+            if ( expected != Status.CONTRADICTION ) {
+                expected = RuleMachine.propagate(0, state);
+            }
+            Status actual = bitboard.load(corpus.getRecords(), i * 81);
+            if ( actual != Status.CONTRADICTION ) {
+                actual = bitboard.propagate(0);
+            }
+            Assert.assertEquals(expected, actual);
+            for ( int idx = 0; idx < 81; idx++ ) {
+                Assert.assertEquals(state.getMask(idx), bitboard.getMask(idx));
+            }
+        }
+    }
+}
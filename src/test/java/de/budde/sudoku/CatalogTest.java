@@ -0,0 +1,154 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fraunhofer.iais.dbc.DBCException;
+
+public class CatalogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testInsertAndLookup() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 2000, 25);
+        Corpus solutions = solve(corpus);
+        Path file = this.folder.newFile("catalog.bin").toPath();
+        Catalog catalog = Catalog.create(file, corpus.size());
+        Set<String> distinct = new HashSet<>();
+        for ( int i = 0; i < corpus.size(); i += 2 ) {
+            Assert.assertTrue(catalog.insert(corpus.getRecords(), i * 81, solutions.getRecords(), i * 81));
+            distinct.add(corpus.get(i));
+        }
+        Assert.assertEquals(distinct.size(), catalog.size());
+        check(catalog, corpus, solutions, distinct);
+        catalog.force();
+
+        Catalog reopened = Catalog.open(file);
+        Assert.assertEquals(distinct.size(), reopened.size());
+        check(reopened, corpus, solutions, distinct);
+        Assert.assertEquals(64 + 4096 * 64, Files.size(file)); // 2000 sudokus need 4096 slots
+
+        String h = seeds.get(seeds.size() - 2); // _challenges/h
+        String contradiction = "11" + h.substring(2);
+        Assert.assertTrue(reopened.insert(contradiction, dots()));
+        Assert.assertEquals(dots(), Catalog.open(file).lookup(contradiction));
+        try {
+            reopened.insert(h, contradiction);
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: the solution is no permutation
+        }
+        Assert.assertNull(reopened.lookup(h));
+        try {
+            Path text = this.folder.newFile("in.txt").toPath();
+            corpus.write(text);
+            Catalog.open(text);
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: not a catalog
+        }
+    }
+
+    @Test
+    public void testFullCatalog() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 100, 26);
+        Corpus solutions = solve(corpus);
+        Catalog catalog = Catalog.allocate(10);
+        Assert.assertEquals(12, catalog.getMaxSize()); // 16 slots, filled up to 75%
+        Set<String> distinct = new HashSet<>();
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            boolean stored = catalog.insert(corpus.getRecords(), i * 81, solutions.getRecords(), i * 81);
+            Assert.assertEquals(distinct.contains(corpus.get(i)) || distinct.size() < 12, stored);
+            if ( stored ) {
+                distinct.add(corpus.get(i));
+            }
+        }
+        Assert.assertEquals(12, catalog.size());
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(distinct.contains(corpus.get(i)), catalog.contains(corpus.getRecords(), i * 81));
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 1000, 27);
+        Path text = this.folder.newFile("in.txt").toPath();
+        corpus.write(text);
+        Path expected = this.folder.newFile("expected.txt").toPath();
+        RunBatch.run(text, expected, 1);
+
+        Path file = this.folder.newFile("catalog.bin").toPath();
+        Catalog catalog = Catalog.create(file, 2 * corpus.size());
+        Path out = this.folder.newFile("out.txt").toPath();
+        RunBatch.Result result = RunBatch.run(text, out, 3, catalog);
+        Assert.assertEquals(corpus.size(), result.getPuzzles());
+        Assert.assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(out));
+        catalog.force();
+
+        // the second run finds every sudoku in the catalog
+        Catalog reopened = Catalog.open(file);
+        long size = reopened.size();
+        Path binary = this.folder.newFile("in.bin").toPath();
+        BinaryCorpus.fromText(text, null, binary);
+        Path binaryOut = this.folder.newFile("out.bin").toPath();
+        RunBatch.run(binary, binaryOut, 2, reopened);
+        Assert.assertEquals(size, reopened.size());
+        BinaryCorpus.open(binaryOut).toText(out, true);
+        Assert.assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(out));
+
+        CatalogSolver solver = new CatalogSolver(reopened, new BatchSolver());
+        int h = seeds.size() - 2; // _challenges/h
+        Assert.assertEquals(Status.SOLVED, solver.solve(seeds.getRecords(), h * 81));
+        Assert.assertTrue(reopened.contains(seeds.getRecords(), h * 81));
+        Assert.assertEquals(Status.SOLVED, solver.solve(seeds.getRecords(), h * 81));
+        Assert.assertTrue(solver.isHit());
+        Assert.assertTrue(solver.getState().isValid());
+        Assert.assertEquals(RunSudoku.run(seeds.get(h), Solver.Engine.RULES).toString(), solver.getState().toString());
+        Assert.assertEquals('C', solver.getState().getRuleId(seeds.get(h).indexOf('.')));
+    }
+
+    private static void check(Catalog catalog, Corpus corpus, Corpus solutions, Set<String> inserted) {
+        byte[] solution = new byte[81];
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            boolean cataloged = inserted.contains(corpus.get(i));
+            Assert.assertEquals(cataloged, catalog.contains(corpus.getRecords(), i * 81));
+            Assert.assertEquals(cataloged, catalog.lookup(corpus.getRecords(), i * 81, solution, 0));
+            if ( cataloged ) {
+                Assert.assertArrayEquals(Arrays.copyOfRange(solutions.getRecords(), i * 81, i * 81 + 81), solution);
+            }
+        }
+    }
+
+    /**
+     * @return the solutions of the sudokus of a corpus, the first solution found for a sudoku with many solutions
+     */
+    private static Corpus solve(Corpus corpus) {
+        BatchSolver batch = new BatchSolver();
+        byte[] solutions = new byte[corpus.size() * 81];
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(Status.SOLVED, batch.solve(corpus.getRecords(), i * 81));
+            batch.writeSolution(solutions, i * 81);
+        }
+        return new Corpus(solutions, corpus.size());
+    }
+
+    private static String dots() {
+        char[] dots = new char[81];
+        Arrays.fill(dots, '.');
+        return new String(dots);
+    }
+}
@@ -67,6 +67,52 @@ public class CellTest {
         Assert.assertFalse(fiveSixCell.isOnlyOneValLeft());
     }
 
+    @Test
+    public void testMask() {
+        Assert.assertEquals(0x1, Val.one.mask());
+        Assert.assertEquals(0x100, Val.nine.mask());
+        Assert.assertEquals(Val.three, Val.ofMask(0x14));
+        Assert.assertEquals(EnumSet.of(Val.three, Val.five), Val.toSet(0x14));
+        Assert.assertEquals(0x14, Val.toMask(EnumSet.of(Val.three, Val.five)));
+        Cell c = new Cell(10, EnumSet.of(Val.one, Val.three, Val.five));
+        Assert.assertEquals(3, c.getNumberOfPossibleVals());
+        c.removeFromSetOfPossibleValues(Val.three);
+        Assert.assertEquals(EnumSet.of(Val.one, Val.five), c.getPossibleVals());
+        Cell clone = c.clone();
+        c.removeFromSetOfPossibleValues(Val.one);
+        Assert.assertEquals(EnumSet.of(Val.one, Val.five), clone.getPossibleVals());
+    }
+
+    @Test
+    public void testStateCell() {
+        State state = new State(Do.string2cells("4.....8.5.3..........7......2.....6.....8.4......1.......6.3.7.5..2.....1.4......"));
+        Cell[] cells = state.getCells();
+        int finalized = state.getNumberFinalized();
+        Val removed = Val.ofMask(Integer.lowestOneBit(cells[1].getMask()));
+        cells[1].removeFromSetOfPossibleValues(removed);
+        Assert.assertFalse(cells[1].isValPossible(removed));
+        Assert.assertEquals(0, state.getPlaces(0, removed.mask()) & 1 << 1); // the places of the first row are updated
+        Val val = Val.ofMask(Integer.lowestOneBit(cells[1].getMask()));
+        cells[1].setFinalVal(val, Cell.ZERO, 'B');
+        Assert.assertEquals(finalized + 1, state.getNumberFinalized());
+        Assert.assertEquals('B', state.getRuleId(1));
+        Assert.assertFalse(cells[2].isValPossible(val)); // propagated to the peers
+        try {
+            cells[0].setFinalVal(Val.four, Cell.ZERO, 'B');
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: a given is final already
+        }
+        try {
+            cells[3].setInitVal(Val.one);
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: the initial values of a state are fixed
+        }
+        Assert.assertEquals(finalized + 1, state.getNumberFinalized());
+        Assert.assertTrue(state.isValid());
+    }
+
     @Test(expected = DBCException.class)
     public void testCellValExc() {
         Cell fiveSixCell = new Cell(0, EnumSet.of(Val.five, Val.six));
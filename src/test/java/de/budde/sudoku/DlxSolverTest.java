@@ -0,0 +1,50 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DlxSolverTest {
+    @Test
+    public void testSolve() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 64, 7);
+        Solver rules = Solver.Engine.RULES.create();
+        Solver dlx = Solver.Engine.DLX.create();
+        byte[] expected = new byte[81];
+        byte[] actual = new byte[81];
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            if ( rules.countSolutions(corpus.getRecords(), i * 81, 2) > 1 ) {
+                continue; // the engines may find different solutions
+            }
+            Assert.assertEquals(Status.SOLVED, rules.solve(corpus.getRecords(), i * 81));
+            Assert.assertEquals(Status.SOLVED, dlx.solve(corpus.getRecords(), i * 81));
+            rules.writeSolution(expected, 0);
+            dlx.writeSolution(actual, 0);
+            Assert.assertArrayEquals(expected, actual);
+            Assert.assertTrue(dlx.getState().isValid());
+            Assert.assertEquals(rules.getState().toString(), dlx.getState().toString());
+        }
+    }
+
+    @Test
+    public void testCountSolutions() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Solver rules = new BatchSolver();
+        Solver dlx = new DlxSolver();
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            Assert.assertEquals(rules.countSolutions(seeds.getRecords(), i * 81, 100), dlx.countSolutions(seeds.getRecords(), i * 81, 100));
+        }
+        byte[] empty = new byte[81];
+        Arrays.fill(empty, (byte) '.');
+        Assert.assertEquals(10, dlx.countSolutions(empty, 0, 10));
+        Assert.assertEquals(Status.SOLVED, dlx.solve(empty, 0));
+        byte[] invalid = ("11" + seeds.get(0).substring(2)).getBytes(StandardCharsets.US_ASCII);
+        Assert.assertEquals(0, dlx.countSolutions(invalid, 0, 2));
+        Assert.assertEquals(Status.CONTRADICTION, dlx.solve(invalid, 0));
+    }
+}
@@ -0,0 +1,57 @@
+package de.budde.sudoku;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GeneratorTest {
+    @Test
+    public void testGenerate() {
+        Generator generator = new Generator(4711);
+        String puzzle = generator.generate(0, Generator.Symmetry.ROTATIONAL);
+        Assert.assertEquals(1, RunSudoku.countSolutions(puzzle, 2));
+        Assert.assertEquals(generator.getSolution(), RunSudoku.run(puzzle).toString().replaceAll("[^1-9]", ""));
+        for ( int i = 0; i < 81; i++ ) {
+            Assert.assertEquals(puzzle.charAt(i) == '.', puzzle.charAt(80 - i) == '.');
+            if ( puzzle.charAt(i) != '.' ) {
+                char[] removed = puzzle.toCharArray();
+                removed[i] = '.';
+                removed[80 - i] = '.';
+                Assert.assertEquals(2, RunSudoku.countSolutions(new String(removed), 2)); // minimal for symmetric removal
+            }
+        }
+        Assert.assertEquals(puzzle, new Generator(4711).generate(0, Generator.Symmetry.ROTATIONAL));
+    }
+
+    @Test
+    public void testTargetClues() {
+        Generator generator = new Generator(1);
+        byte[] record = new byte[81];
+        Assert.assertEquals(40, generator.generate(40, Generator.Symmetry.NONE, record, 0));
+        Assert.assertEquals(1, new BatchSolver().countSolutions(record, 0, 2));
+        // symmetric removal never undershoots the target: an odd target is reached by pairs, an even one needs the center cell
+        for ( int targetClues : new int[] {
+            36,
+            37
+        } ) {
+            for ( long seed = 0; seed < 10; seed++ ) {
+                int clues = new Generator(seed).generate(targetClues, Generator.Symmetry.ROTATIONAL, record, 0);
+                Assert.assertEquals(targetClues, clues);
+                Assert.assertEquals(clues, new String(record, StandardCharsets.US_ASCII).replace(".", "").length());
+                Assert.assertEquals(1, new BatchSolver().countSolutions(record, 0, 2));
+            }
+        }
+    }
+
+    @Test
+    public void testParallel() {
+        Corpus sequential = Generator.generate(20, 0, Generator.Symmetry.NONE, 42, 1);
+        Corpus parallel = Generator.generate(20, 0, Generator.Symmetry.NONE, 42, 4);
+        Assert.assertArrayEquals(sequential.getRecords(), parallel.getRecords());
+        BatchSolver solver = new BatchSolver();
+        for ( int i = 0; i < parallel.size(); i++ ) {
+            Assert.assertEquals(1, solver.countSolutions(parallel.getRecords(), i * 81, 2));
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fraunhofer.iais.dbc.DBCException;
+
+public class GridSolverTest {
+    @Test
+    public void testStandardTables() {
+        Geometry standard = Geometry.STANDARD;
+        Assert.assertEquals(27, standard.getUnits());
+        for ( int unit = 0; unit < 27; unit++ ) {
+            Assert.assertArrayEquals(Structure.UNIT_MEMBERS[unit], standard.getUnitMembers(unit));
+        }
+        for ( int idx = 0; idx < 81; idx++ ) {
+            Assert.assertArrayEquals(Structure.UNITS_OF[idx], standard.getUnitsOf(idx));
+            Assert.assertArrayEquals(Structure.UNIT_POSITIONS[idx], standard.getUnitPositions(idx));
+            Assert.assertArrayEquals(Structure.PEERS[idx], standard.getPeers(idx));
+        }
+        Assert.assertEquals(3 * 16 - 4 - 4 - 1, Geometry.ofSize(16).getPeers(0).length);
+        Assert.assertEquals(3 * 6 - 2 - 3 - 1, new Geometry(2, 3).getPeers(35).length);
+    }
+
+    @Test
+    public void testStandardSudokus() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 200, 21);
+        GridSolver grid = new GridSolver(Geometry.STANDARD);
+        BatchSolver batch = new BatchSolver();
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            int solutions = batch.countSolutions(corpus.getRecords(), i * 81, 2);
+            Assert.assertEquals(solutions, grid.countSolutions(corpus.get(i), 2));
+            Status status = grid.solve(corpus.get(i));
+            Assert.assertEquals(batch.solve(corpus.getRecords(), i * 81), status);
+            if ( status == Status.SOLVED ) {
+                Assert.assertTrue(grid.getState().isValid());
+                checkGivens(corpus.get(i), grid.getState().toCompactString());
+                if ( solutions == 1 ) {
+                    Assert.assertEquals(batch.getState().toString(), grid.getState().toString());
+                }
+            }
+        }
+        String h = seeds.get(seeds.size() - 2); // _challenges/h
+        Assert.assertEquals(Status.CONTRADICTION, grid.solve("11" + h.substring(2)));
+    }
+
+    @Test
+    public void testLargeSudokus() {
+        check(new Geometry(2, 2), 10, 1);
+        check(new Geometry(2, 3), 20, 2);
+        check(Geometry.ofSize(16), 130, 3);
+        check(Geometry.ofSize(25), 300, 4);
+        // the maximal size: the masks use 31 bits
+        check(new Geometry(1, 31), 400, 5);
+        solveVariant(new Geometry(1, 31), 400, 6);
+    }
+
+    @Test
+    public void testVariants() {
+        Geometry diagonal = Geometry.STANDARD.withDiagonals();
+        Assert.assertEquals(29, diagonal.getUnits());
+        Assert.assertEquals(5, diagonal.getUnitsOf(40).length);
+        Assert.assertEquals(20 + 2 * 6, diagonal.getPeers(40).length); // 2 of the 8 other cells of a diagonal are in the block
+        Assert.assertEquals(20, diagonal.getPeers(1).length);
+        GridState state = solveVariant(diagonal, 40, 5);
+        for ( int i = 0; i < 9; i++ ) {
+            for ( int j = 0; j < i; j++ ) {
+                Assert.assertNotEquals(state.getMask(i * 9 + i), state.getMask(j * 9 + j));
+                Assert.assertNotEquals(state.getMask(i * 9 + 8 - i), state.getMask(j * 9 + 8 - j));
+            }
+        }
+        Geometry windoku = Geometry.STANDARD.withWindoku();
+        Assert.assertEquals(31, windoku.getUnits());
+        state = solveVariant(windoku, 45, 6);
+        for ( int top : new int[] {
+            1,
+            5
+        } ) {
+            for ( int left : new int[] {
+                1,
+                5
+            } ) {
+                int seen = 0;
+                for ( int i = 0; i < 9; i++ ) {
+                    seen |= state.getMask((top + i / 3) * 9 + left + i % 3);
+                }
+                Assert.assertEquals(Val.ALL, seen);
+            }
+        }
+        Assert.assertEquals(9, Geometry.ofSize(16).withWindoku().getUnits() - 48);
+        String regionMap = "" //
+            + "111223333"
+            + "111222233"
+            + "111222333"
+            + "444556666"
+            + "444555566"
+            + "474555666"
+            + "774888999"
+            + "777888999"
+            + "777888999";
+        Geometry jigsaw = Geometry.jigsaw(regionMap);
+        Assert.assertEquals(0, jigsaw.getBoxRows());
+        state = solveVariant(jigsaw.withDiagonals(), 45, 7);
+        for ( char region = '1'; region <= '9'; region++ ) {
+            int seen = 0;
+            for ( int idx = 0; idx < 81; idx++ ) {
+                seen |= regionMap.charAt(idx) == region ? state.getMask(idx) : 0;
+            }
+            Assert.assertEquals(Val.ALL, seen);
+        }
+        Assert.assertTrue(state.toString().startsWith("+ - - - - - - - - - +\n"));
+        try {
+            Geometry.jigsaw("9" + regionMap.substring(1));
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: a region with 10 cells
+        }
+    }
+
+    /**
+     * fill an empty grid of a variant, remove values and solve the sudoku again
+     */
+    private static GridState solveVariant(Geometry geometry, int removals, long randomSeed) {
+        GridSolver solver = new GridSolver(geometry);
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < geometry.getCells(); i++ ) {
+            sb.append('.');
+        }
+        Assert.assertEquals(Status.SOLVED, solver.solve(sb.toString()));
+        String solution = solver.getState().toCompactString();
+        Random random = new Random(randomSeed);
+        sb = new StringBuilder(solution);
+        for ( int i = 0; i < removals; i++ ) {
+            sb.setCharAt(random.nextInt(geometry.getCells()), '.');
+        }
+        Assert.assertEquals(Status.SOLVED, solver.solve(sb.toString()));
+        Assert.assertTrue(solver.getState().isValid());
+        checkGivens(sb.toString(), solver.getState().toCompactString());
+        return solver.getState();
+    }
+
+    /**
+     * create a sudoku from a pattern solution by shuffling and removing values, solve it and check the result
+     */
+    private static void check(Geometry geometry, int removals, long randomSeed) {
+        int n = geometry.getSize();
+        int[] perm = shuffle(n, new Random(randomSeed));
+        Random random = new Random(randomSeed);
+        StringBuilder sb = new StringBuilder();
+        for ( int r = 0; r < n; r++ ) {
+            for ( int c = 0; c < n; c++ ) {
+                int val = (geometry.getBoxCols() * (r % geometry.getBoxRows()) + r / geometry.getBoxRows() + c) % n;
+                sb.append(geometry.symbolOf(perm[val]));
+            }
+        }
+        String solution = sb.toString();
+        for ( int i = 0; i < removals; i++ ) {
+            sb.setCharAt(random.nextInt(geometry.getCells()), '.');
+        }
+        String sudoku = sb.toString();
+        GridSolver solver = new GridSolver(geometry);
+        Assert.assertEquals(Status.SOLVED, solver.solve(sudoku));
+        GridState state = solver.getState();
+        Assert.assertTrue(state.isValid());
+        Assert.assertEquals(geometry.getCells(), state.getNumberFinalized());
+        checkGivens(sudoku, state.toCompactString());
+        Assert.assertTrue(solver.countSolutions(solution, 2) == 1);
+        Assert.assertEquals(solution, solver.getState().toCompactString());
+        Assert.assertEquals(Status.CONTRADICTION, solver.solve(solution.charAt(1) + solution.substring(1)));
+    }
+
+    private static void checkGivens(String sudoku, String solution) {
+        for ( int i = 0; i < sudoku.length(); i++ ) {
+            if ( sudoku.charAt(i) != '.' && sudoku.charAt(i) != '0' ) {
+                Assert.assertEquals(sudoku.charAt(i), solution.charAt(i));
+            }
+        }
+    }
+
+    private static int[] shuffle(int n, Random random) {
+        int[] perm = new int[n];
+        for ( int i = 0; i < n; i++ ) {
+            perm[i] = i;
+        }
+        for ( int i = n - 1; i > 0; i-- ) {
+            int j = random.nextInt(i + 1);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+        return perm;
+    }
+}
@@ -0,0 +1,84 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LoadDriverTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCorpus() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Assert.assertEquals(16, seeds.size());
+        Corpus corpus = Corpus.generate(seeds, 100, 42);
+        Assert.assertEquals(Corpus.generate(seeds, 100, 42).get(99), corpus.get(99));
+        BatchSolver solver = new BatchSolver();
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(count(seeds.get(i % seeds.size())), count(corpus.get(i)));
+            Assert.assertEquals(Status.SOLVED, solver.solve(corpus.getRecords(), i * 81));
+        }
+        Path file = this.folder.newFile("corpus.txt").toPath();
+        corpus.write(file);
+        Corpus read = Corpus.read(file);
+        Assert.assertEquals(corpus.size(), read.size());
+        Assert.assertEquals(corpus.get(17), read.get(17));
+    }
+
+    @Test
+    public void testReport() throws IOException {
+        Corpus corpus = Corpus.generate(Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges")), 200, 1);
+        LoadDriver.Report report = LoadDriver.run(corpus, 2, 0);
+        LoadDriver.Stats all = report.getAll();
+        Assert.assertEquals(200, all.getPuzzles());
+        Assert.assertEquals(200, all.getSolved());
+        int sum = 0;
+        for ( LoadDriver.Difficulty difficulty : LoadDriver.Difficulty.values() ) {
+            sum += report.get(difficulty).getPuzzles();
+        }
+        Assert.assertEquals(200, sum);
+        Assert.assertTrue(all.getLatency(50) <= all.getLatency(90) && all.getLatency(99) <= all.getLatency(100));
+        long histogramSum = 0;
+        for ( long count : all.getNodeHistogram() ) {
+            histogramSum += count;
+        }
+        Assert.assertEquals(200, histogramSum);
+        Assert.assertEquals(1 + report.getBuckets().size(), report.format(LoadDriver.Format.CSV).split("\n").length);
+        Assert.assertTrue(report.format(LoadDriver.Format.JSON).contains("\"bucket\": \"extreme\""));
+
+        // an invalid record follows the hardest sudoku: it is reported as not solved, but not with the figures of the hardest sudoku
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        byte[] records = new byte[3 * 81];
+        System.arraycopy(seeds.getRecords(), (seeds.size() - 2) * 81, records, 0, 81); // _challenges/h
+        System.arraycopy(seeds.getRecords(), (seeds.size() - 2) * 81, records, 81, 81);
+        records[81] = 'x';
+        System.arraycopy(seeds.getRecords(), 0, records, 2 * 81, 81);
+        report = LoadDriver.run(new Corpus(records, 3), 1, 0);
+        Assert.assertEquals(3, report.getAll().getPuzzles());
+        Assert.assertEquals(2, report.getAll().getSolved());
+        sum = 0;
+        for ( LoadDriver.Difficulty difficulty : LoadDriver.Difficulty.values() ) {
+            sum += report.get(difficulty).getPuzzles();
+        }
+        Assert.assertEquals(2, sum);
+    }
+
+    @Test
+    public void testHistogram() {
+        Assert.assertEquals(0, LoadDriver.histogramBucket(0));
+        Assert.assertEquals(1, LoadDriver.histogramBucket(1));
+        Assert.assertEquals(3, LoadDriver.histogramBucket(7));
+        Assert.assertEquals("4-7", LoadDriver.histogramLabel(3));
+        Assert.assertEquals(21, LoadDriver.histogramBucket(Long.MAX_VALUE));
+    }
+
+    private static int count(String sudoku) {
+        return sudoku.replace(".", "").length();
+    }
+}
@@ -0,0 +1,53 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RaterTest {
+    @Test
+    public void testRate() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Rater rater = new Rater();
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            Rating rating = rater.rate(seeds.get(i));
+            Assert.assertEquals(81, rating.getGivens() + rating.getNakedSingles() + rating.getHiddenSingles() + rating.getGuesses());
+            Assert.assertEquals(rating.getGuesses() > 0, rating.getNodes() > 0);
+            Assert.assertTrue(rating.getGrade() != Rating.Grade.INVALID);
+            // the rating of a transformed sudoku has the same grade
+            Rating transformed = rater.rate(Corpus.generate(seeds, i + 1, i).getRecords(), i * 81);
+            Assert.assertEquals(rating.getGivens(), transformed.getGivens());
+            Assert.assertEquals(rating.getGrade().compareTo(Rating.Grade.HARD) < 0, transformed.getGrade().compareTo(Rating.Grade.HARD) < 0);
+            if ( rating.getNodes() == 0 ) {
+                // without search the rules reach the same fixpoint, the order of the cells does not matter
+                Assert.assertEquals(rating.getGuesses(), transformed.getGuesses());
+                Assert.assertEquals(rating.getGrade(), transformed.getGrade());
+            }
+        }
+        Rating hard = rater.rate(seeds.get(seeds.size() - 2)); // _challenges/h
+        Assert.assertTrue(hard.getGrade().compareTo(Rating.Grade.HARD) >= 0);
+        Assert.assertTrue(hard.getScore() > rater.rate(seeds.get(0)).getScore());
+        Assert.assertEquals(Rating.Grade.INVALID, rater.rate("11" + seeds.get(0).substring(2)).getGrade());
+    }
+
+    @Test
+    public void testIndependentOfScheduler() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        String h = seeds.get(seeds.size() - 2); // _challenges/h
+        Rater rater = new Rater();
+        Rating expected = rater.rate(h);
+        Assert.assertTrue(expected.getNodes() > 0);
+        Scheduler previous = RuleMachine.setScheduler(Scheduler.parse("NAKED_SINGLES"));
+        try {
+            Rating rating = rater.rate(h);
+            Assert.assertEquals(expected.getGuesses(), rating.getGuesses());
+            Assert.assertEquals(expected.getNodes(), rating.getNodes());
+            Assert.assertEquals(expected.getGrade(), rating.getGrade());
+            Assert.assertEquals(expected.getScore(), rating.getScore());
+        } finally {
+            RuleMachine.setScheduler(previous);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RunBatchTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testBatch() throws IOException {
+        List<String> puzzles = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for ( int i = 1; i <= 12; i++ ) {
+            String solution = solution(i);
+            if ( solution != null ) {
+                puzzles.add(example(i));
+                expected.add(solution);
+            }
+        }
+        puzzles.add("11" + example(1).substring(2)); // contradictory initial values
+        expected.add(dots());
+        puzzles.add("..."); // too short
+        expected.add(dots());
+        puzzles.add(example(1).replace('.', '0'));
+        expected.add(expected.get(0));
+
+        Path in = this.folder.newFile("in.txt").toPath();
+        Path out = this.folder.newFile("out.txt").toPath();
+        Files.write(in, puzzles, StandardCharsets.US_ASCII);
+        RunBatch.Result result = RunBatch.run(in, out);
+        Assert.assertEquals(puzzles.size(), result.getPuzzles());
+        Assert.assertEquals(2, result.getFailed());
+        Assert.assertEquals(expected, Files.readAllLines(out));
+    }
+
+    @Test
+    public void testParallelBatch() throws IOException {
+        List<String> puzzles = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for ( int k = 0; k < 300; k++ ) {
+            for ( int i = 1; i <= 12; i++ ) {
+                String solution = solution(i);
+                if ( solution != null ) {
+                    puzzles.add(example(i));
+                    expected.add(solution);
+                }
+            }
+        }
+        Path in = this.folder.newFile("in.txt").toPath();
+        Path out = this.folder.newFile("out.txt").toPath();
+        Files.write(in, puzzles, StandardCharsets.US_ASCII);
+        RunBatch.Result result = RunBatch.run(in, out, 4);
+        Assert.assertEquals(puzzles.size(), result.getSolved());
+        Assert.assertEquals(expected, Files.readAllLines(out));
+    }
+
+    @Test
+    public void testQuietIsThreadConfined() throws Exception {
+        Assert.assertTrue(Do.isRuleLogging());
+        boolean[] otherThread = new boolean[1];
+        Do.quietly(() -> {
+            Assert.assertFalse(Do.isRuleLogging());
+            Do.quietly(() -> null);
+            Assert.assertFalse(Do.isRuleLogging()); // nested calls restore the setting of the outer call
+            Thread thread = new Thread(() -> otherThread[0] = Do.isRuleLogging());
+            thread.start();
+            try {
+                thread.join();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        Assert.assertTrue(otherThread[0]);
+        Assert.assertTrue(Do.isRuleLogging());
+        Path in = this.folder.newFile("in.txt").toPath();
+        Files.write(in, Collections.nCopies(100, example(1)), StandardCharsets.US_ASCII);
+        RunBatch.run(in, this.folder.newFile("out.txt").toPath(), 2);
+        Assert.assertTrue(Do.isRuleLogging());
+    }
+
+    private static String dots() {
+        return new String(new char[81]).replace('\0', '.');
+    }
+
+    private static String example(int number) throws IOException {
+        return Files.readAllLines(Paths.get("_examples/sudoku-" + String.format("%02d", number))).stream().collect(Collectors.joining());
+    }
+
+    private static String solution(int number) throws IOException {
+        Path path = Paths.get("_solutions/sudoku-" + String.format("%02d", number));
+        if ( !Files.exists(path) ) {
+            return null;
+        }
+        return Files.readAllLines(path).stream().collect(Collectors.joining()).replaceAll("[^1-9]", "");
+    }
+}
@@ -0,0 +1,101 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.fraunhofer.iais.dbc.DBCException;
+
+public class SchedulerTest {
+    @Test
+    public void testRun() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Scheduler scheduler = Scheduler.parse(" NAKED_SINGLES, HIDDEN_SINGLES,de.budde.sudoku.SchedulerTest$NoProgress ");
+        Assert.assertEquals(3, scheduler.getRules().size());
+        Assert.assertEquals('E', scheduler.getRules().get(1).getId());
+        State state = new State();
+        long progress = 0;
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            state.load(seeds.getRecords(), i * 81);
+            long before = state.getStepsAsLong() + state.getEliminations();
+            Status status = scheduler.run(0, state);
+            Assert.assertEquals(status == Status.SOLVED, state.getNumberFinalized() == 81);
+            progress += state.getStepsAsLong() + state.getEliminations() - before;
+        }
+        long sum = 0;
+        for ( Scheduler.Statistics statistics : scheduler.getStatistics() ) {
+            Assert.assertTrue(statistics.getProductiveCalls() <= statistics.getCalls());
+            sum += statistics.getProgress();
+        }
+        Assert.assertEquals(progress, sum);
+        // the expensive rule is called only, if the cheaper rules are stuck
+        Scheduler.Statistics noProgress = scheduler.getStatistics().get(2);
+        Assert.assertTrue(noProgress.getCalls() > 0);
+        Assert.assertTrue(noProgress.getCalls() < scheduler.getStatistics().get(1).getCalls());
+        Assert.assertEquals(0, noProgress.getProductiveCalls());
+        scheduler.resetStatistics();
+        Assert.assertEquals(0, scheduler.getStatistics().get(0).getCalls());
+    }
+
+    @Test
+    public void testRuleIds() {
+        Set<Character> ids = new HashSet<>();
+        for ( Rules rule : Rules.values() ) {
+            Assert.assertTrue(rule.name(), ids.add(rule.getId()));
+        }
+        Assert.assertEquals('T', Rules.NAKED_TRIPLES.getId());
+        Assert.assertEquals('U', Rules.HIDDEN_TRIPLES.getId());
+    }
+
+    @Test(expected = DBCException.class)
+    public void testInvalidRule() {
+        Scheduler.parse("NAKED_SINGLES,NO_SUCH_RULE");
+    }
+
+    @Test
+    public void testInvalidProperty() {
+        try {
+            Scheduler.configure("NAKED_SINGLES,NO_SUCH_RULE");
+            Assert.fail();
+        } catch ( DBCException e ) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("'sudoku.rules'"));
+        }
+        Assert.assertSame(Scheduler.configured(), Scheduler.configured());
+    }
+
+    @Test
+    public void testTiming() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Scheduler scheduler = Scheduler.parse(Scheduler.DEFAULT_RULES);
+        State state = new State();
+        state.load(seeds.getRecords(), 0);
+        scheduler.run(0, state);
+        Assert.assertTrue(scheduler.getStatistics().get(0).getCalls() > 0);
+        Assert.assertEquals(0, scheduler.getStatistics().get(0).getNanos());
+        Assert.assertFalse(scheduler.setTiming(true));
+        state.load(seeds.getRecords(), 0);
+        scheduler.run(0, state);
+        Assert.assertTrue(scheduler.getStatistics().get(0).getNanos() > 0);
+    }
+
+    public static class NoProgress implements Rule {
+        @Override
+        public char getId() {
+            return 'Z';
+        }
+
+        @Override
+        public String getName() {
+            return "NO_PROGRESS";
+        }
+
+        @Override
+        public Status apply(int recDepth, State state) {
+            return Status.CONSISTENT;
+        }
+    }
+}
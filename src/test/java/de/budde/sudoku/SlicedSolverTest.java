@@ -0,0 +1,64 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SlicedSolverTest {
+    @Test
+    public void testSolve() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 150, 3);
+        byte[] records = corpus.getRecords();
+        System.arraycopy(("11" + seeds.get(0).substring(2)).getBytes(), 0, records, 5 * 81, 81); // contradictory initial values
+        records[77 * 81 + 40] = 'x'; // invalid char
+        SlicedSolver sliced = new SlicedSolver();
+        BatchSolver batch = new BatchSolver();
+        State state = new State();
+        byte[] expected = new byte[81];
+        byte[] actual = new byte[81];
+        for ( int from = 0; from < corpus.size(); from += SlicedSolver.LANES ) {
+            int lanes = Math.min(SlicedSolver.LANES, corpus.size() - from);
+            int solved = sliced.solve(records, from * 81, lanes);
+            int count = 0;
+            for ( int lane = 0; lane < lanes; lane++ ) {
+                int offset = (from + lane) * 81;
+                Status status = Status.CONTRADICTION;
+                if ( from + lane != 77 ) {
+                    status = batch.solve(records, offset);
+                }
+                Assert.assertEquals(status, sliced.getStatus(lane));
+                if ( status == Status.SOLVED ) {
+                    count++;
+                    // singles have a unique fixed point: the kernel solves exactly the sudokus, that the propagation of the rules solves
+                    state.load(records, offset);
+                    Assert.assertEquals(RuleMachine.propagate(0, state) == Status.SOLVED, (sliced.getLogicOnly() & 1L << lane) != 0);
+                    sliced.writeSolution(lane, actual, 0);
+                    if ( batch.countSolutions(records, offset, 2) == 1 ) {
+                        batch.solve(records, offset);
+                        batch.writeSolution(expected, 0);
+                        Assert.assertArrayEquals(expected, actual);
+                    }
+                    Assert.assertTrue(sliced.getState(lane).isValid());
+                    sliced.getState(lane).store(expected, 0);
+                    Assert.assertArrayEquals(expected, actual);
+                }
+            }
+            Assert.assertEquals(count, solved);
+        }
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        String easy = seeds.get(0);
+        String h = seeds.get(seeds.size() - 2); // _challenges/h
+        State[] states = new SlicedSolver().solve(easy, h, "11" + h.substring(2));
+        Assert.assertEquals(3, states.length);
+        Assert.assertEquals(RunSudoku.run(easy, Solver.Engine.RULES).toString(), states[0].toString());
+        Assert.assertEquals(RunSudoku.run(h, Solver.Engine.RULES).toString(), states[1].toString());
+        Assert.assertNull(states[2]);
+    }
+}
@@ -0,0 +1,138 @@
+package de.budde.sudoku;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SolutionCacheTest {
+    @Before
+    public void clearDefault() {
+        // RunSudoku.run(String) uses the process-wide cache, other tests of the fork may have filled it
+        SolutionCache.DEFAULT.clear();
+        SolutionCache.DEFAULT.resetStatistics();
+    }
+
+    @Test
+    public void testCanonicalForm() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Random random = new Random(23);
+        byte[] transformed = new byte[81];
+        Set<String> sudokus = new HashSet<>();
+        Set<String> forms = new HashSet<>();
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            CanonicalForm canonical = CanonicalForm.of(seeds.get(i));
+            sudokus.add(seeds.get(i));
+            forms.add(canonical.getPuzzle());
+            Assert.assertEquals(seeds.get(i), canonical.fromCanonical(canonical.getPuzzle()));
+            for ( int t = 0; t < 5; t++ ) {
+                Corpus.transform(seeds.getRecords(), i * 81, transformed, 0, random);
+                String sudoku = new String(transformed, StandardCharsets.US_ASCII);
+                CanonicalForm other = CanonicalForm.of(sudoku);
+                Assert.assertEquals(canonical.getPuzzle(), other.getPuzzle());
+                Assert.assertEquals(sudoku, other.fromCanonical(canonical.getPuzzle()));
+                Assert.assertEquals(canonical.getPuzzle(), other.toCanonical(sudoku));
+            }
+        }
+        Assert.assertEquals(sudokus.size(), forms.size()); // some seeds are the same sudoku
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        Corpus corpus = Corpus.generate(seeds, 3 * seeds.size(), 5);
+        SolutionCache cache = new SolutionCache(seeds.size());
+        BatchSolver batch = new BatchSolver();
+        byte[] solution = new byte[81];
+        Set<String> seen = new HashSet<>();
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(Status.SOLVED, batch.solve(corpus.getRecords(), i * 81));
+            batch.writeSolution(solution, 0);
+            CanonicalForm canonical = CanonicalForm.of(corpus.get(i));
+            String cached = cache.get(canonical);
+            Assert.assertEquals(!seen.add(seeds.get(i % seeds.size())), cached != null); // the sudoku i is a transformation of the seed i % size
+            if ( cached == null ) {
+                cache.put(canonical, new String(solution, StandardCharsets.US_ASCII));
+            } else if ( batch.countSolutions(corpus.getRecords(), i * 81, 2) == 1 ) {
+                Assert.assertEquals(new String(solution, StandardCharsets.US_ASCII), cached);
+            } else {
+                State state = new State(Do.string2cells(cached));
+                Assert.assertTrue(state.isValid());
+                for ( int idx = 0; idx < 81; idx++ ) {
+                    Assert.assertTrue(corpus.get(i).charAt(idx) == '.' || corpus.get(i).charAt(idx) == cached.charAt(idx));
+                }
+            }
+        }
+        Assert.assertEquals(corpus.size() - seen.size(), cache.getHits());
+        Assert.assertEquals(seen.size(), cache.getMisses());
+        Assert.assertEquals(seen.size(), cache.size());
+
+        // least recently used: the second sudoku is evicted, because the first one was looked up after it
+        SolutionCache small = new SolutionCache(2);
+        CanonicalForm[] forms = new CanonicalForm[3];
+        for ( int i = 0; i < 3; i++ ) {
+            forms[i] = CanonicalForm.of(seeds.get(i));
+            batch.solve(seeds.getRecords(), i * 81);
+            batch.writeSolution(solution, 0);
+            small.put(forms[i], new String(solution, StandardCharsets.US_ASCII));
+            if ( i == 1 ) {
+                Assert.assertNotNull(small.get(forms[0]));
+            }
+        }
+        Assert.assertEquals(2, small.size());
+        Assert.assertNotNull(small.get(forms[0]));
+        Assert.assertNull(small.get(forms[1]));
+        Assert.assertNotNull(small.get(forms[2]));
+        small.resetStatistics();
+        Assert.assertEquals(0, small.getHits() + small.getMisses());
+    }
+
+    @Test
+    public void testRunSudoku() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        int h = seeds.size() - 2; // _challenges/h
+        byte[] transformed = new byte[81];
+        Corpus.transform(seeds.getRecords(), h * 81, transformed, 0, new Random(1));
+        String sudoku = new String(transformed, StandardCharsets.US_ASCII);
+        RunSudoku.run(seeds.get(h));
+        Assert.assertEquals(0, SolutionCache.DEFAULT.getHits());
+        Assert.assertEquals(1, SolutionCache.DEFAULT.getMisses());
+        State state = RunSudoku.run(sudoku);
+        Assert.assertEquals(1, SolutionCache.DEFAULT.getHits());
+        Assert.assertEquals(1, SolutionCache.DEFAULT.size());
+        Assert.assertEquals(RunSudoku.run(sudoku, Solver.Engine.RULES).toString(), state.toString());
+        Assert.assertEquals('C', state.getRuleId(sudoku.indexOf('.')));
+    }
+
+    @Test
+    public void testBoundedCanonicalForm() throws IOException {
+        Corpus seeds = Corpus.seeds(Paths.get("_examples"), Paths.get("_challenges"));
+        for ( int i = 0; i < seeds.size(); i++ ) {
+            Assert.assertEquals(CanonicalForm.of(seeds.get(i)).getPuzzle(), CanonicalForm.of(seeds.get(i), SolutionCache.MAX_NODES).getPuzzle());
+        }
+        char[] dots = new char[81];
+        Arrays.fill(dots, '.');
+        String empty = new String(dots);
+        String[] sparse = {
+            empty,
+            "5" + empty.substring(1),
+            "123456789" + empty.substring(9)
+        };
+        for ( String sudoku : sparse ) {
+            // the node budget bounds the latency: these sudokus need millions of nodes
+            Assert.assertNull(CanonicalForm.of(sudoku, SolutionCache.MAX_NODES));
+            Assert.assertTrue(RunSudoku.run(sudoku).isValid());
+        }
+        // solved without the cache
+        Assert.assertEquals(0, SolutionCache.DEFAULT.getHits() + SolutionCache.DEFAULT.getMisses());
+        Assert.assertEquals(0, SolutionCache.DEFAULT.size());
+        Assert.assertNotNull(CanonicalForm.of("5" + empty.substring(1), 1L << 20));
+    }
+}
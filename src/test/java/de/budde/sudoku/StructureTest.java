@@ -1,5 +1,8 @@
 package de.budde.sudoku;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -12,6 +15,26 @@ public class StructureTest {
         check(Cell.xy2idx(4, 1), structure, ia(0, 1, 2, 3, 4, 5, 6, 7, 8), ia(3, 12, 21, 30, 39, 48, 57, 66, 75), ia(3, 4, 5, 12, 13, 14, 21, 22, 23));
     }
 
+    @Test
+    public void testFlatTables() {
+        for ( int idx = 0; idx < 81; idx++ ) {
+            int[][] neighbarhoods = Structure.getNeighborHood(idx).get().toArray(int[][]::new);
+            Set<Integer> peers = new HashSet<>();
+            for ( int u = 0; u < 3; u++ ) {
+                Assert.assertArrayEquals(neighbarhoods[u], Structure.UNIT_MEMBERS[Structure.UNITS_OF[idx][u]]);
+                for ( int peer : neighbarhoods[u] ) {
+                    if ( peer != idx ) {
+                        peers.add(peer);
+                    }
+                }
+            }
+            Assert.assertEquals(20, peers.size());
+            for ( int peer : Structure.PEERS[idx] ) {
+                Assert.assertTrue(peers.contains(peer));
+            }
+        }
+    }
+
     @Test
     public void testIndex() {
         Assert.assertArrayEquals(ia(1, 1), Structure.xy2block(1, 1));
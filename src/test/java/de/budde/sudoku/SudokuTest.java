@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import org.junit.Assert;
@@ -56,6 +57,190 @@ public class SudokuTest {
         Assert.assertEquals(state1.toString(true), state2.toString(true));
     }
 
+    @Test
+    public void testRollback() {
+        State state = new State(Do.string2cells(example(2)));
+        State before = state.clone();
+        int mark = state.mark();
+        state = RuleMachine.ruleOneValLeft(0, state);
+        state = RuleMachine.ruleExcludedVal(0, state);
+        Assert.assertNotEquals(before.toString(), state.toString());
+        state.rollback(mark);
+        Assert.assertEquals(before.toString(), state.toString());
+        for ( int i = 0; i < 81; i++ ) {
+            Assert.assertEquals(before.getMask(i), state.getMask(i));
+            Assert.assertEquals(before.getCells()[i].getRuleId(), state.getCells()[i].getRuleId());
+        }
+    }
+
+    @Test
+    public void testContradiction() {
+        State state = new State(Do.string2cells(example(1)));
+        Assert.assertEquals(Status.CONTRADICTION, state.assign(1, Val.two.mask(), 'B'));
+        state = new State(Do.string2cells(example(1)));
+        Assert.assertEquals(Status.CONSISTENT, state.assign(1, Val.eight.mask(), 'B'));
+        Assert.assertEquals(Status.SOLVED, RuleMachine.excludedVal(0, state));
+    }
+
+    @Test(expected = DBCException.class)
+    public void testContradictionExc() {
+        State state = new State(Do.string2cells(example(1)));
+        state.setFinalCellVal(1, Val.two.mask(), 'B');
+    }
+
+    @Test
+    public void testReassignGiven() {
+        String sudoku = example(1);
+        int given = 0;
+        while ( sudoku.charAt(given) < '1' || sudoku.charAt(given) > '9' ) {
+            given++;
+        }
+        State state = new State(Do.string2cells(sudoku));
+        int finalized = state.getNumberFinalized();
+        try {
+            state.assign(given, 1 << sudoku.charAt(given) - '1', 'B');
+            Assert.fail();
+        } catch ( DBCException e ) {
+            // expected: a given is final already
+        }
+        Assert.assertEquals(finalized, state.getNumberFinalized());
+    }
+
+    @Test
+    public void testPropagate() {
+        for ( int i = 1; i <= 12; i++ ) {
+            State state1 = new State(Do.string2cells(example(i)));
+            state1 = RuleMachine.ruleOneValLeft(0, state1);
+            state1 = RuleMachine.ruleExcludedVal(0, state1);
+            State state2 = new State(Do.string2cells(example(i)));
+            state2 = RuleMachine.rulePropagate(0, state2);
+            Assert.assertEquals(state1.getNumberFinalized(), state2.getNumberFinalized());
+            Assert.assertEquals(state1.toString(), state2.toString());
+        }
+    }
+
+    @Test
+    public void testPlaces() {
+        State state = new State(Do.string2cells(example(10)));
+        int mark = state.mark();
+        checkPlaces(state);
+        state = RuleMachine.rulePropagate(0, state);
+        checkPlaces(state);
+        state = RuleMachine.ruleBacktrackerInPlace(0, state);
+        checkPlaces(state);
+        state.rollback(mark);
+        checkPlaces(state);
+    }
+
+    @Test
+    public void testFullValidation() {
+        State.setFullValidation(true);
+        try {
+            testBacktrackerInPlace();
+            testPropagate();
+        } finally {
+            State.setFullValidation(false);
+        }
+    }
+
+    @Test
+    public void testBacktrackerInPlace() {
+        for ( int i = 1; i <= 11; i++ ) {
+            String expected = solution(i);
+            if ( expected != null ) {
+                State state1 = new State(Do.string2cells(example(i)));
+                state1 = RuleMachine.ruleBacktracker(0, state1, new boolean[81]);
+                State state2 = new State(Do.string2cells(example(i)));
+                state2 = RuleMachine.ruleBacktrackerInPlace(0, state2);
+                Assert.assertEquals(expected, state1.toString());
+                Assert.assertEquals(expected, state2.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSearch() {
+        ParallelSearch parallelSearch = new ParallelSearch(new ForkJoinPool(4), 3, 0);
+        for ( int i = 1; i <= 11; i++ ) {
+            String expected = solution(i);
+            if ( expected != null ) {
+                State state = RuleMachine.rulePropagate(0, new State(Do.string2cells(example(i))));
+                Assert.assertEquals(expected, parallelSearch.solve(state).toString());
+            }
+        }
+        Assert.assertNotNull(RunSudoku.run(challenge("h"), true));
+    }
+
+    @Test
+    public void testParallelCount() {
+        ParallelSearch parallelSearch = new ParallelSearch(new ForkJoinPool(4), 3, 0);
+        for ( int i = 1; i <= 12; i++ ) {
+            State state = RuleMachine.rulePropagate(0, new State(Do.string2cells(example(i))));
+            String propagated = state.toString();
+            for ( int limit = 1; limit <= 3; limit++ ) {
+                Assert.assertEquals(RuleMachine.countSolutions(0, state.clone(), limit), parallelSearch.count(state, limit));
+            }
+            Assert.assertEquals(propagated, state.toString());
+        }
+        Assert.assertEquals(2, parallelSearch.count(RuleMachine.rulePropagate(0, new State(Do.string2cells(example(3)))), 2)); // two solutions
+        State empty = new State(Do.string2cells("................................................................................."));
+        Assert.assertEquals(10, parallelSearch.count(empty, 10));
+    }
+
+    @Test
+    public void testCountSolutions() {
+        for ( int i = 1; i <= 12; i++ ) {
+            Assert.assertEquals(i == 3 ? 2 : 1, RunSudoku.countSolutions(example(i), 2));
+        }
+        Assert.assertEquals(1, RunSudoku.countSolutions(example(3), 1));
+        Assert.assertEquals(1, RunSudoku.countSolutions(challenge("h"), 2));
+        Assert.assertEquals(10, RunSudoku.countSolutions(".................................................................................", 10));
+        State state = RuleMachine.rulePropagate(0, new State(Do.string2cells(example(10))));
+        String propagated = state.toString();
+        Assert.assertEquals(1, RuleMachine.countSolutions(0, state, 2));
+        Assert.assertEquals(propagated, state.toString());
+        checkPlaces(state);
+        BatchSolver solver = new BatchSolver();
+        byte[] record = ("11" + example(1).substring(2)).getBytes();
+        Assert.assertEquals(0, solver.countSolutions(record, 0, 2));
+        record = example(1).replace("2", ".").getBytes();
+        Assert.assertEquals(2, solver.countSolutions(record, 0, 2));
+    }
+
+    @Test
+    public void testEliminations() {
+        // the elimination rules never remove a value of the solution
+        Corpus corpus = Generator.generate(100, 0, Generator.Symmetry.NONE, 3, 2);
+        BatchSolver solver = new BatchSolver();
+        byte[] solution = new byte[81];
+        State state = new State();
+        long eliminations = 0;
+        for ( int i = 0; i < corpus.size(); i++ ) {
+            Assert.assertEquals(Status.SOLVED, solver.solve(corpus.getRecords(), i * 81));
+            solver.writeSolution(solution, 0);
+            state.load(corpus.getRecords(), i * 81);
+            Assert.assertNotEquals(Status.CONTRADICTION, Scheduler.ALL.run(0, state));
+            for ( int idx = 0; idx < 81; idx++ ) {
+                Assert.assertNotEquals(0, state.getMask(idx) & 1 << solution[idx] - '1');
+            }
+            checkPlaces(state);
+            eliminations += state.getEliminations();
+        }
+        Assert.assertTrue(eliminations > 0);
+
+        // the elimination rules shrink the search tree
+        Scheduler previous = RuleMachine.setScheduler(Scheduler.parse("NAKED_SINGLES,HIDDEN_SINGLES"));
+        try {
+            State withoutEliminations = RuleMachine.ruleBacktrackerInPlace(0, new State(Do.string2cells(challenge("h"))));
+            RuleMachine.setScheduler(Scheduler.configured());
+            State withEliminations = RuleMachine.ruleBacktrackerInPlace(0, new State(Do.string2cells(challenge("h"))));
+            Assert.assertEquals(withoutEliminations.toString(), withEliminations.toString());
+            Assert.assertTrue(withEliminations.getNodes() < withoutEliminations.getNodes());
+        } finally {
+            RuleMachine.setScheduler(previous);
+        }
+    }
+
     @Ignore
     @Test
     public void testOne() {
@@ -71,6 +256,20 @@ public class SudokuTest {
         }
     }
 
+    private static void checkPlaces(State state) {
+        for ( int unit = 0; unit < 27; unit++ ) {
+            for ( Val val : Val.values() ) {
+                int places = 0;
+                for ( int p = 0; p < 9; p++ ) {
+                    if ( (state.getMask(Structure.UNIT_MEMBERS[unit][p]) & val.mask()) != 0 ) {
+                        places |= 1 << p;
+                    }
+                }
+                Assert.assertEquals(places, state.getPlaces(unit, val.mask()));
+            }
+        }
+    }
+
     private static void run(int number) {
         System.out.println("\nNUMBER " + number);
         String toSolve = example(number);
@@ -91,6 +290,16 @@ public class SudokuTest {
         }
     }
 
+    private static String challenge(String name) {
+        Path path = null;
+        try {
+            path = Paths.get("_challenges/" + name);
+            return Files.readAllLines(path).stream().collect(Collectors.joining());
+        } catch ( IOException e ) {
+            throw new DBCException("File " + path + " could not be read", e);
+        }
+    }
+
     private static String solution(int number) {
         Path path = null;
         try {